@@ -15,13 +15,15 @@ package org.openmrs.module.auditlog;
 
 import java.io.Serializable;
 import java.sql.Blob;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.UUID;
 
-import org.apache.commons.lang.StringUtils;
 import org.openmrs.User;
+import org.openmrs.module.auditlog.util.AuditLogTypeDictionary;
+import org.openmrs.module.auditlog.util.AuditLogUtil;
 
 /**
  * Encapsulates data for a single audit log entry
@@ -30,7 +32,8 @@ public class AuditLog implements Serializable {
 	
 	private static final long serialVersionUID = 1L;
 	
-	private String uuid = UUID.randomUUID().toString();
+	//assigned a time ordered uuid when the log is saved
+	private String uuid;
 	
 	private Integer auditLogId;
 	
@@ -40,6 +43,9 @@ public class AuditLog implements Serializable {
 	//the unique database id of the created/updated/deleted object
 	private Serializable identifier;
 	
+	//the identifier as a number if it is numeric, this is what queries by identifier use when set
+	private Long numericIdentifier;
+	
 	//the performed operation that which could be a create, update or delete
 	private Action action;
 	
@@ -57,9 +63,10 @@ public class AuditLog implements Serializable {
 	
 	/**
 	 * Used to store Json for field new and old values for updated items or last properties values
-	 * of deleted items
+	 * of deleted items, it is mapped to a separate table as a lazy list that holds at most one
+	 * element so that it is only read when it is actually needed
 	 */
-	private Blob serializedData;
+	private List<Blob> serializedDataList;
 	
 	public enum Action {
 		CREATED, UPDATED, DELETED
@@ -83,7 +90,7 @@ public class AuditLog implements Serializable {
 	public AuditLog(Class<?> type, Serializable identifier, Action action, User user, Date dateCreated) {
 		this();
 		this.type = type;
-		this.identifier = identifier;
+		setIdentifier(identifier);
 		this.action = action;
 		this.user = user;
 		this.dateCreated = dateCreated;
@@ -129,6 +136,14 @@ public class AuditLog implements Serializable {
 	 */
 	public void setIdentifier(Serializable identifier) {
 		this.identifier = identifier;
+		this.numericIdentifier = AuditLogUtil.getNumericIdentifier(identifier);
+	}
+	
+	/**
+	 * @return the numeric form of the identifier or null if it is not numeric
+	 */
+	public Long getNumericIdentifier() {
+		return numericIdentifier;
 	}
 	
 	/**
@@ -250,14 +265,23 @@ public class AuditLog implements Serializable {
 	 * @return the serializedData
 	 */
 	public Blob getSerializedData() {
-		return serializedData;
+		if (serializedDataList == null || serializedDataList.isEmpty()) {
+			return null;
+		}
+		return serializedDataList.get(0);
 	}
 	
 	/**
 	 * @param serializedData the serializedData to set
 	 */
 	public void setSerializedData(Blob serializedData) {
-		this.serializedData = serializedData;
+		if (serializedDataList == null) {
+			serializedDataList = new ArrayList<Blob>(1);
+		}
+		serializedDataList.clear();
+		if (serializedData != null) {
+			serializedDataList.add(serializedData);
+		}
 	}
 	
 	/**
@@ -267,8 +291,7 @@ public class AuditLog implements Serializable {
 	 * @return the classname
 	 */
 	public String getSimpleTypeName() {
-		String[] sections = StringUtils.splitByCharacterTypeCamelCase(getType().getSimpleName());
-		return StringUtils.join(sections, " ");
+		return AuditLogTypeDictionary.getInstance().getDisplayName(getType());
 	}
 	
 	/**
@@ -16,6 +16,8 @@ package org.openmrs.module.auditlog;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.module.BaseModuleActivator;
+import org.openmrs.module.auditlog.api.db.hibernate.interceptor.AuditLogPayloadSerializer;
+import org.openmrs.module.auditlog.api.db.hibernate.interceptor.ChangedValueIndexWriter;
 
 /**
  * This class contains the logic that is run every time this module is either started or shutdown
@@ -52,6 +54,8 @@ public class AuditLogActivator extends BaseModuleActivator {
 		if (log.isDebugEnabled()) {
 			log.debug("Stopping Audit Log Module...");
 		}
+		//The queued words are written while the service is still available
+		ChangedValueIndexWriter.shutdown();
 	}
 	
 	/**
@@ -59,6 +63,7 @@ public class AuditLogActivator extends BaseModuleActivator {
 	 */
 	@Override
 	public void stopped() {
+		AuditLogPayloadSerializer.shutdown();
 		if (log.isInfoEnabled()) {
 			log.info("Stopped Audit Log Module...");
 		}
@@ -0,0 +1,106 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang.ObjectUtils;
+
+/**
+ * Records that an updated audit log changed the property with the specified name id, the rows are
+ * written along with the audit logs so that the logs that changed specific properties can be found
+ * without parsing the serialized data. The type id is copied from the audit log so that the table
+ * can be filtered by type without a join.
+ */
+public class AuditLogChangedProperty implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private Integer auditLogId;
+	
+	private Integer propertyNameId;
+	
+	private Integer typeId;
+	
+	/**
+	 * Default constructor
+	 */
+	public AuditLogChangedProperty() {
+	}
+	
+	/**
+	 * @return the auditLogId
+	 */
+	public Integer getAuditLogId() {
+		return auditLogId;
+	}
+	
+	/**
+	 * @param auditLogId the auditLogId to set
+	 */
+	public void setAuditLogId(Integer auditLogId) {
+		this.auditLogId = auditLogId;
+	}
+	
+	/**
+	 * @return the propertyNameId
+	 */
+	public Integer getPropertyNameId() {
+		return propertyNameId;
+	}
+	
+	/**
+	 * @param propertyNameId the propertyNameId to set
+	 */
+	public void setPropertyNameId(Integer propertyNameId) {
+		this.propertyNameId = propertyNameId;
+	}
+	
+	/**
+	 * @return the typeId
+	 */
+	public Integer getTypeId() {
+		return typeId;
+	}
+	
+	/**
+	 * @param typeId the typeId to set
+	 */
+	public void setTypeId(Integer typeId) {
+		this.typeId = typeId;
+	}
+	
+	/**
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof AuditLogChangedProperty)) {
+			return false;
+		}
+		AuditLogChangedProperty other = (AuditLogChangedProperty) obj;
+		return ObjectUtils.equals(auditLogId, other.auditLogId) && ObjectUtils.equals(propertyNameId, other.propertyNameId);
+	}
+	
+	/**
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * ObjectUtils.hashCode(auditLogId) + ObjectUtils.hashCode(propertyNameId);
+	}
+}
@@ -51,6 +51,12 @@ public class AuditLogHelper implements GlobalPropertyListener {
 	static {
 		CORE_EXCEPTIONS = new ArrayList<Class<?>>();
 		CORE_EXCEPTIONS.add(AuditLog.class);
+		CORE_EXCEPTIONS.add(AuditLogType.class);
+		CORE_EXCEPTIONS.add(AuditLogPropertyName.class);
+		CORE_EXCEPTIONS.add(AuditLogChangedProperty.class);
+		CORE_EXCEPTIONS.add(AuditLogValueToken.class);
+		CORE_EXCEPTIONS.add(AuditLogSnapshot.class);
+		CORE_EXCEPTIONS.add(AuditLogLatest.class);
 	}
 	
 	private static Set<Class<?>> exceptionsTypeCache;
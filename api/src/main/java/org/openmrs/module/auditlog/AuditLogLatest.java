@@ -0,0 +1,172 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import org.apache.commons.lang.ObjectUtils;
+
+/**
+ * Points to the latest audit log of an audited object along with the action, user and date of that
+ * log, the row for an object is written along with each new audit log for it so that the last
+ * change to an object can be looked up without sorting all its logs. It also counts the updates
+ * since the latest snapshot of the object to tell when the next snapshot is due.
+ */
+public class AuditLogLatest implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private Integer typeId;
+	
+	private String identifier;
+	
+	private Integer auditLogId;
+	
+	private String action;
+	
+	private Integer userId;
+	
+	private Date dateCreated;
+	
+	private Integer updatesSinceSnapshot;
+	
+	/**
+	 * Default constructor
+	 */
+	public AuditLogLatest() {
+	}
+	
+	/**
+	 * @return the typeId
+	 */
+	public Integer getTypeId() {
+		return typeId;
+	}
+	
+	/**
+	 * @param typeId the typeId to set
+	 */
+	public void setTypeId(Integer typeId) {
+		this.typeId = typeId;
+	}
+	
+	/**
+	 * @return the identifier
+	 */
+	public String getIdentifier() {
+		return identifier;
+	}
+	
+	/**
+	 * @param identifier the identifier to set
+	 */
+	public void setIdentifier(String identifier) {
+		this.identifier = identifier;
+	}
+	
+	/**
+	 * @return the auditLogId
+	 */
+	public Integer getAuditLogId() {
+		return auditLogId;
+	}
+	
+	/**
+	 * @param auditLogId the auditLogId to set
+	 */
+	public void setAuditLogId(Integer auditLogId) {
+		this.auditLogId = auditLogId;
+	}
+	
+	/**
+	 * @return the action
+	 */
+	public String getAction() {
+		return action;
+	}
+	
+	/**
+	 * @param action the action to set
+	 */
+	public void setAction(String action) {
+		this.action = action;
+	}
+	
+	/**
+	 * @return the userId
+	 */
+	public Integer getUserId() {
+		return userId;
+	}
+	
+	/**
+	 * @param userId the userId to set
+	 */
+	public void setUserId(Integer userId) {
+		this.userId = userId;
+	}
+	
+	/**
+	 * @return the dateCreated
+	 */
+	public Date getDateCreated() {
+		return dateCreated;
+	}
+	
+	/**
+	 * @param dateCreated the dateCreated to set
+	 */
+	public void setDateCreated(Date dateCreated) {
+		this.dateCreated = dateCreated;
+	}
+	
+	/**
+	 * @return the number of updates logged since the latest snapshot of the object or null if it
+	 *         has no snapshot
+	 */
+	public Integer getUpdatesSinceSnapshot() {
+		return updatesSinceSnapshot;
+	}
+	
+	/**
+	 * @param updatesSinceSnapshot the updatesSinceSnapshot to set
+	 */
+	public void setUpdatesSinceSnapshot(Integer updatesSinceSnapshot) {
+		this.updatesSinceSnapshot = updatesSinceSnapshot;
+	}
+	
+	/**
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof AuditLogLatest)) {
+			return false;
+		}
+		AuditLogLatest other = (AuditLogLatest) obj;
+		return ObjectUtils.equals(typeId, other.typeId) && ObjectUtils.equals(identifier, other.identifier);
+	}
+	
+	/**
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * ObjectUtils.hashCode(typeId) + ObjectUtils.hashCode(identifier);
+	}
+}
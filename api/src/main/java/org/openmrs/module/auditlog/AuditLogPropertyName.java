@@ -0,0 +1,60 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog;
+
+/**
+ * An entry in the dictionary of the names of the properties changed by updated objects, the
+ * auditlog_changed_property table references the names by their small integer ids. Entries are
+ * never updated or deleted.
+ */
+public class AuditLogPropertyName {
+	
+	private Integer propertyNameId;
+	
+	private String name;
+	
+	/**
+	 * Default constructor
+	 */
+	public AuditLogPropertyName() {
+	}
+	
+	/**
+	 * @return the propertyNameId
+	 */
+	public Integer getPropertyNameId() {
+		return propertyNameId;
+	}
+	
+	/**
+	 * @param propertyNameId the propertyNameId to set
+	 */
+	public void setPropertyNameId(Integer propertyNameId) {
+		this.propertyNameId = propertyNameId;
+	}
+	
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * @param name the name to set
+	 */
+	public void setName(String name) {
+		this.name = name;
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog;
+
+import java.io.Serializable;
+import java.sql.Blob;
+
+/**
+ * The serialized full state of an audited object after the change recorded by the audit log with
+ * the same id, snapshots are stored when objects are created and after every few updates so that
+ * the state of an object at a given time can be reconstructed by replaying a bounded number of
+ * changes.
+ */
+public class AuditLogSnapshot implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private Integer auditLogId;
+	
+	private Blob serializedState;
+	
+	/**
+	 * Default constructor
+	 */
+	public AuditLogSnapshot() {
+	}
+	
+	/**
+	 * @return the auditLogId
+	 */
+	public Integer getAuditLogId() {
+		return auditLogId;
+	}
+	
+	/**
+	 * @param auditLogId the auditLogId to set
+	 */
+	public void setAuditLogId(Integer auditLogId) {
+		this.auditLogId = auditLogId;
+	}
+	
+	/**
+	 * @return the serializedState
+	 */
+	public Blob getSerializedState() {
+		return serializedState;
+	}
+	
+	/**
+	 * @param serializedState the serializedState to set
+	 */
+	public void setSerializedState(Blob serializedState) {
+		this.serializedState = serializedState;
+	}
+}
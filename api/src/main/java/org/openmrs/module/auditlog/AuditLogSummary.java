@@ -0,0 +1,153 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import org.openmrs.module.auditlog.AuditLog.Action;
+
+/**
+ * A read only row holding the fields of an audit log that list views display, it is read with a
+ * projection query that also fetches the name of the user so that listing audit logs doesn't load
+ * the audit log entities, their users or persons.
+ */
+public final class AuditLogSummary implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final Integer auditLogId;
+	
+	private final String uuid;
+	
+	private final Class<?> type;
+	
+	private final String identifier;
+	
+	private final Action action;
+	
+	private final Date dateCreated;
+	
+	private final String userUuid;
+	
+	private final String username;
+	
+	private final String userFullName;
+	
+	private final int childLogCount;
+	
+	/**
+	 * @param auditLogId the id of the audit log
+	 * @param uuid the uuid of the audit log
+	 * @param type the type of the object
+	 * @param identifier the identifier of the object
+	 * @param action the action
+	 * @param dateCreated the date the audit log was created
+	 * @param userUuid the uuid of the user that made the change, null if there is no user
+	 * @param username the username of the user that made the change
+	 * @param userFullName the full preferred name of the user that made the change
+	 * @param childLogCount the number of child logs
+	 */
+	public AuditLogSummary(Integer auditLogId, String uuid, Class<?> type, String identifier, Action action,
+	                       Date dateCreated, String userUuid, String username, String userFullName, int childLogCount) {
+		this.auditLogId = auditLogId;
+		this.uuid = uuid;
+		this.type = type;
+		this.identifier = identifier;
+		this.action = action;
+		this.dateCreated = (dateCreated != null) ? new Date(dateCreated.getTime()) : null;
+		this.userUuid = userUuid;
+		this.username = username;
+		this.userFullName = userFullName;
+		this.childLogCount = childLogCount;
+	}
+	
+	/**
+	 * @return the auditLogId
+	 */
+	public Integer getAuditLogId() {
+		return auditLogId;
+	}
+	
+	/**
+	 * @return the uuid
+	 */
+	public String getUuid() {
+		return uuid;
+	}
+	
+	/**
+	 * @return the type
+	 */
+	public Class<?> getType() {
+		return type;
+	}
+	
+	/**
+	 * @return the identifier
+	 */
+	public String getIdentifier() {
+		return identifier;
+	}
+	
+	/**
+	 * @return the action
+	 */
+	public Action getAction() {
+		return action;
+	}
+	
+	/**
+	 * @return the dateCreated
+	 */
+	public Date getDateCreated() {
+		return (dateCreated != null) ? new Date(dateCreated.getTime()) : null;
+	}
+	
+	/**
+	 * @return the userUuid
+	 */
+	public String getUserUuid() {
+		return userUuid;
+	}
+	
+	/**
+	 * @return the username
+	 */
+	public String getUsername() {
+		return username;
+	}
+	
+	/**
+	 * @return the userFullName
+	 */
+	public String getUserFullName() {
+		return userFullName;
+	}
+	
+	/**
+	 * @return the childLogCount
+	 */
+	public int getChildLogCount() {
+		return childLogCount;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return action + " " + type + " " + identifier;
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog;
+
+/**
+ * An entry in the dictionary of the types of the audited objects, audit logs store the small
+ * integer id of their type instead of the fully qualified class name. Entries are never updated or
+ * deleted, callers should use {@link org.openmrs.module.auditlog.util.AuditLogTypeDictionary} to
+ * look them up rather than loading them.
+ */
+public class AuditLogType {
+	
+	private Integer typeId;
+	
+	private String classname;
+	
+	/**
+	 * Default constructor
+	 */
+	public AuditLogType() {
+	}
+	
+	/**
+	 * Convenience constructor that creates an {@link AuditLogType} with the specified id and
+	 * classname
+	 */
+	public AuditLogType(Integer typeId, String classname) {
+		this.typeId = typeId;
+		this.classname = classname;
+	}
+	
+	/**
+	 * @return the typeId
+	 */
+	public Integer getTypeId() {
+		return typeId;
+	}
+	
+	/**
+	 * @param typeId the typeId to set
+	 */
+	public void setTypeId(Integer typeId) {
+		this.typeId = typeId;
+	}
+	
+	/**
+	 * @return the classname
+	 */
+	public String getClassname() {
+		return classname;
+	}
+	
+	/**
+	 * @param classname the classname to set
+	 */
+	public void setClassname(String classname) {
+		this.classname = classname;
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang.ObjectUtils;
+
+/**
+ * Records that a changed value of the property with the specified name id in an audit log contains
+ * the specified word, the rows are written along with the audit logs when the changed values are
+ * indexed and they are used to find the logs whose values contain given words.
+ */
+public class AuditLogValueToken implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private String token;
+	
+	private Integer propertyNameId;
+	
+	private Integer auditLogId;
+	
+	/**
+	 * Default constructor
+	 */
+	public AuditLogValueToken() {
+	}
+	
+	/**
+	 * @return the token
+	 */
+	public String getToken() {
+		return token;
+	}
+	
+	/**
+	 * @param token the token to set
+	 */
+	public void setToken(String token) {
+		this.token = token;
+	}
+	
+	/**
+	 * @return the propertyNameId
+	 */
+	public Integer getPropertyNameId() {
+		return propertyNameId;
+	}
+	
+	/**
+	 * @param propertyNameId the propertyNameId to set
+	 */
+	public void setPropertyNameId(Integer propertyNameId) {
+		this.propertyNameId = propertyNameId;
+	}
+	
+	/**
+	 * @return the auditLogId
+	 */
+	public Integer getAuditLogId() {
+		return auditLogId;
+	}
+	
+	/**
+	 * @param auditLogId the auditLogId to set
+	 */
+	public void setAuditLogId(Integer auditLogId) {
+		this.auditLogId = auditLogId;
+	}
+	
+	/**
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof AuditLogValueToken)) {
+			return false;
+		}
+		AuditLogValueToken other = (AuditLogValueToken) obj;
+		return ObjectUtils.equals(token, other.token) && ObjectUtils.equals(propertyNameId, other.propertyNameId)
+		        && ObjectUtils.equals(auditLogId, other.auditLogId);
+	}
+	
+	/**
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * (31 * ObjectUtils.hashCode(token) + ObjectUtils.hashCode(propertyNameId))
+		        + ObjectUtils.hashCode(auditLogId);
+	}
+}
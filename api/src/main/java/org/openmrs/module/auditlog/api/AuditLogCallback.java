@@ -0,0 +1,34 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.api;
+
+import org.openmrs.module.auditlog.AuditLog;
+
+/**
+ * Receives the audit logs streamed by
+ * {@link AuditLogService#streamAuditLogs(java.util.List, java.util.List, java.util.Date, java.util.Date, boolean, AuditLogCallback)}
+ * one at a time. The audit logs are read a page at a time and are detached once the page has been
+ * handled so implementations shouldn't hold on to them, the user and parent audit log are loaded
+ * with the log and the serialized data is loaded for the whole page the first time it is accessed.
+ */
+public interface AuditLogCallback {
+	
+	/**
+	 * Called for each audit log in the results
+	 * 
+	 * @param auditLog the audit log
+	 * @throws Exception
+	 */
+	public void handle(AuditLog auditLog) throws Exception;
+}
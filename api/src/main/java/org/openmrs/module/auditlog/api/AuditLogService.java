@@ -14,16 +14,23 @@
 package org.openmrs.module.auditlog.api;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.openmrs.Concept;
+import org.openmrs.User;
 import org.openmrs.annotation.Authorized;
 import org.openmrs.api.OpenmrsService;
 import org.openmrs.module.auditlog.AuditLog;
 import org.openmrs.module.auditlog.AuditLog.Action;
+import org.openmrs.module.auditlog.AuditLogSummary;
 import org.openmrs.module.auditlog.strategy.AuditStrategy;
 import org.openmrs.module.auditlog.util.AuditLogConstants;
+import org.openmrs.module.auditlog.util.ContinuationToken;
+import org.openmrs.module.auditlog.util.NetChanges;
 
 /**
  * Contains service methods related to {@link AuditLog}s
@@ -71,6 +78,281 @@ public interface AuditLogService extends OpenmrsService {
 	public List<AuditLog> getAuditLogs(List<Class<?>> clazzes, List<Action> actions, Date startDate, Date endDate,
 	                                   boolean excludeChildAuditLogs, Integer start, Integer length);
 	
+	/**
+	 * Fetches a page of the audit log entries matching the specified arguments, unlike
+	 * {@link #getAuditLogs(List, List, Date, Date, boolean, Integer, Integer)} the page is found by
+	 * seeking to the position marked by the continuation token so fetching a later page costs the
+	 * same as the first one. The logs are sorted by date of creation and id starting with the
+	 * latest, the token for the next page is created by passing the last log of the current page to
+	 * {@link ContinuationToken#create(AuditLog)}
+	 * 
+	 * @param clazzes the class type to match against e.g for objects of type {@link Concept}
+	 * @param actions the list of {@link Action}s to match against
+	 * @param user the user that made the changes to match against
+	 * @param startDate the creation date of the log entries to return should be after or equal to
+	 *            this date
+	 * @param endDate the creation date of the log entries to return should be before or equal to
+	 *            this date
+	 * @param excludeChildAuditLogs specifies if AuditLogs for collection items should excluded or
+	 *            not
+	 * @param continuationToken the token marking the position after which to start, if null the
+	 *            first page is returned
+	 * @param length number of results to return (default to return all matching results if
+	 *            <code>null<code>)
+	 * @return a list of matching {@link AuditLog}s
+	 * @should return the first page if no continuation token is specified
+	 * @should return the page after the specified continuation token
+	 * @should fail for an invalid continuation token
+	 * @should match on the specified user
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public List<AuditLog> getAuditLogsAfter(List<Class<?>> clazzes, List<Action> actions, User user, Date startDate,
+	                                        Date endDate, boolean excludeChildAuditLogs, String continuationToken,
+	                                        Integer length);
+	
+	/**
+	 * Gets a page of the summaries of the audit logs matching the specified arguments. It works
+	 * like {@link #getAuditLogsAfter(List, List, User, Date, Date, boolean, String, Integer)} but
+	 * returns read only rows holding the fields that list views display, including the name of the
+	 * user and the number of child logs, instead of audit logs. The token for the next page is
+	 * created by passing the last summary of the current page to
+	 * {@link ContinuationToken#create(AuditLogSummary)}
+	 * 
+	 * @param clazzes the class type to match against e.g for objects of type {@link Concept}
+	 * @param actions the list of {@link Action}s to match against
+	 * @param user the user that made the changes to match against
+	 * @param startDate the creation date of the log entries to return should be after or equal to
+	 *            this date
+	 * @param endDate the creation date of the log entries to return should be before or equal to
+	 *            this date
+	 * @param excludeChildAuditLogs specifies if AuditLogs for collection items should excluded or
+	 *            not
+	 * @param continuationToken the token marking the position after which to start, if null the
+	 *            first page is returned
+	 * @param length number of results to return (default to return all matching results if
+	 *            <code>null<code>)
+	 * @return a list of summaries
+	 * @should return the summaries in the same order as the audit logs
+	 * @should include the user name and child log count
+	 * @should return the page after the specified continuation token
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public List<AuditLogSummary> getAuditLogSummariesAfter(List<Class<?>> clazzes, List<Action> actions, User user,
+	                                                       Date startDate, Date endDate, boolean excludeChildAuditLogs,
+	                                                       String continuationToken, Integer length);
+	
+	/**
+	 * Counts the audit log entries matching the specified arguments, the arguments have the same
+	 * meaning as those of {@link #getAuditLogs(List, List, Date, Date, boolean, Integer, Integer)}
+	 * 
+	 * @param clazzes the class type to match against e.g for objects of type {@link Concept}
+	 * @param actions the list of {@link Action}s to match against
+	 * @param startDate the creation date of the log entries to count should be after or equal to
+	 *            this date
+	 * @param endDate the creation date of the log entries to count should be before or equal to
+	 *            this date
+	 * @param excludeChildAuditLogs specifies if AuditLogs for collection items should excluded or
+	 *            not
+	 * @return the number of matching {@link AuditLog}s
+	 * @should return the number of all audit logs in the database if all args are null
+	 * @should count the logs matching the specified arguments
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public Long countAuditLogs(List<Class<?>> clazzes, List<Action> actions, Date startDate, Date endDate,
+	                           boolean excludeChildAuditLogs);
+	
+	/**
+	 * Gets the approximate number of audit logs in the database without counting them, on mysql
+	 * it is read from the table statistics which might be off by a large margin for innodb tables,
+	 * for other databases it falls back to an exact count.
+	 * 
+	 * @return the estimated number of audit logs
+	 * @should return the number of audit logs if table statistics are not supported
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public Long getEstimatedAuditLogCount();
+	
+	/**
+	 * Streams the audit log entries matching the specified arguments to the specified callback
+	 * without loading them all in memory, the logs are read with a forward only cursor in a
+	 * separate session that is periodically cleared. The logs are sorted by date of creation
+	 * starting with the latest.
+	 * 
+	 * @param clazzes the class type to match against e.g for objects of type {@link Concept}
+	 * @param actions the list of {@link Action}s to match against
+	 * @param startDate the creation date of the log entries to return should be after or equal to
+	 *            this date
+	 * @param endDate the creation date of the log entries to return should be before or equal to
+	 *            this date
+	 * @param excludeChildAuditLogs specifies if AuditLogs for collection items should excluded or
+	 *            not
+	 * @param callback the callback to pass each audit log to
+	 * @should pass all the matching logs to the callback in order
+	 * @should fail if the callback fails
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public void streamAuditLogs(List<Class<?>> clazzes, List<Action> actions, Date startDate, Date endDate,
+	                            boolean excludeChildAuditLogs, AuditLogCallback callback);
+	
+	/**
+	 * Gets the number of child logs of each of the specified audit logs with a single grouped
+	 * query, it is meant to be used instead of initializing the child logs of each audit log when
+	 * only the counts are needed
+	 * 
+	 * @param auditLogs the saved audit logs
+	 * @return a map of the ids of the audit logs to the number of child logs, audit logs without
+	 *         child logs are left out
+	 * @should return the number of child logs of each audit log
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public Map<Integer, Integer> getChildAuditLogCounts(Collection<AuditLog> auditLogs);
+	
+	/**
+	 * Gets a page of the child logs of the specified audit log sorted by id
+	 * 
+	 * @param parentAuditLog the parent audit log
+	 * @param start index of the first child log to return
+	 * @param length the number of child logs to return
+	 * @return a list of child logs
+	 * @should return the specified page of child logs
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public List<AuditLog> getChildAuditLogs(AuditLog parentAuditLog, Integer start, Integer length);
+	
+	/**
+	 * Gets the audit logs where at least one of the specified properties was changed, the logs are
+	 * found via the names of the changed properties that are recorded when the logs are saved so
+	 * the serialized data isn't read
+	 * 
+	 * @param clazzes the types of the audited objects, if null logs of all types are matched
+	 * @param propertyNames the names of the properties
+	 * @param startDate the start date to match against
+	 * @param endDate the end date to match against
+	 * @param start index of the first log to return
+	 * @param length the number of logs to return
+	 * @return a list of audit logs sorted by date created and id starting with the latest
+	 * @should return the logs that changed any of the properties
+	 * @should match only the logs of the specified types
+	 * @should return an empty list for unknown property names
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public List<AuditLog> getAuditLogsByChangedProperties(List<Class<?>> clazzes, List<String> propertyNames,
+	                                                      Date startDate, Date endDate, Integer start, Integer length);
+	
+	/**
+	 * Gets the uuids of the audit logs where the changed values contain all the words in the
+	 * specified text, the search is case insensitive and only matches whole words. The words are
+	 * indexed by a background thread after the logs are saved if the
+	 * AuditLogConstants#GP_INDEX_CHANGED_VALUES global property is set to true, logs saved before
+	 * it was set can be indexed with
+	 * {@link #rebuildChangedValueIndex(Integer, Integer)}.
+	 * 
+	 * @param text the text to search for
+	 * @param propertyNames the names of the properties whose values to search, if null the values
+	 *            of all the properties are searched
+	 * @param maxResults the maximum number of uuids to return
+	 * @return the uuids sorted by the date created and id of the logs starting with the latest
+	 * @should return the logs whose values contain all the words
+	 * @should match only the values of the specified properties
+	 * @should return an empty list if the text has no words
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public List<String> searchChangedValues(String text, List<String> propertyNames, Integer maxResults);
+	
+	/**
+	 * Re-indexes the words in the changed values of the updated and deleted audit logs with ids in
+	 * the specified range, the existing words of the logs in the range are removed first.
+	 * 
+	 * @param fromAuditLogId the lowest audit log id to include
+	 * @param toAuditLogId the highest audit log id to include
+	 * @return the number of audit logs that were indexed
+	 */
+	@Authorized(AuditLogConstants.PRIV_MANAGE_AUDITLOG)
+	public int rebuildChangedValueIndex(Integer fromAuditLogId, Integer toAuditLogId);
+	
+	/**
+	 * Replaces the indexed words in the changed values of the audit logs with the specified ids,
+	 * this is called by a background thread to index the logs saved by committed transactions
+	 * 
+	 * @param auditLogIdTokens the ids of the audit logs mapped to the names of their changed
+	 *            properties mapped to the words in the values
+	 * @should replace the indexed words of the audit logs
+	 */
+	@Authorized(AuditLogConstants.PRIV_MANAGE_AUDITLOG)
+	public void saveChangedValueIndex(Map<Integer, Map<String, Set<String>>> auditLogIdTokens);
+	
+	/**
+	 * Gets the highest audit log id
+	 * 
+	 * @return the id or null if there are no audit logs
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public Integer getMaxAuditLogId();
+	
+	/**
+	 * Reconstructs the state of the object with the specified type and id at the specified date
+	 * from the snapshots and changes stored in its audit logs. Snapshots are stored when the
+	 * AuditLogConstants#GP_SNAPSHOT_INTERVAL global property is set, the state is built from the
+	 * latest snapshot before the date by applying the new values of the later updates or from the
+	 * earliest snapshot after the date by applying the previous values of the earlier updates.
+	 * Reconstructed states are cached.
+	 * 
+	 * @param clazz the type of the object
+	 * @param id the id of the object
+	 * @param date the date at which to get the state
+	 * @return a map of property names and their serialized values or null if the object didn't
+	 *         exist at the date or there is no snapshot to start from
+	 * @should return null if there is no snapshot to start from
+	 * @should fail if any argument is null
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public Map<String, Object> getStateAt(Class<?> clazz, Serializable id, Date date);
+	
+	/**
+	 * Gets the net changes made to the object with the specified type and id in the specified
+	 * period, the audit logs of the object are streamed a page at a time and folded into the
+	 * latest new and earliest previous value of each changed property including the changes of its
+	 * collection items recorded by the child logs.
+	 * 
+	 * @param clazz the type of the object
+	 * @param id the id of the object
+	 * @param startDate the start date to match against
+	 * @param endDate the end date to match against
+	 * @return the net changes
+	 * @should fold the changes of the logs in the period
+	 * @should fail if the class or id is null
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public NetChanges getNetChanges(Class<?> clazz, Serializable id, Date startDate, Date endDate);
+	
+	/**
+	 * Gets the latest audit log for the object with the specified type and id, it is looked up in
+	 * a table that points to the latest audit log of each object so the logs of the object aren't
+	 * sorted. The returned log tells when the object was last changed, by whom and how.
+	 * 
+	 * @param clazz the type of the object, logs for subclasses are included
+	 * @param id the id of the object
+	 * @return the latest audit log or null if there is none
+	 * @should get the latest log for the object
+	 * @should return null if the object has no logs
+	 * @should fail if the class or id is null
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public AuditLog getLatestAuditLog(Class<?> clazz, Serializable id);
+	
+	/**
+	 * Gets the audit logs of the deleted objects i.e. those whose latest audit log is a delete,
+	 * starting with the latest, without scanning the audit logs for deletes
+	 * 
+	 * @param clazzes the types of objects to match against, null matches all types
+	 * @param startDate the deletes to return should be after or equal to this date
+	 * @param maxResults the maximum number of logs to return, null returns all
+	 * @return a list of audit logs
+	 * @should get the logs of the objects whose latest change is a delete
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public List<AuditLog> getRecentlyDeletedAuditLogs(List<Class<?>> clazzes, Date startDate, Integer maxResults);
+	
 	/**
 	 * Fetches a saved object with the specified objectId
 	 * 
@@ -81,12 +363,40 @@ public interface AuditLogService extends OpenmrsService {
 	@Authorized(AuditLogConstants.PRIV_GET_ITEMS)
 	public <T> T getObjectById(Class<T> clazz, Serializable id);
 	
+	/**
+	 * Fetches the saved objects with the specified ids, the objects are fetched with one query per
+	 * batch of ids rather than one query per id
+	 * 
+	 * @param clazz the type of the objects
+	 * @param ids the ids to match against
+	 * @return a map of the String form of the id of each matching object to the object, ids
+	 *         without a match are left out
+	 * @should get the saved objects matching the specified ids
+	 * @should fetch the objects in batches if there are many ids
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_ITEMS)
+	public <T> Map<String, T> getObjectsByIds(Class<T> clazz, Collection<String> ids);
+	
+	/**
+	 * Gets the ids that belong to saved objects of the specified type, only the ids are read from
+	 * the database so this is cheaper than fetching the objects
+	 * 
+	 * @param clazz the type of the objects
+	 * @param ids the ids to check
+	 * @return the String form of the ids that belong to saved objects
+	 * @should return only the ids of saved objects
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_ITEMS)
+	public Set<String> getExistingIds(Class<?> clazz, Collection<String> ids);
+	
 	/**
 	 * Fetches a saved object with the specified uuid
 	 * 
 	 * @param uuid the uuid to match against
 	 * @return the matching saved object
 	 * @should get the saved object matching the specified arguments
+	 * @should get the audit log matching the specified uuid
+	 * @should not save changes made to a fetched audit log
 	 */
 	@Authorized(AuditLogConstants.PRIV_GET_ITEMS)
 	public <T> T getObjectByUuid(Class<T> clazz, String uuid);
@@ -136,4 +446,28 @@ public interface AuditLogService extends OpenmrsService {
 	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
 	public List<AuditLog> getAuditLogs(Object object, List<Action> actions, Date startDate, Date endDate,
 	                                   boolean excludeChildAuditLogs);
+	
+	/**
+	 * Gets the audit logs for many objects of the same type in one call, the logs are fetched with
+	 * one query per batch of ids rather than one query per object
+	 * 
+	 * @param clazz the Class of the objects to match against, logs for subclasses are included
+	 * @param ids the ids of the objects to match against
+	 * @param actions the actions to match against
+	 * @param startDate the start date to match against
+	 * @param endDate the end date to match against
+	 * @param excludeChildAuditLogs specifies if AuditLogs for collection items should excluded or
+	 *            not
+	 * @param latestOnly specifies if only the latest matching log for each object should be
+	 *            returned
+	 * @return a map of the String form of the id of each object to its logs sorted starting with
+	 *         the latest, ids without matching logs are left out
+	 * @should get the logs for each object grouped by id
+	 * @should only get the latest log for each object if latestOnly is true
+	 * @should fetch the logs in batches if there are many ids
+	 */
+	@Authorized(AuditLogConstants.PRIV_GET_AUDITLOGS)
+	public Map<String, List<AuditLog>> getAuditLogsForObjects(Class<?> clazz, Collection<String> ids,
+	                                                          List<Action> actions, Date startDate, Date endDate,
+	                                                          boolean excludeChildAuditLogs, boolean latestOnly);
 }
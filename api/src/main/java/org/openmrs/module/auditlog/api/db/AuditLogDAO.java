@@ -3,22 +3,29 @@
  * Version 1.0 (the "License"); you may not use this file except in
  * compliance with the License. You may obtain a copy of the License at
  * http://license.openmrs.org
- *
+ * 
  * Software distributed under the License is distributed on an "AS IS"
  * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
  * License for the specific language governing rights and limitations
  * under the License.
- *
+ * 
  * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
  */
 package org.openmrs.module.auditlog.api.db;
 
 import java.io.Serializable;
+import java.sql.Blob;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.openmrs.User;
 import org.openmrs.module.auditlog.AuditLog;
 import org.openmrs.module.auditlog.AuditLog.Action;
+import org.openmrs.module.auditlog.AuditLogSummary;
+import org.openmrs.module.auditlog.api.AuditLogCallback;
 import org.openmrs.module.auditlog.api.AuditLogService;
 
 /**
@@ -48,6 +55,112 @@ public interface AuditLogDAO {
 	public List<AuditLog> getAuditLogs(Serializable id, List<Class<?>> types, List<Action> actions, Date startDate,
 	                                   Date endDate, boolean excludeChildAuditLogs, Integer start, Integer length);
 	
+	/**
+	 * Fetches the audit logs for the objects with the specified ids matching the other specified
+	 * arguments, the ids are matched with one query per batch of ids rather than one query per id.
+	 * The logs for each object are sorted starting with the latest.
+	 * 
+	 * @param types the types of objects to match against
+	 * @param ids the ids of the objects to match against
+	 * @param actions the actions to match against
+	 * @param startDate the creation date of the log entries to return should be after or equal to
+	 *            this date
+	 * @param endDate the creation date of the log entries to return should be before or equal to
+	 *            this date
+	 * @param excludeChildAuditLogs specifies if AuditLogs for collection items should excluded or
+	 *            not
+	 * @param latestOnly specifies if only the latest matching log for each object should be
+	 *            returned
+	 * @return list of auditlogs
+	 */
+	public List<AuditLog> getAuditLogsForObjects(List<Class<?>> types, Collection<String> ids, List<Action> actions,
+	                                             Date startDate, Date endDate, boolean excludeChildAuditLogs,
+	                                             boolean latestOnly);
+	
+	/**
+	 * Fetches the audit logs matching the specified arguments that come after the specified date
+	 * created and id in the list sorted by date of creation and id starting with the latest
+	 * 
+	 * @param id the identifier of the object to match against
+	 * @param types the types of objects to match against
+	 * @param actions the actions to match against
+	 * @param user the user that made the changes to match against
+	 * @param startDate the creation date of the log entries to return should be after or equal to
+	 *            this date
+	 * @param endDate the creation date of the log entries to return should be before or equal to
+	 *            this date
+	 * @param excludeChildAuditLogs specifies if AuditLogs for collection items should excluded or
+	 *            not
+	 * @param lastDateCreated the date created of the last log in the previous page, null for the
+	 *            first page
+	 * @param lastAuditLogId the id of the last log in the previous page, null for the first page
+	 * @param length number of results to return (default to return all matching results if
+	 *            <code>null<code>)
+	 * @return list of auditlogs
+	 */
+	public List<AuditLog> getAuditLogsAfter(Serializable id, List<Class<?>> types, List<Action> actions, User user,
+	                                        Date startDate, Date endDate, boolean excludeChildAuditLogs,
+	                                        Date lastDateCreated, Integer lastAuditLogId, Integer length);
+	
+	/**
+	 * Fetches the summaries of the audit logs matching the specified arguments that come after the
+	 * specified date created and id in the list sorted by date of creation and id starting with the
+	 * latest, only the ids of the matching logs are read with the filters and the summaries are
+	 * read by id with a named projection query
+	 * 
+	 * @param types the types of objects to match against
+	 * @param actions the actions to match against
+	 * @param user the user that made the changes to match against
+	 * @param startDate the creation date of the log entries to return should be after or equal to
+	 *            this date
+	 * @param endDate the creation date of the log entries to return should be before or equal to
+	 *            this date
+	 * @param excludeChildAuditLogs specifies if AuditLogs for collection items should excluded or
+	 *            not
+	 * @param lastDateCreated the date created of the last log in the previous page, null for the
+	 *            first page
+	 * @param lastAuditLogId the id of the last log in the previous page, null for the first page
+	 * @param length number of results to return (default to return all matching results if
+	 *            <code>null<code>)
+	 * @return list of summaries
+	 */
+	public List<AuditLogSummary> getAuditLogSummariesAfter(List<Class<?>> types, List<Action> actions, User user,
+	                                                       Date startDate, Date endDate, boolean excludeChildAuditLogs,
+	                                                       Date lastDateCreated, Integer lastAuditLogId, Integer length);
+	
+	/**
+	 * Counts the audit logs matching the specified arguments
+	 * 
+	 * @param id the identifier of the object to match against
+	 * @param types the types of objects to match against
+	 * @param actions the actions to match against
+	 * @param startDate the creation date of the log entries to count should be after or equal to
+	 *            this date
+	 * @param endDate the creation date of the log entries to count should be before or equal to
+	 *            this date
+	 * @param excludeChildAuditLogs specifies if AuditLogs for collection items should excluded or
+	 *            not
+	 * @return the number of matching audit logs
+	 */
+	public Long countAuditLogs(Serializable id, List<Class<?>> types, List<Action> actions, Date startDate, Date endDate,
+	                           boolean excludeChildAuditLogs);
+	
+	/**
+	 * @see AuditLogService#getEstimatedAuditLogCount()
+	 */
+	public Long getEstimatedAuditLogCount();
+	
+	/**
+	 * Streams the audit logs matching the specified arguments to the specified callback, see
+	 * {@link #getAuditLogs(Serializable, List, List, Date, Date, boolean, Integer, Integer)} for the
+	 * meaning of the other arguments
+	 * 
+	 * @param callback the callback to pass each audit log to
+	 * @see AuditLogService#streamAuditLogs(List, List, Date, Date, boolean, AuditLogCallback)
+	 */
+	public void streamAuditLogs(Serializable id, List<Class<?>> types, List<Action> actions, Date startDate, Date endDate,
+	                            boolean excludeChildAuditLogs, AuditLogCallback callback);
+	
 	/**
 	 * Saves the specified object to the database
 	 * 
@@ -61,11 +174,37 @@ public interface AuditLogDAO {
 	 */
 	public void delete(Object object);
 	
+	/**
+	 * @see AuditLogService#getChildAuditLogCounts(java.util.Collection)
+	 */
+	public Map<Integer, Integer> getChildAuditLogCounts(Collection<AuditLog> auditLogs);
+	
+	/**
+	 * @see AuditLogService#getChildAuditLogs(AuditLog, Integer, Integer)
+	 */
+	public List<AuditLog> getChildAuditLogs(AuditLog parentAuditLog, Integer start, Integer length);
+	
+	/**
+	 * @see AuditLogService#getAuditLogsByChangedProperties(List, List, Date, Date, Integer, Integer)
+	 */
+	public List<AuditLog> getAuditLogsByChangedProperties(List<Class<?>> clazzes, List<String> propertyNames,
+	                                                      Date startDate, Date endDate, Integer start, Integer length);
+	
 	/**
 	 * @see AuditLogService#getObjectById(Class, java.io.Serializable)
 	 */
 	public <T> T getObjectById(Class<T> clazz, Serializable id);
 	
+	/**
+	 * @see AuditLogService#getObjectsByIds(Class, java.util.Collection)
+	 */
+	public <T> Map<String, T> getObjectsByIds(Class<T> clazz, Collection<String> ids);
+	
+	/**
+	 * @see AuditLogService#getExistingIds(Class, java.util.Collection)
+	 */
+	public Set<String> getExistingIds(Class<?> clazz, Collection<String> ids);
+	
 	/**
 	 * @see AuditLogService#getObjectByUuid(Class, String)
 	 */
@@ -79,6 +218,233 @@ public interface AuditLogDAO {
 	 */
 	public boolean storeLastStateOfDeletedItems();
 	
+	/**
+	 * Returns true or false depending on the value of the
+	 * AuditLogConstants#GP_INDEX_CHANGED_VALUES global property
+	 * 
+	 * @return true if the changed values should be indexed otherwise false
+	 */
+	public boolean isIndexChangedValues();
+	
+	/**
+	 * Returns the value of the AuditLogConstants#GP_DELETED_ITEMS_COLLECTION_SIZE_LIMIT global
+	 * property
+	 * 
+	 * @return the maximum number of collection elements to serialize per collection or null if
+	 *         there is no limit
+	 */
+	public Integer getDeletedItemsCollectionSizeLimit();
+	
+	/**
+	 * Returns the value of the AuditLogConstants#GP_DELETED_ITEMS_SERIALIZATION_DEPTH global
+	 * property
+	 * 
+	 * @return the number of levels of collections to serialize, defaults to 1
+	 */
+	public int getDeletedItemsSerializationDepth();
+	
+	/**
+	 * Returns the value of the AuditLogConstants#GP_PARALLEL_SERIALIZATION_THRESHOLD global
+	 * property
+	 * 
+	 * @return the minimum number of audit logs in a transaction for their data to be serialized in
+	 *         parallel or null if parallel serialization is disabled
+	 */
+	public Integer getParallelSerializationThreshold();
+	
+	/**
+	 * Returns the value of the AuditLogConstants#GP_LARGE_VALUE_THRESHOLD global property
+	 * 
+	 * @return the length above which text values of updated properties are stored as digests or
+	 *         null if full values should always be stored
+	 */
+	public Integer getLargeValueThreshold();
+	
+	/**
+	 * Returns the value of the AuditLogConstants#GP_SNAPSHOT_INTERVAL global property
+	 * 
+	 * @return the snapshot interval or null if no snapshots should be stored
+	 */
+	public Integer getSnapshotInterval();
+	
+	/**
+	 * Returns the types and their coalescing windows in seconds as specified by the
+	 * AuditLogConstants#GP_COALESCING_WINDOWS global property
+	 * 
+	 * @return a map of types and coalescing windows
+	 */
+	public Map<Class<?>, Integer> getCoalescingWindows();
+	
+	/**
+	 * Fetches the most recent top level audit log for the object with the specified type and
+	 * identifier created on or after the specified date
+	 * 
+	 * @param type the type of the object
+	 * @param identifier the identifier of the object
+	 * @param startDate the creation date of the log should be after or equal to this date
+	 * @return the most recent audit log or null if none is found
+	 * @should return the most recent audit log for the object
+	 */
+	public AuditLog getMostRecentAuditLog(Class<?> type, Serializable identifier, Date startDate);
+	
+	/**
+	 * Replaces the serialized data of the specified saved audit log, this is a bulk update so the
+	 * passed in instance is evicted from the session
+	 * 
+	 * @param auditLog the audit log to update
+	 * @param serializedData the new serialized data
+	 */
+	public void updateSerializedData(AuditLog auditLog, Blob serializedData);
+	
+	/**
+	 * Records the names of the properties changed by the specified saved audit log so that it can
+	 * be found by the names, names already recorded for the audit log are skipped
+	 * 
+	 * @param auditLog the audit log whose changes to record
+	 * @param propertyNames the names of the changed properties
+	 */
+	public void saveChangedProperties(AuditLog auditLog, Collection<String> propertyNames);
+	
+	/**
+	 * Removes the recorded names of the specified properties for the specified saved audit log
+	 * 
+	 * @param auditLog the audit log whose recorded names to remove
+	 * @param propertyNames the names of the properties that are no longer changed
+	 */
+	public void deleteChangedProperties(AuditLog auditLog, Collection<String> propertyNames);
+	
+	/**
+	 * Records the words in the changed values of the specified saved audit logs so that they can be
+	 * found by them, the words of all the logs are inserted in a single batch
+	 * 
+	 * @param auditLogIdTokens the ids of the audit logs mapped to the names of their changed
+	 *            properties mapped to the words in the values
+	 * @param replace specifies if the words already recorded for the audit logs should be removed
+	 *            first, if false the audit logs are expected to have none
+	 */
+	public void saveValueTokens(Map<Integer, Map<String, Set<String>>> auditLogIdTokens, boolean replace);
+	
+	/**
+	 * Removes the recorded words of the audit logs with ids in the specified range
+	 * 
+	 * @param fromAuditLogId the lowest audit log id to include
+	 * @param toAuditLogId the highest audit log id to include
+	 */
+	public void deleteValueTokens(Integer fromAuditLogId, Integer toAuditLogId);
+	
+	/**
+	 * Gets the uuids of the audit logs where the changed values contain all the specified words
+	 * 
+	 * @param tokens the words to match
+	 * @param propertyNames the names of the properties whose values to match, if null all the
+	 *            properties are matched
+	 * @param maxResults the maximum number of uuids to return
+	 * @return the uuids sorted by the date created and id of the logs starting with the latest
+	 */
+	public List<String> searchChangedValues(Collection<String> tokens, List<String> propertyNames, Integer maxResults);
+	
+	/**
+	 * Gets the audit logs with ids in the specified range
+	 * 
+	 * @param fromAuditLogId the lowest audit log id to include
+	 * @param toAuditLogId the highest audit log id to include
+	 * @param actions the actions to match against
+	 * @return the audit logs sorted by id
+	 */
+	public List<AuditLog> getAuditLogsByIdRange(Integer fromAuditLogId, Integer toAuditLogId, List<Action> actions);
+	
+	/**
+	 * @see AuditLogService#getMaxAuditLogId()
+	 */
+	public Integer getMaxAuditLogId();
+	
+	/**
+	 * Gets the ids of the specified saved audit logs for which a snapshot should be stored, this is
+	 * the case for logs of created objects and for updates if the object has no snapshot or at
+	 * least the specified number of updates were logged since its latest snapshot. The number of
+	 * updates is read from the auditlog_latest rows of the objects so the rows are expected to
+	 * already point to the audit logs.
+	 * 
+	 * @param auditLogs the audit logs to check
+	 * @param snapshotInterval the number of updates between snapshots
+	 * @return the ids of the audit logs to store snapshots for
+	 */
+	public Set<Integer> getSnapshotDueAuditLogIds(Collection<AuditLog> auditLogs, int snapshotInterval);
+	
+	/**
+	 * Stores the state of the object after the change recorded by the specified saved audit log and
+	 * resets the number of updates since the latest snapshot of the object
+	 * 
+	 * @param auditLog the audit log
+	 * @param serializedState the serialized state of the object
+	 */
+	public void saveSnapshot(AuditLog auditLog, Blob serializedState);
+	
+	/**
+	 * Gets the audit log with a snapshot for the object with the specified id that is closest to
+	 * the specified date
+	 * 
+	 * @param id the id of the object
+	 * @param types the types to match against
+	 * @param date the date to match against
+	 * @param atOrBefore specifies if the latest log created at or before the date should be
+	 *            returned otherwise the earliest log created after it is returned
+	 * @return the audit log or null if there is none
+	 */
+	public AuditLog getSnapshotAuditLog(Serializable id, List<Class<?>> types, Date date, boolean atOrBefore);
+	
+	/**
+	 * Gets the state stored in the snapshot of the specified audit log
+	 * 
+	 * @param auditLog the audit log
+	 * @return a map of property names and their serialized values or null if there is no snapshot
+	 */
+	public Map<String, Object> getSnapshotState(AuditLog auditLog);
+	
+	/**
+	 * Points the rows in the auditlog_latest table for the objects of the specified saved audit log
+	 * and its child logs to the logs unless a row already points to a later log
+	 * 
+	 * @param auditLog the saved audit log
+	 */
+	public void updateLatestAuditLog(AuditLog auditLog);
+	
+	/**
+	 * Gets the latest audit log for the object with the specified id from the auditlog_latest
+	 * table
+	 * 
+	 * @param id the identifier of the object
+	 * @param types the type and subclasses of the object
+	 * @return the audit log or null if there is none
+	 */
+	public AuditLog getLatestAuditLog(Serializable id, List<Class<?>> types);
+	
+	/**
+	 * Gets the audit logs of the objects whose latest audit log is a delete from the
+	 * auditlog_latest table, starting with the latest
+	 * 
+	 * @param types the types to match against, null matches all types
+	 * @param startDate the deletes to return should be after or equal to this date
+	 * @param maxResults the maximum number of logs to return, null returns all
+	 * @return list of auditlogs
+	 */
+	public List<AuditLog> getLatestDeletedAuditLogs(List<Class<?>> types, Date startDate, Integer maxResults);
+	
+	/**
+	 * Fetches the elements in the collections with the specified role belonging to the owners with
+	 * the specified ids with a single query per batch of owners, if idsOnly is true only the
+	 * identifiers of the elements are read i.e the collection elements don't get loaded
+	 * 
+	 * @param role the role of the collections, the elements must be entities
+	 * @param ownerIds the identifiers of the collection owners
+	 * @param idsOnly specifies whether to return the identifiers of the elements or the elements
+	 * @return a map of owner ids and the elements or their identifiers
+	 * @should return the ids of the collection elements of each owner
+	 * @should return the collection elements of each owner if ids only is false
+	 */
+	public Map<Serializable, List<Object>> getCollectionElements(String role, Collection<Serializable> ownerIds,
+	                                                             boolean idsOnly);
+	
 	/**
 	 * Returns unique database identifier for the specified persistent object
 	 * 
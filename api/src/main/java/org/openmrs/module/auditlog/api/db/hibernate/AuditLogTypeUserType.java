@@ -0,0 +1,161 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.api.db.hibernate;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.hibernate.HibernateException;
+import org.hibernate.usertype.UserType;
+import org.openmrs.module.auditlog.util.AuditLogTypeDictionary;
+
+/**
+ * Maps the type of an audit log to the integer id of its row in the auditlog_type table, the ids
+ * are resolved via the {@link AuditLogTypeDictionary} which is reloaded when a lookup misses, a
+ * type that is missing when binding a parameter is most likely not audited so the reload is rate
+ * limited in that case.
+ */
+public class AuditLogTypeUserType implements UserType {
+	
+	//Bound in place of the id of a type that has never been audited so that no row matches it
+	private static final int UNKNOWN_TYPE_ID = -1;
+	
+	/**
+	 * @see org.hibernate.usertype.UserType#sqlTypes()
+	 */
+	@Override
+	public int[] sqlTypes() {
+		return new int[] { Types.INTEGER };
+	}
+	
+	/**
+	 * @see org.hibernate.usertype.UserType#returnedClass()
+	 */
+	@Override
+	public Class<?> returnedClass() {
+		return Class.class;
+	}
+	
+	/**
+	 * @see org.hibernate.usertype.UserType#equals(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object x, Object y) throws HibernateException {
+		return ObjectUtils.equals(x, y);
+	}
+	
+	/**
+	 * @see org.hibernate.usertype.UserType#hashCode(java.lang.Object)
+	 */
+	@Override
+	public int hashCode(Object x) throws HibernateException {
+		return x.hashCode();
+	}
+	
+	/**
+	 * @see org.hibernate.usertype.UserType#nullSafeGet(java.sql.ResultSet, java.lang.String[],
+	 *      java.lang.Object)
+	 */
+	@Override
+	public Object nullSafeGet(ResultSet rs, String[] names, Object owner) throws HibernateException, SQLException {
+		int id = rs.getInt(names[0]);
+		if (rs.wasNull()) {
+			return null;
+		}
+		
+		AuditLogTypeDictionary dictionary = AuditLogTypeDictionary.getInstance();
+		Class<?> type = dictionary.getType(id);
+		if (type == null) {
+			//The type was added by another node, there is no point reloading for a class that can't be loaded
+			if (!dictionary.isUnloadable(id)) {
+				dictionary.load(rs.getStatement().getConnection());
+				type = dictionary.getType(id);
+			}
+			if (type == null) {
+				throw new HibernateException("Failed to find the audit log type with id " + id);
+			}
+		}
+		
+		return type;
+	}
+	
+	/**
+	 * @see org.hibernate.usertype.UserType#nullSafeSet(java.sql.PreparedStatement,
+	 *      java.lang.Object, int)
+	 */
+	@Override
+	public void nullSafeSet(PreparedStatement st, Object value, int index) throws HibernateException, SQLException {
+		if (value == null) {
+			st.setNull(index, Types.INTEGER);
+			return;
+		}
+		
+		Class<?> type = (Class<?>) value;
+		AuditLogTypeDictionary dictionary = AuditLogTypeDictionary.getInstance();
+		Integer id = dictionary.getId(type);
+		if (id == null) {
+			dictionary.loadIfStale(st.getConnection());
+			id = dictionary.getId(type);
+		}
+		
+		//The DAO adds the types of new audit logs to the dictionary before saving them, so here a
+		//missing type can only be a query parameter
+		st.setInt(index, (id != null) ? id : UNKNOWN_TYPE_ID);
+	}
+	
+	/**
+	 * @see org.hibernate.usertype.UserType#deepCopy(java.lang.Object)
+	 */
+	@Override
+	public Object deepCopy(Object value) throws HibernateException {
+		return value;
+	}
+	
+	/**
+	 * @see org.hibernate.usertype.UserType#isMutable()
+	 */
+	@Override
+	public boolean isMutable() {
+		return false;
+	}
+	
+	/**
+	 * @see org.hibernate.usertype.UserType#disassemble(java.lang.Object)
+	 */
+	@Override
+	public Serializable disassemble(Object value) throws HibernateException {
+		return (Serializable) value;
+	}
+	
+	/**
+	 * @see org.hibernate.usertype.UserType#assemble(java.io.Serializable, java.lang.Object)
+	 */
+	@Override
+	public Object assemble(Serializable cached, Object owner) throws HibernateException {
+		return cached;
+	}
+	
+	/**
+	 * @see org.hibernate.usertype.UserType#replace(java.lang.Object, java.lang.Object,
+	 *      java.lang.Object)
+	 */
+	@Override
+	public Object replace(Object original, Object target, Object owner) throws HibernateException {
+		return original;
+	}
+}
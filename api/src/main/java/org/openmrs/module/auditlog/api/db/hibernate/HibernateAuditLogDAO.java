@@ -3,36 +3,75 @@
  * Version 1.0 (the "License"); you may not use this file except in
  * compliance with the License. You may obtain a copy of the License at
  * http://license.openmrs.org
- *
+ * 
  * Software distributed under the License is distributed on an "AS IS"
  * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
  * License for the specific language governing rights and limitations
  * under the License.
- *
+ * 
  * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
  */
 package org.openmrs.module.auditlog.api.db.hibernate;
 
 import java.io.Serializable;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import org.apache.commons.lang.math.NumberUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.hibernate.CacheMode;
 import org.hibernate.Criteria;
 import org.hibernate.EntityMode;
+import org.hibernate.FetchMode;
+import org.hibernate.FlushMode;
+import org.hibernate.Hibernate;
+import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.SessionFactoryImplementor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.persister.collection.CollectionPersister;
 import org.openmrs.GlobalProperty;
+import org.openmrs.PersonName;
+import org.openmrs.User;
+import org.openmrs.api.APIException;
 import org.openmrs.api.GlobalPropertyListener;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.auditlog.AuditLog;
 import org.openmrs.module.auditlog.AuditLog.Action;
+import org.openmrs.module.auditlog.AuditLogSnapshot;
+import org.openmrs.module.auditlog.AuditLogSummary;
+import org.openmrs.module.auditlog.api.AuditLogCallback;
 import org.openmrs.module.auditlog.api.db.AuditLogDAO;
 import org.openmrs.module.auditlog.util.AuditLogConstants;
+import org.openmrs.module.auditlog.util.AuditLogTypeDictionary;
 import org.openmrs.module.auditlog.util.AuditLogUtil;
+import org.openmrs.module.auditlog.util.PropertyNameDictionary;
+import org.openmrs.module.auditlog.util.TimeOrderedUuidGenerator;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 public class HibernateAuditLogDAO implements AuditLogDAO, GlobalPropertyListener {
 	
@@ -40,8 +79,37 @@ public class HibernateAuditLogDAO implements AuditLogDAO, GlobalPropertyListener
 	
 	private static Boolean storeLastStateOfDeletedItemsCache;
 	
+	private static Boolean indexChangedValuesCache;
+	
+	//Caches the values of the integer global properties, a null value means the property is blank
+	private static final Map<String, Integer> integerGlobalPropertyCache = Collections
+	        .synchronizedMap(new HashMap<String, Integer>());
+	
+	private static Map<Class<?>, Integer> coalescingWindowsCache;
+	
+	//The number of audit logs to read at a time when streaming after which the session is cleared
+	private static final int STREAMING_BATCH_SIZE = 100;
+	
+	//The maximum number of ids to include in a single IN clause
+	private static final int IN_CLAUSE_BATCH_SIZE = 500;
+	
+	//The query cache region for the lookups of audit logs by uuid
+	private static final String AUDIT_LOG_UUID_CACHE_REGION = "auditlog.AuditLog.uuid";
+	
+	//Matches the audit logs that have a snapshot
+	private static final String SNAPSHOT_EXISTS_RESTRICTION = "exists (select 1 from auditlog_snapshot s "
+	        + "where s.audit_log_id = {alias}.audit_log_id)";
+	
 	private SessionFactory sessionFactory;
 	
+	/**
+	 * The work to run by {@link HibernateAuditLogDAO#withManualFlush(SessionWork)}
+	 */
+	private interface SessionWork<T> {
+		
+		T doInSession(Session session);
+	}
+	
 	/**
 	 * @param sessionFactory the sessionFactory to set
 	 */
@@ -49,6 +117,26 @@ public class HibernateAuditLogDAO implements AuditLogDAO, GlobalPropertyListener
 		this.sessionFactory = sessionFactory;
 	}
 	
+	/**
+	 * Runs the specified work in the current session with the flush mode set to manual, the
+	 * interceptor calls most of the methods that write to the side tables during a flush so we
+	 * don't want hibernate to flush the session again when they run their queries.
+	 * 
+	 * @param work the work to run
+	 * @return the value returned by the work
+	 */
+	private <T> T withManualFlush(SessionWork<T> work) {
+		Session session = sessionFactory.getCurrentSession();
+		FlushMode originalFlushMode = session.getFlushMode();
+		session.setFlushMode(FlushMode.MANUAL);
+		try {
+			return work.doInSession(session);
+		}
+		finally {
+			session.setFlushMode(originalFlushMode);
+		}
+	}
+	
 	/**
 	 * @see AuditLogDAO#getAuditLogs(java.io.Serializable, java.util.List, java.util.List,
 	 *      java.util.Date, java.util.Date, boolean, Integer, Integer)
@@ -58,9 +146,194 @@ public class HibernateAuditLogDAO implements AuditLogDAO, GlobalPropertyListener
 	public List<AuditLog> getAuditLogs(Serializable id, List<Class<?>> types, List<Action> actions, Date startDate,
 	                                   Date endDate, boolean excludeChildAuditLogs, Integer start, Integer length) {
 		
-		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(AuditLog.class);
+		Criteria criteria = createAuditLogCriteria(sessionFactory.getCurrentSession(), id, types, actions, null,
+		    startDate, endDate, excludeChildAuditLogs);
+		addDefaultOrder(criteria);
+		if (start != null) {
+			criteria.setFirstResult(start);
+		}
+		if (length != null && length > 0) {
+			criteria.setMaxResults(length);
+		}
+		
+		return criteria.list();
+	}
+	
+	/**
+	 * @see AuditLogDAO#getAuditLogsForObjects(java.util.List, java.util.Collection, java.util.List,
+	 *      java.util.Date, java.util.Date, boolean, boolean)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<AuditLog> getAuditLogsForObjects(List<Class<?>> types, Collection<String> ids, List<Action> actions,
+	                                             Date startDate, Date endDate, boolean excludeChildAuditLogs,
+	                                             boolean latestOnly) {
+		
+		List<AuditLog> auditLogs = new ArrayList<AuditLog>();
+		if (ids == null) {
+			return auditLogs;
+		}
+		
+		//Like for a single object, numeric ids are matched against the numeric identifier column
+		List<Serializable> numericIds = new ArrayList<Serializable>();
+		List<Serializable> otherIds = new ArrayList<Serializable>();
+		for (String id : new LinkedHashSet<String>(ids)) {
+			if (StringUtils.isBlank(id)) {
+				continue;
+			}
+			Long numericId = AuditLogUtil.getNumericIdentifier(id);
+			if (numericId != null) {
+				numericIds.add(numericId);
+			} else {
+				otherIds.add(id.trim());
+			}
+		}
+		
+		Map<String, List<Serializable>> propertyIdsMap = new LinkedHashMap<String, List<Serializable>>();
+		propertyIdsMap.put("numericIdentifier", numericIds);
+		propertyIdsMap.put("identifier", otherIds);
+		Session session = sessionFactory.getCurrentSession();
+		for (Map.Entry<String, List<Serializable>> entry : propertyIdsMap.entrySet()) {
+			String propertyName = entry.getKey();
+			List<Serializable> propertyIds = entry.getValue();
+			for (int i = 0; i < propertyIds.size(); i += IN_CLAUSE_BATCH_SIZE) {
+				List<Serializable> batch = propertyIds.subList(i, Math.min(i + IN_CLAUSE_BATCH_SIZE, propertyIds.size()));
+				Criteria criteria = createAuditLogCriteria(session, null, types, actions, null, startDate, endDate,
+				    excludeChildAuditLogs);
+				criteria.add(Restrictions.in(propertyName, batch));
+				if (latestOnly) {
+					//Logs are never back dated so the one with the highest id is the latest, this
+					//way the database only returns one row per object
+					criteria.setProjection(Projections.projectionList().add(Projections.max("auditLogId")).add(
+					    Projections.groupProperty(propertyName)));
+					List<Integer> latestIds = new ArrayList<Integer>();
+					for (Object[] row : (List<Object[]>) criteria.list()) {
+						latestIds.add((Integer) row[0]);
+					}
+					if (latestIds.isEmpty()) {
+						continue;
+					}
+					criteria = session.createCriteria(AuditLog.class);
+					criteria.add(Restrictions.in("auditLogId", latestIds));
+				}
+				addDefaultOrder(criteria);
+				auditLogs.addAll(criteria.list());
+			}
+		}
+		
+		return auditLogs;
+	}
+	
+	/**
+	 * @see AuditLogDAO#getAuditLogsAfter(java.io.Serializable, java.util.List, java.util.List,
+	 *      org.openmrs.User, java.util.Date, java.util.Date, boolean, java.util.Date, Integer, Integer)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<AuditLog> getAuditLogsAfter(Serializable id, List<Class<?>> types, List<Action> actions, User user,
+	                                        Date startDate, Date endDate, boolean excludeChildAuditLogs,
+	                                        Date lastDateCreated, Integer lastAuditLogId, Integer length) {
+		
+		Criteria criteria = createAuditLogCriteria(sessionFactory.getCurrentSession(), id, types, actions, user,
+		    startDate, endDate, excludeChildAuditLogs);
+		addDefaultOrder(criteria);
+		addSeekRestriction(criteria, lastDateCreated, lastAuditLogId);
+		if (length != null && length > 0) {
+			criteria.setMaxResults(length);
+		}
+		
+		return criteria.list();
+	}
+	
+	/**
+	 * @see AuditLogDAO#getAuditLogSummariesAfter(java.util.List, java.util.List, org.openmrs.User,
+	 *      java.util.Date, java.util.Date, boolean, java.util.Date, Integer, Integer)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<AuditLogSummary> getAuditLogSummariesAfter(List<Class<?>> types, List<Action> actions, User user,
+	                                                       Date startDate, Date endDate, boolean excludeChildAuditLogs,
+	                                                       Date lastDateCreated, Integer lastAuditLogId, Integer length) {
+		
+		Session session = sessionFactory.getCurrentSession();
+		Criteria criteria = createAuditLogCriteria(session, null, types, actions, user, startDate, endDate,
+		    excludeChildAuditLogs);
+		addDefaultOrder(criteria);
+		addSeekRestriction(criteria, lastDateCreated, lastAuditLogId);
+		criteria.setProjection(Projections.id());
+		if (length != null && length > 0) {
+			criteria.setMaxResults(length);
+		}
+		List<Integer> ids = criteria.list();
+		List<AuditLogSummary> summaries = new ArrayList<AuditLogSummary>(ids.size());
+		if (ids.isEmpty()) {
+			return summaries;
+		}
+		
+		Map<Integer, Integer> idCountMap = getChildAuditLogCountsByIds(ids);
+		Map<Integer, AuditLogSummary> idSummaryMap = new HashMap<Integer, AuditLogSummary>();
+		for (int i = 0; i < ids.size(); i += IN_CLAUSE_BATCH_SIZE) {
+			Query query = session.getNamedQuery("AuditLog.getSummaries");
+			query.setBoolean("preferred", true);
+			query.setBoolean("voided", false);
+			query.setParameterList("ids", ids.subList(i, Math.min(i + IN_CLAUSE_BATCH_SIZE, ids.size())));
+			for (Object[] row : (List<Object[]>) query.list()) {
+				Integer auditLogId = (Integer) row[0];
+				//There is a row per preferred name if a user has more than one
+				if (idSummaryMap.containsKey(auditLogId)) {
+					continue;
+				}
+				Integer childLogCount = idCountMap.get(auditLogId);
+				idSummaryMap.put(auditLogId, new AuditLogSummary(auditLogId, (String) row[1], (Class<?>) row[2],
+				        (String) row[3], (Action) row[4], (Date) row[5], (String) row[6], (String) row[7], getFullName(
+				            row, 8), (childLogCount != null) ? childLogCount : 0));
+			}
+		}
+		
+		//Keep the order of the ids
+		for (Integer id : ids) {
+			if (idSummaryMap.containsKey(id)) {
+				summaries.add(idSummaryMap.get(id));
+			}
+		}
+		
+		return summaries;
+	}
+	
+	/**
+	 * Gets the full name from the name parts read by the AuditLog.getSummaries query starting at
+	 * the specified index, the parts are put in a person name so that the name is formatted the
+	 * same way as elsewhere
+	 */
+	private String getFullName(Object[] row, int start) {
+		boolean hasName = false;
+		for (int i = start; i < row.length; i++) {
+			if (row[i] != null) {
+				hasName = true;
+				break;
+			}
+		}
+		if (!hasName) {
+			return null;
+		}
+		
+		PersonName name = new PersonName();
+		name.setPrefix((String) row[start]);
+		name.setGivenName((String) row[start + 1]);
+		name.setMiddleName((String) row[start + 2]);
+		name.setFamilyNamePrefix((String) row[start + 3]);
+		name.setFamilyName((String) row[start + 4]);
+		name.setFamilyName2((String) row[start + 5]);
+		name.setFamilyNameSuffix((String) row[start + 6]);
+		name.setDegree((String) row[start + 7]);
+		return name.getFullName();
+	}
+	
+	private Criteria createAuditLogCriteria(Session session, Serializable id, List<Class<?>> types, List<Action> actions,
+	                                        User user, Date startDate, Date endDate, boolean excludeChildAuditLogs) {
+		Criteria criteria = session.createCriteria(AuditLog.class);
 		if (id != null) {
-			criteria.add(Restrictions.eq("identifier", AuditLogUtil.serializeObject(id)));
+			addIdentifierRestriction(criteria, id);
 		}
 		
 		if (types != null) {
@@ -69,6 +342,9 @@ public class HibernateAuditLogDAO implements AuditLogDAO, GlobalPropertyListener
 		if (actions != null) {
 			criteria.add(Restrictions.in("action", actions));
 		}
+		if (user != null) {
+			criteria.add(Restrictions.eq("user", user));
+		}
 		if (excludeChildAuditLogs) {
 			criteria.add(Restrictions.isNull("parentAuditLog"));
 		}
@@ -78,17 +354,130 @@ public class HibernateAuditLogDAO implements AuditLogDAO, GlobalPropertyListener
 		if (endDate != null) {
 			criteria.add(Restrictions.le("dateCreated", endDate));
 		}
-		if (start != null) {
-			criteria.setFirstResult(start);
+		
+		return criteria;
+	}
+	
+	/**
+	 * Restricts the results to the logs for the object with the specified identifier, numeric
+	 * identifiers are matched against the numeric identifier column which is narrower to compare
+	 * and index than the string column
+	 */
+	private void addIdentifierRestriction(Criteria criteria, Serializable id) {
+		String identifier = AuditLogUtil.serializeObject(id);
+		Long numericIdentifier = AuditLogUtil.getNumericIdentifier(identifier);
+		if (numericIdentifier != null) {
+			criteria.add(Restrictions.eq("numericIdentifier", numericIdentifier));
+		} else {
+			criteria.add(Restrictions.eq("identifier", identifier));
 		}
-		if (length != null && length > 0) {
-			criteria.setMaxResults(length);
+	}
+	
+	/**
+	 * Restricts the results to the logs that come after the log with the specified date created and
+	 * id in the default order
+	 */
+	private void addSeekRestriction(Criteria criteria, Date lastDateCreated, Integer lastAuditLogId) {
+		if (lastDateCreated != null && lastAuditLogId != null) {
+			//The first restriction is redundant but lets the database use a range scan on date_created
+			criteria.add(Restrictions.le("dateCreated", lastDateCreated));
+			criteria.add(Restrictions.or(Restrictions.lt("dateCreated", lastDateCreated), Restrictions.and(
+			    Restrictions.eq("dateCreated", lastDateCreated), Restrictions.lt("auditLogId", lastAuditLogId))));
 		}
-		
-		//Show the latest logs first
+	}
+	
+	private void addDefaultOrder(Criteria criteria) {
+		//Show the latest logs first, the id breaks ties between logs created in the same second
 		criteria.addOrder(Order.desc("dateCreated"));
+		criteria.addOrder(Order.desc("auditLogId"));
+	}
+	
+	/**
+	 * @see AuditLogDAO#countAuditLogs(java.io.Serializable, java.util.List, java.util.List,
+	 *      java.util.Date, java.util.Date, boolean)
+	 */
+	@Override
+	public Long countAuditLogs(Serializable id, List<Class<?>> types, List<Action> actions, Date startDate, Date endDate,
+	                           boolean excludeChildAuditLogs) {
+		Criteria criteria = createAuditLogCriteria(sessionFactory.getCurrentSession(), id, types, actions, null,
+		    startDate, endDate, excludeChildAuditLogs);
+		criteria.setProjection(Projections.rowCount());
 		
-		return criteria.list();
+		return ((Number) criteria.uniqueResult()).longValue();
+	}
+	
+	/**
+	 * @see AuditLogDAO#streamAuditLogs(java.io.Serializable, java.util.List, java.util.List,
+	 *      java.util.Date, java.util.Date, boolean, AuditLogCallback)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void streamAuditLogs(Serializable id, List<Class<?>> types, List<Action> actions, Date startDate, Date endDate,
+	                            boolean excludeChildAuditLogs, AuditLogCallback callback) {
+		//Use a separate session on the same connection so that clearing it doesn't detach the
+		//caller's objects but the uncommitted changes in the current transaction are still visible
+		Session session = sessionFactory.openSession(sessionFactory.getCurrentSession().connection());
+		try {
+			//The logs are read a page at a time using the same keyset as getAuditLogsAfter rather than
+			//through an open cursor, this way lazy data like the serialized data can be loaded for a
+			//whole page with one query while the page is being handled
+			Date lastDateCreated = null;
+			Integer lastAuditLogId = null;
+			List<AuditLog> page;
+			do {
+				Criteria criteria = createAuditLogCriteria(session, id, types, actions, null, startDate, endDate,
+				    excludeChildAuditLogs);
+				addDefaultOrder(criteria);
+				addSeekRestriction(criteria, lastDateCreated, lastAuditLogId);
+				criteria.setFetchMode("user", FetchMode.JOIN);
+				criteria.setFetchMode("parentAuditLog", FetchMode.JOIN);
+				criteria.setCacheMode(CacheMode.IGNORE);
+				criteria.setMaxResults(STREAMING_BATCH_SIZE);
+				page = criteria.list();
+				for (AuditLog auditLog : page) {
+					callback.handle(auditLog);
+				}
+				if (!page.isEmpty()) {
+					AuditLog last = page.get(page.size() - 1);
+					lastDateCreated = last.getDateCreated();
+					lastAuditLogId = last.getAuditLogId();
+				}
+				session.clear();
+			} while (page.size() == STREAMING_BATCH_SIZE);
+		}
+		catch (RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new APIException("Failed to stream the audit logs", e);
+		}
+		finally {
+			session.close();
+		}
+	}
+	
+	/**
+	 * @see AuditLogDAO#getEstimatedAuditLogCount()
+	 */
+	@Override
+	public Long getEstimatedAuditLogCount() {
+		Dialect dialect = ((SessionFactoryImplementor) sessionFactory).getDialect();
+		if (dialect instanceof MySQLDialect) {
+			try {
+				//This is the row count from the table statistics, it is approximate for innodb tables
+				Object estimate = sessionFactory.getCurrentSession().createSQLQuery(
+				    "select table_rows from information_schema.tables where table_schema = database() "
+				            + "and table_name = 'auditlog_audit_log'").uniqueResult();
+				if (estimate != null) {
+					return ((Number) estimate).longValue();
+				}
+			}
+			catch (HibernateException e) {
+				log.warn("Failed to read the estimated audit log count from the table statistics", e);
+			}
+		}
+		
+		return countAuditLogs(null, null, null, null, null, false);
 	}
 	
 	/**
@@ -98,11 +487,19 @@ public class HibernateAuditLogDAO implements AuditLogDAO, GlobalPropertyListener
 	public <T> T save(T object) {
 		if (object instanceof AuditLog) {
 			AuditLog auditLog = (AuditLog) object;
+			//Audit logs are immutable, a log that was already saved e.g along with its parent is left as is
+			if (auditLog.getAuditLogId() != null) {
+				return object;
+			}
 			//Hibernate has issues with saving the parentAuditLog field if the parent isn't yet saved
 			//so we need to first save the parent before its children
 			if (auditLog.getParentAuditLog() != null && auditLog.getParentAuditLog().getAuditLogId() == null) {
 				save(auditLog.getParentAuditLog());
 			}
+			prepareForSave(auditLog);
+			//Audit logs are only ever inserted so there is no need for the unsaved value check of saveOrUpdate
+			sessionFactory.getCurrentSession().save(auditLog);
+			return object;
 		}
 		
 		sessionFactory.getCurrentSession().saveOrUpdate(object);
@@ -110,99 +507,1222 @@ public class HibernateAuditLogDAO implements AuditLogDAO, GlobalPropertyListener
 	}
 	
 	/**
-	 * @see AuditLogDAO#delete(Object)
+	 * Adds the types of the specified unsaved audit log and its child logs to the auditlog_type
+	 * table if they are not yet there and assigns them time ordered uuids. The type insert is part
+	 * of the current transaction so the new entries are only added to the dictionary once it
+	 * commits.
+	 * 
+	 * @param auditLog the audit log about to be saved
 	 */
-	@Override
-	public void delete(Object object) {
-		sessionFactory.getCurrentSession().delete(object);
+	private void prepareForSave(AuditLog auditLog) {
+		if (auditLog.getAuditLogId() != null) {
+			return;
+		}
+		registerType(auditLog.getType());
+		if (auditLog.getUuid() == null) {
+			auditLog.setUuid(TimeOrderedUuidGenerator.getInstance().generate().toString());
+		}
+		if (auditLog.hasChildLogs()) {
+			for (AuditLog childLog : auditLog.getChildAuditLogs()) {
+				prepareForSave(childLog);
+			}
+			//The hash codes of the child logs change with their uuids
+			auditLog.setChildAuditLogs(new LinkedHashSet<AuditLog>(auditLog.getChildAuditLogs()));
+		}
+	}
+	
+	private void registerType(final Class<?> type) {
+		if (type == null || getTypeId(type) != null) {
+			return;
+		}
+		
+		Integer id = withManualFlush(new SessionWork<Integer>() {
+			
+			@Override
+			public Integer doInSession(Session session) {
+				return insertDictionaryRow(session, "auditlog_type", "type_id", "classname", type.getName());
+			}
+		});
+		final AuditLogTypeDictionary dictionary = AuditLogTypeDictionary.getInstance();
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			dictionary.put(id, type);
+			return;
+		}
+		
+		dictionary.putPending(id, type);
+		runAfterCompletion(new Runnable() {
+			
+			@Override
+			public void run() {
+				dictionary.publishPending();
+			}
+		}, new Runnable() {
+			
+			@Override
+			public void run() {
+				dictionary.clearPending();
+			}
+		});
 	}
 	
 	/**
-	 * @see AuditLogDAO#getObjectById(Class, java.io.Serializable)
+	 * Gets the id of the specified type from the dictionary, the dictionary is reloaded if the type
+	 * isn't in it since another node may have added it, the reload is rate limited since the type
+	 * is most likely not audited at all
+	 * 
+	 * @param type the type to look up
+	 * @return the id or null if the type has never been audited
 	 */
-	@SuppressWarnings("unchecked")
-	@Override
-	public <T> T getObjectById(Class<T> clazz, Serializable id) {
+	private Integer getTypeId(Class<?> type) {
+		AuditLogTypeDictionary dictionary = AuditLogTypeDictionary.getInstance();
+		Integer id = dictionary.getId(type);
 		if (id == null) {
-			return null;
-		}
-		Serializable serializable = id;
-		String str = id.toString();
-		if (NumberUtils.isDigits(str)) {
 			try {
-				serializable = Integer.valueOf(str);
+				dictionary.loadIfStale(sessionFactory.getCurrentSession().connection());
 			}
-			catch (NumberFormatException nfe1) {
-				try {
-					serializable = Long.valueOf(str);
-				}
-				catch (NumberFormatException nfe2) {
-					//ignore
-				}
+			catch (SQLException e) {
+				throw new APIException("Failed to load the audit log types", e);
 			}
+			id = dictionary.getId(type);
 		}
-		return (T) sessionFactory.getCurrentSession().get(clazz, serializable);
+		
+		return id;
 	}
 	
 	/**
-	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getObjectByUuid(java.lang.Class,
-	 *      java.lang.String)
+	 * Inserts a row with the specified value into a dictionary table and returns its id, if another
+	 * transaction inserts the same value first only the failed insert is rolled back and the id of
+	 * the other row is returned.
+	 * 
+	 * @param session the current session
+	 * @param table the dictionary table
+	 * @param idColumn the id column of the table
+	 * @param valueColumn the unique value column of the table
+	 * @param value the value to insert
+	 * @return the id of the row
 	 */
-	@SuppressWarnings("unchecked")
-	@Override
-	public <T> T getObjectByUuid(Class<T> clazz, String uuid) {
-		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(clazz);
-		criteria.add(Restrictions.eq("uuid", uuid));
-		return (T) criteria.uniqueResult();
+	private Integer insertDictionaryRow(Session session, String table, String idColumn, String valueColumn, String value) {
+		String select = "select " + idColumn + " from " + table + " where " + valueColumn + " = :value";
+		Query insert = session.createSQLQuery("insert into " + table + " (" + valueColumn + ") values (:value)");
+		insert.setString("value", value);
+		if (!insertInSavepoint(session, insert)) {
+			if (log.isDebugEnabled()) {
+				log.debug("The value " + value + " was inserted concurrently into " + table);
+			}
+			//The other row is committed but it isn't visible to a plain read in a repeatable read snapshot
+			select += " for update";
+		}
+		
+		return ((Number) session.createSQLQuery(select).setString("value", value).uniqueResult()).intValue();
 	}
 	
 	/**
-	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#storeLastStateOfDeletedItems()
-	 * @return
+	 * Runs the specified insert inside a savepoint so that if another transaction inserts a row with
+	 * the same unique key first, only the failed insert is rolled back and not the transaction that
+	 * is saving the audit logs, otherwise some databases e.g. PostgreSQL abort the whole transaction.
+	 * 
+	 * @param session the current session
+	 * @param insert the insert to run
+	 * @return true if the row was inserted, false if a row with the same unique key already exists
 	 */
-	public boolean storeLastStateOfDeletedItems() {
-		if (storeLastStateOfDeletedItemsCache == null) {
-			String gpValue = Context.getAdministrationService().getGlobalProperty(
-			    AuditLogConstants.GP_STORE_LAST_STATE_OF_DELETED_ITEMS);
-			storeLastStateOfDeletedItemsCache = Boolean.valueOf(gpValue);
+	private boolean insertInSavepoint(Session session, Query insert) {
+		Connection connection = session.connection();
+		Savepoint savepoint;
+		try {
+			savepoint = connection.setSavepoint();
 		}
-		return storeLastStateOfDeletedItemsCache;
+		catch (SQLException e) {
+			throw new APIException("Failed to set a savepoint", e);
+		}
+		
+		try {
+			insert.executeUpdate();
+		}
+		catch (ConstraintViolationException e) {
+			try {
+				connection.rollback(savepoint);
+			}
+			catch (SQLException se) {
+				throw new APIException("Failed to roll back to the savepoint", se);
+			}
+			return false;
+		}
+		
+		try {
+			connection.releaseSavepoint(savepoint);
+		}
+		catch (SQLException e) {
+			throw new APIException("Failed to release the savepoint", e);
+		}
+		return true;
 	}
 	
 	/**
-	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getId(Object)
-	 * @return
+	 * Gets the id of the specified property name, the name is added to the auditlog_property_name
+	 * table if it is not yet there and create is set to true
+	 * 
+	 * @param name the property name to look up
+	 * @param create specifies if the name should be added if it is missing
+	 * @return the id or null if the name is missing and create is false
+	 */
+	private Integer getPropertyNameId(final String name, boolean create) {
+		final PropertyNameDictionary dictionary = PropertyNameDictionary.getInstance();
+		Integer id = dictionary.getId(name);
+		if (id != null) {
+			return id;
+		}
+		
+		Session session = sessionFactory.getCurrentSession();
+		Number number = (Number) session.createSQLQuery(
+		    "select property_name_id from auditlog_property_name where name = :name").setString("name", name)
+		        .uniqueResult();
+		if (number != null) {
+			dictionary.put(name, number.intValue());
+			return number.intValue();
+		}
+		if (!create) {
+			return null;
+		}
+		
+		id = insertDictionaryRow(session, "auditlog_property_name", "property_name_id", "name", name);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			dictionary.put(name, id);
+			return id;
+		}
+		
+		dictionary.putPending(name, id);
+		runAfterCompletion(new Runnable() {
+			
+			@Override
+			public void run() {
+				dictionary.publishPending();
+			}
+		}, new Runnable() {
+			
+			@Override
+			public void run() {
+				dictionary.clearPending();
+			}
+		});
+		
+		return id;
+	}
+	
+	/**
+	 * Runs the first runnable after the current transaction if it commits otherwise the second one,
+	 * this is used to publish or discard the dictionary entries whose rows were inserted in the
+	 * transaction
+	 */
+	private void runAfterCompletion(final Runnable onCommit, final Runnable onRollback) {
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			
+			@Override
+			public void afterCompletion(int status) {
+				if (status == STATUS_COMMITTED) {
+					onCommit.run();
+				} else {
+					onRollback.run();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * @see AuditLogDAO#delete(Object)
 	 */
 	@Override
-	public Serializable getId(Object object) {
-		return sessionFactory.getClassMetadata(object.getClass()).getIdentifier(object, EntityMode.POJO);
+	public void delete(Object object) {
+		sessionFactory.getCurrentSession().delete(object);
 	}
 	
 	/**
-	 * @see org.openmrs.api.GlobalPropertyListener#globalPropertyChanged(org.openmrs.GlobalProperty)
+	 * @see AuditLogDAO#getChildAuditLogCounts(java.util.Collection)
 	 */
 	@Override
-	public void globalPropertyChanged(GlobalProperty gp) {
-		if (AuditLogConstants.GP_STORE_LAST_STATE_OF_DELETED_ITEMS.equals(gp.getProperty())) {
-			storeLastStateOfDeletedItemsCache = null;
+	public Map<Integer, Integer> getChildAuditLogCounts(Collection<AuditLog> auditLogs) {
+		if (auditLogs == null) {
+			return new HashMap<Integer, Integer>();
+		}
+		List<Integer> ids = new ArrayList<Integer>(auditLogs.size());
+		for (AuditLog auditLog : auditLogs) {
+			if (auditLog.getAuditLogId() != null) {
+				ids.add(auditLog.getAuditLogId());
+			}
+		}
+		
+		return getChildAuditLogCountsByIds(ids);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Map<Integer, Integer> getChildAuditLogCountsByIds(List<Integer> ids) {
+		Map<Integer, Integer> idCountMap = new HashMap<Integer, Integer>();
+		Session session = sessionFactory.getCurrentSession();
+		for (int i = 0; i < ids.size(); i += IN_CLAUSE_BATCH_SIZE) {
+			Query query = session.getNamedQuery("AuditLog.getChildAuditLogCounts");
+			query.setParameterList("ids", ids.subList(i, Math.min(i + IN_CLAUSE_BATCH_SIZE, ids.size())));
+			for (Object[] row : (List<Object[]>) query.list()) {
+				idCountMap.put((Integer) row[0], ((Number) row[1]).intValue());
+			}
 		}
+		
+		return idCountMap;
 	}
 	
 	/**
-	 * @see org.openmrs.api.GlobalPropertyListener#globalPropertyDeleted(java.lang.String)
+	 * @see AuditLogDAO#getChildAuditLogs(AuditLog, Integer, Integer)
 	 */
+	@SuppressWarnings("unchecked")
 	@Override
-	public void globalPropertyDeleted(String gpName) {
-		if (AuditLogConstants.GP_STORE_LAST_STATE_OF_DELETED_ITEMS.equals(gpName)) {
-			storeLastStateOfDeletedItemsCache = null;
+	public List<AuditLog> getChildAuditLogs(AuditLog parentAuditLog, Integer start, Integer length) {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(AuditLog.class);
+		criteria.add(Restrictions.eq("parentAuditLog", parentAuditLog));
+		criteria.addOrder(Order.asc("auditLogId"));
+		if (start != null) {
+			criteria.setFirstResult(start);
+		}
+		if (length != null && length > 0) {
+			criteria.setMaxResults(length);
 		}
+		
+		return criteria.list();
 	}
 	
 	/**
-	 * @see org.openmrs.api.GlobalPropertyListener#supportsPropertyName(java.lang.String)
+	 * @see AuditLogDAO#getObjectById(Class, java.io.Serializable)
 	 */
+	@SuppressWarnings("unchecked")
 	@Override
-	public boolean supportsPropertyName(String gpName) {
-		return AuditLogConstants.GP_STORE_LAST_STATE_OF_DELETED_ITEMS.equals(gpName);
+	public <T> T getObjectById(Class<T> clazz, Serializable id) {
+		if (id == null) {
+			return null;
+		}
+		return (T) sessionFactory.getCurrentSession().get(clazz, toIdentifier(clazz, id));
+	}
+	
+	/**
+	 * @see AuditLogDAO#getObjectsByIds(Class, java.util.Collection)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> Map<String, T> getObjectsByIds(Class<T> clazz, Collection<String> ids) {
+		Map<String, T> idObjectMap = new HashMap<String, T>();
+		Session session = sessionFactory.getCurrentSession();
+		String idPropertyName = AuditLogUtil.getClassMetadata(clazz).getIdentifierPropertyName();
+		for (List<Serializable> batch : toIdentifierBatches(clazz, ids)) {
+			Criteria criteria = session.createCriteria(clazz);
+			criteria.add(Restrictions.in(idPropertyName, batch));
+			for (T object : (List<T>) criteria.list()) {
+				idObjectMap.put(session.getIdentifier(object).toString(), object);
+			}
+		}
+		
+		return idObjectMap;
+	}
+	
+	/**
+	 * @see AuditLogDAO#getExistingIds(Class, java.util.Collection)
+	 */
+	@Override
+	public Set<String> getExistingIds(Class<?> clazz, Collection<String> ids) {
+		Set<String> existingIds = new HashSet<String>();
+		String idPropertyName = AuditLogUtil.getClassMetadata(clazz).getIdentifierPropertyName();
+		for (List<Serializable> batch : toIdentifierBatches(clazz, ids)) {
+			Criteria criteria = sessionFactory.getCurrentSession().createCriteria(clazz);
+			criteria.add(Restrictions.in(idPropertyName, batch));
+			criteria.setProjection(Projections.id());
+			for (Object id : criteria.list()) {
+				existingIds.add(id.toString());
+			}
+		}
+		
+		return existingIds;
+	}
+	
+	/**
+	 * Converts the specified ids to identifiers and splits them into batches small enough to be
+	 * used in an IN clause
+	 */
+	private List<List<Serializable>> toIdentifierBatches(Class<?> clazz, Collection<String> ids) {
+		List<List<Serializable>> batches = new ArrayList<List<Serializable>>();
+		if (ids == null) {
+			return batches;
+		}
+		List<Serializable> batch = null;
+		for (String id : new LinkedHashSet<String>(ids)) {
+			if (StringUtils.isBlank(id)) {
+				continue;
+			}
+			if (batch == null || batch.size() == IN_CLAUSE_BATCH_SIZE) {
+				batch = new ArrayList<Serializable>(IN_CLAUSE_BATCH_SIZE);
+				batches.add(batch);
+			}
+			batch.add(toIdentifier(clazz, id.trim()));
+		}
+		
+		return batches;
+	}
+	
+	/**
+	 * Converts an id stored as a string in the audit logs to the identifier type of the specified
+	 * class, the id is returned as is if the class doesn't have an integer or long identifier
+	 */
+	private Serializable toIdentifier(Class<?> clazz, Serializable id) {
+		Class<?> identifierType = AuditLogUtil.getClassMetadata(clazz).getIdentifierType().getReturnedClass();
+		String str = id.toString().trim();
+		try {
+			if (Integer.class.equals(identifierType)) {
+				return Integer.valueOf(str);
+			} else if (Long.class.equals(identifierType)) {
+				return Long.valueOf(str);
+			}
+		}
+		catch (NumberFormatException e) {
+			//ignore
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getObjectByUuid(java.lang.Class,
+	 *      java.lang.String)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> T getObjectByUuid(Class<T> clazz, String uuid) {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(clazz);
+		if (AuditLog.class.equals(clazz)) {
+			//The uuid is the natural id of the immutable audit logs so hibernate can serve repeated
+			//lookups from the query cache and the entity from the second level cache
+			criteria.add(Restrictions.naturalId().set("uuid", uuid));
+			criteria.setCacheable(true);
+			criteria.setCacheRegion(AUDIT_LOG_UUID_CACHE_REGION);
+		} else {
+			criteria.add(Restrictions.eq("uuid", uuid));
+		}
+		return (T) criteria.uniqueResult();
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#storeLastStateOfDeletedItems()
+	 * @return
+	 */
+	public boolean storeLastStateOfDeletedItems() {
+		if (storeLastStateOfDeletedItemsCache == null) {
+			String gpValue = Context.getAdministrationService().getGlobalProperty(
+			    AuditLogConstants.GP_STORE_LAST_STATE_OF_DELETED_ITEMS);
+			storeLastStateOfDeletedItemsCache = Boolean.valueOf(gpValue);
+		}
+		return storeLastStateOfDeletedItemsCache;
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#isIndexChangedValues()
+	 */
+	@Override
+	public boolean isIndexChangedValues() {
+		if (indexChangedValuesCache == null) {
+			String gpValue = Context.getAdministrationService().getGlobalProperty(
+			    AuditLogConstants.GP_INDEX_CHANGED_VALUES);
+			indexChangedValuesCache = Boolean.valueOf(gpValue);
+		}
+		return indexChangedValuesCache;
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getDeletedItemsCollectionSizeLimit()
+	 */
+	@Override
+	public Integer getDeletedItemsCollectionSizeLimit() {
+		Integer limit = getIntegerGlobalProperty(AuditLogConstants.GP_DELETED_ITEMS_COLLECTION_SIZE_LIMIT);
+		return (limit != null && limit < 0) ? null : limit;
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getDeletedItemsSerializationDepth()
+	 */
+	@Override
+	public int getDeletedItemsSerializationDepth() {
+		Integer depth = getIntegerGlobalProperty(AuditLogConstants.GP_DELETED_ITEMS_SERIALIZATION_DEPTH);
+		return (depth != null && depth >= 0) ? depth : 1;
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getParallelSerializationThreshold()
+	 */
+	@Override
+	public Integer getParallelSerializationThreshold() {
+		Integer threshold = getIntegerGlobalProperty(AuditLogConstants.GP_PARALLEL_SERIALIZATION_THRESHOLD);
+		return (threshold != null && threshold < 1) ? null : threshold;
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getLargeValueThreshold()
+	 */
+	@Override
+	public Integer getLargeValueThreshold() {
+		Integer threshold = getIntegerGlobalProperty(AuditLogConstants.GP_LARGE_VALUE_THRESHOLD);
+		return (threshold != null && threshold < 1) ? null : threshold;
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getSnapshotInterval()
+	 */
+	@Override
+	public Integer getSnapshotInterval() {
+		Integer interval = getIntegerGlobalProperty(AuditLogConstants.GP_SNAPSHOT_INTERVAL);
+		return (interval != null && interval < 1) ? null : interval;
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getCoalescingWindows()
+	 */
+	@Override
+	public Map<Class<?>, Integer> getCoalescingWindows() {
+		if (coalescingWindowsCache == null) {
+			Map<Class<?>, Integer> windows = new HashMap<Class<?>, Integer>();
+			String gpValue = Context.getAdministrationService().getGlobalProperty(AuditLogConstants.GP_COALESCING_WINDOWS);
+			if (StringUtils.isNotBlank(gpValue)) {
+				for (String typeAndWindow : StringUtils.split(gpValue, AuditLogConstants.SEPARATOR)) {
+					String[] parts = StringUtils.split(typeAndWindow.trim(), ":");
+					try {
+						if (parts.length != 2) {
+							throw new IllegalArgumentException();
+						}
+						windows.put(Context.loadClass(parts[0].trim()), Integer.valueOf(parts[1].trim()));
+					}
+					catch (Exception e) {
+						log.warn("Ignoring invalid coalescing window: " + typeAndWindow);
+					}
+				}
+			}
+			coalescingWindowsCache = windows;
+		}
+		return coalescingWindowsCache;
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getMostRecentAuditLog(Class,
+	 *      java.io.Serializable, java.util.Date)
+	 */
+	@Override
+	public AuditLog getMostRecentAuditLog(final Class<?> type, final Serializable identifier, final Date startDate) {
+		return withManualFlush(new SessionWork<AuditLog>() {
+			
+			@Override
+			public AuditLog doInSession(Session session) {
+				Criteria criteria = session.createCriteria(AuditLog.class);
+				criteria.add(Restrictions.eq("type", type));
+				addIdentifierRestriction(criteria, identifier);
+				criteria.add(Restrictions.isNull("parentAuditLog"));
+				criteria.add(Restrictions.ge("dateCreated", startDate));
+				criteria.addOrder(Order.desc("dateCreated"));
+				criteria.addOrder(Order.desc("auditLogId"));
+				criteria.setMaxResults(1);
+				return (AuditLog) criteria.uniqueResult();
+			}
+		});
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#updateSerializedData(AuditLog,
+	 *      java.sql.Blob)
+	 */
+	@Override
+	public void updateSerializedData(AuditLog auditLog, Blob serializedData) {
+		Session session = sessionFactory.getCurrentSession();
+		Query query = session.createSQLQuery("update auditlog_audit_log_data set serialized_data = :serializedData "
+		        + "where audit_log_id = :id");
+		query.setParameter("serializedData", serializedData, Hibernate.BLOB);
+		query.setParameter("id", auditLog.getAuditLogId());
+		if (query.executeUpdate() == 0) {
+			query = session.createSQLQuery("insert into auditlog_audit_log_data (audit_log_id, serialized_data) "
+			        + "values (:id, :serializedData)");
+			query.setParameter("serializedData", serializedData, Hibernate.BLOB);
+			query.setParameter("id", auditLog.getAuditLogId());
+			query.executeUpdate();
+		}
+		//The loaded instance is now stale
+		session.evict(auditLog);
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#saveChangedProperties(AuditLog,
+	 *      java.util.Collection)
+	 */
+	@Override
+	public void saveChangedProperties(final AuditLog auditLog, final Collection<String> propertyNames) {
+		if (auditLog.getAuditLogId() == null || propertyNames == null || propertyNames.isEmpty()) {
+			return;
+		}
+		
+		withManualFlush(new SessionWork<Void>() {
+			
+			@SuppressWarnings("unchecked")
+			@Override
+			public Void doInSession(Session session) {
+				Integer typeId = getTypeId(auditLog.getType());
+				Set<Integer> propertyNameIds = new LinkedHashSet<Integer>();
+				for (String propertyName : propertyNames) {
+					propertyNameIds.add(getPropertyNameId(propertyName, true));
+				}
+				//The changes of a coalesced log are merged into an existing log that already has some of them
+				List<Number> existingIds = session.createSQLQuery(
+				    "select property_name_id from auditlog_changed_property "
+				            + "where property_name_id in (:propertyNameIds) and audit_log_id = :auditLogId")
+				        .setParameterList("propertyNameIds", propertyNameIds)
+				        .setInteger("auditLogId", auditLog.getAuditLogId()).list();
+				for (Number existingId : existingIds) {
+					propertyNameIds.remove(existingId.intValue());
+				}
+				
+				Query query = session.createSQLQuery("insert into auditlog_changed_property (property_name_id, "
+				        + "audit_log_id, type_id) values (:propertyNameId, :auditLogId, :typeId)");
+				query.setInteger("auditLogId", auditLog.getAuditLogId());
+				query.setInteger("typeId", typeId);
+				for (Integer propertyNameId : propertyNameIds) {
+					query.setInteger("propertyNameId", propertyNameId);
+					query.executeUpdate();
+				}
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#deleteChangedProperties(AuditLog,
+	 *      java.util.Collection)
+	 */
+	@Override
+	public void deleteChangedProperties(final AuditLog auditLog, final Collection<String> propertyNames) {
+		if (auditLog.getAuditLogId() == null || propertyNames == null || propertyNames.isEmpty()) {
+			return;
+		}
+		
+		withManualFlush(new SessionWork<Void>() {
+			
+			@Override
+			public Void doInSession(Session session) {
+				Set<Integer> propertyNameIds = new HashSet<Integer>();
+				for (String propertyName : propertyNames) {
+					Integer propertyNameId = getPropertyNameId(propertyName, false);
+					if (propertyNameId != null) {
+						propertyNameIds.add(propertyNameId);
+					}
+				}
+				if (!propertyNameIds.isEmpty()) {
+					session.createSQLQuery("delete from auditlog_changed_property where property_name_id in "
+					        + "(:propertyNameIds) and audit_log_id = :auditLogId")
+					        .setParameterList("propertyNameIds", propertyNameIds)
+					        .setInteger("auditLogId", auditLog.getAuditLogId()).executeUpdate();
+				}
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#saveValueTokens(java.util.Map, boolean)
+	 */
+	@Override
+	public void saveValueTokens(final Map<Integer, Map<String, Set<String>>> auditLogIdTokens, final boolean replace) {
+		if (auditLogIdTokens == null || auditLogIdTokens.isEmpty()) {
+			return;
+		}
+		
+		withManualFlush(new SessionWork<Void>() {
+			
+			@Override
+			public Void doInSession(Session session) {
+				if (replace) {
+					List<Integer> auditLogIds = new ArrayList<Integer>(auditLogIdTokens.keySet());
+					for (int i = 0; i < auditLogIds.size(); i += IN_CLAUSE_BATCH_SIZE) {
+						session.createSQLQuery("delete from auditlog_value_token where audit_log_id in (:auditLogIds)")
+						        .setParameterList("auditLogIds",
+						            auditLogIds.subList(i, Math.min(i + IN_CLAUSE_BATCH_SIZE, auditLogIds.size())))
+						        .executeUpdate();
+					}
+				}
+				
+				//The names are resolved first since new ones are inserted while the batch below is open
+				Map<String, Integer> propertyNameIds = new HashMap<String, Integer>();
+				for (Map<String, Set<String>> propertyTokens : auditLogIdTokens.values()) {
+					for (String propertyName : propertyTokens.keySet()) {
+						if (!propertyNameIds.containsKey(propertyName)) {
+							propertyNameIds.put(propertyName, getPropertyNameId(propertyName, true));
+						}
+					}
+				}
+				
+				PreparedStatement statement = null;
+				try {
+					//The inserts are sent in a single batch since the logs can have many words
+					statement = session.connection().prepareStatement(
+					    "insert into auditlog_value_token (token, property_name_id, audit_log_id) values (?, ?, ?)");
+					int batchCount = 0;
+					for (Map.Entry<Integer, Map<String, Set<String>>> logEntry : auditLogIdTokens.entrySet()) {
+						for (Map.Entry<String, Set<String>> entry : logEntry.getValue().entrySet()) {
+							for (String token : entry.getValue()) {
+								statement.setString(1, token);
+								statement.setInt(2, propertyNameIds.get(entry.getKey()));
+								statement.setInt(3, logEntry.getKey());
+								statement.addBatch();
+								batchCount++;
+							}
+						}
+					}
+					if (batchCount > 0) {
+						statement.executeBatch();
+					}
+				}
+				catch (SQLException e) {
+					throw new APIException("Failed to save the words in the values of the audit logs", e);
+				}
+				finally {
+					if (statement != null) {
+						try {
+							statement.close();
+						}
+						catch (SQLException e) {
+							log.warn("Failed to close the statement", e);
+						}
+					}
+				}
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#deleteValueTokens(Integer, Integer)
+	 */
+	@Override
+	public void deleteValueTokens(final Integer fromAuditLogId, final Integer toAuditLogId) {
+		withManualFlush(new SessionWork<Void>() {
+			
+			@Override
+			public Void doInSession(Session session) {
+				Query query = session.createSQLQuery(
+				    "delete from auditlog_value_token where audit_log_id between :fromId and :toId");
+				query.setInteger("fromId", fromAuditLogId);
+				query.setInteger("toId", toAuditLogId);
+				query.executeUpdate();
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#searchChangedValues(java.util.Collection,
+	 *      java.util.List, Integer)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<String> searchChangedValues(Collection<String> tokens, List<String> propertyNames, Integer maxResults) {
+		if (tokens == null || tokens.isEmpty()) {
+			return new ArrayList<String>();
+		}
+		Set<String> distinctTokens = new HashSet<String>(tokens);
+		
+		//A log matches if it has a row for each of the words, the ids are integers read from the
+		//database so they are safe to inline
+		String sql = "select a.uuid from auditlog_audit_log a where a.audit_log_id in (select t.audit_log_id from "
+		        + "auditlog_value_token t where t.token in (:tokens)";
+		if (propertyNames != null) {
+			List<Integer> propertyNameIds = new ArrayList<Integer>();
+			for (String propertyName : propertyNames) {
+				Integer propertyNameId = getPropertyNameId(propertyName, false);
+				if (propertyNameId != null) {
+					propertyNameIds.add(propertyNameId);
+				}
+			}
+			if (propertyNameIds.isEmpty()) {
+				return new ArrayList<String>();
+			}
+			sql += " and t.property_name_id in (" + StringUtils.join(propertyNameIds, ",") + ")";
+		}
+		sql += " group by t.audit_log_id having count(distinct t.token) = " + distinctTokens.size()
+		        + ") order by a.date_created desc, a.audit_log_id desc";
+		
+		Query query = sessionFactory.getCurrentSession().createSQLQuery(sql);
+		query.setParameterList("tokens", distinctTokens);
+		if (maxResults != null && maxResults > 0) {
+			query.setMaxResults(maxResults);
+		}
+		
+		return query.list();
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getAuditLogsByIdRange(Integer, Integer,
+	 *      java.util.List)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<AuditLog> getAuditLogsByIdRange(Integer fromAuditLogId, Integer toAuditLogId, List<Action> actions) {
+		Criteria criteria = createAuditLogCriteria(sessionFactory.getCurrentSession(), null, null, actions, null, null,
+		    null, false);
+		criteria.add(Restrictions.between("auditLogId", fromAuditLogId, toAuditLogId));
+		criteria.addOrder(Order.asc("auditLogId"));
+		//Re-indexing reads every log once, so they shouldn't push the looked up ones out of the cache
+		criteria.setCacheMode(CacheMode.IGNORE);
+		
+		return criteria.list();
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getMaxAuditLogId()
+	 */
+	@Override
+	public Integer getMaxAuditLogId() {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(AuditLog.class);
+		criteria.setProjection(Projections.max("auditLogId"));
+		return (Integer) criteria.uniqueResult();
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getSnapshotDueAuditLogIds(java.util.Collection,
+	 *      int)
+	 */
+	@Override
+	public Set<Integer> getSnapshotDueAuditLogIds(Collection<AuditLog> auditLogs, final int snapshotInterval) {
+		final Set<Integer> dueIds = new HashSet<Integer>();
+		final List<Integer> updateIds = new ArrayList<Integer>();
+		for (AuditLog auditLog : auditLogs) {
+			if (auditLog.getAuditLogId() == null) {
+				continue;
+			}
+			if (auditLog.getAction() == Action.CREATED) {
+				dueIds.add(auditLog.getAuditLogId());
+			} else if (auditLog.getAction() == Action.UPDATED) {
+				updateIds.add(auditLog.getAuditLogId());
+			}
+		}
+		if (updateIds.isEmpty()) {
+			return dueIds;
+		}
+		
+		return withManualFlush(new SessionWork<Set<Integer>>() {
+			
+			@Override
+			public Set<Integer> doInSession(Session session) {
+				//The rows were pointed to the logs and their update counts incremented in this transaction
+				for (int i = 0; i < updateIds.size(); i += IN_CLAUSE_BATCH_SIZE) {
+					List<Integer> batch = updateIds.subList(i, Math.min(i + IN_CLAUSE_BATCH_SIZE, updateIds.size()));
+					List<?> rows = session.createSQLQuery("select audit_log_id, updates_since_snapshot from "
+					        + "auditlog_latest where audit_log_id in (:auditLogIds)")
+					        .setParameterList("auditLogIds", batch).list();
+					for (Object row : rows) {
+						Number updateCount = (Number) ((Object[]) row)[1];
+						if (updateCount == null || updateCount.intValue() >= snapshotInterval) {
+							dueIds.add(((Number) ((Object[]) row)[0]).intValue());
+						}
+					}
+				}
+				return dueIds;
+			}
+		});
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#saveSnapshot(AuditLog, java.sql.Blob)
+	 */
+	@Override
+	public void saveSnapshot(final AuditLog auditLog, final Blob serializedState) {
+		withManualFlush(new SessionWork<Void>() {
+			
+			@Override
+			public Void doInSession(Session session) {
+				Query query = session.createSQLQuery("insert into auditlog_snapshot (audit_log_id, serialized_state) "
+				        + "values (:id, :serializedState)");
+				query.setParameter("serializedState", serializedState, Hibernate.BLOB);
+				query.setParameter("id", auditLog.getAuditLogId());
+				query.executeUpdate();
+				session.createSQLQuery("update auditlog_latest set updates_since_snapshot = 0 where audit_log_id = :id")
+				        .setInteger("id", auditLog.getAuditLogId()).executeUpdate();
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getSnapshotAuditLog(java.io.Serializable,
+	 *      java.util.List, java.util.Date, boolean)
+	 */
+	@Override
+	public AuditLog getSnapshotAuditLog(Serializable id, List<Class<?>> types, Date date, boolean atOrBefore) {
+		Criteria criteria = createAuditLogCriteria(sessionFactory.getCurrentSession(), id, types, null, null, null,
+		    atOrBefore ? date : null, false);
+		criteria.add(Restrictions.sqlRestriction(SNAPSHOT_EXISTS_RESTRICTION));
+		if (atOrBefore) {
+			addDefaultOrder(criteria);
+		} else {
+			criteria.add(Restrictions.gt("dateCreated", date));
+			criteria.addOrder(Order.asc("dateCreated"));
+			criteria.addOrder(Order.asc("auditLogId"));
+		}
+		criteria.setMaxResults(1);
+		
+		return (AuditLog) criteria.uniqueResult();
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getSnapshotState(AuditLog)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public Map<String, Object> getSnapshotState(AuditLog auditLog) {
+		Session session = sessionFactory.getCurrentSession();
+		AuditLogSnapshot snapshot = (AuditLogSnapshot) session.get(AuditLogSnapshot.class, auditLog.getAuditLogId());
+		if (snapshot == null || snapshot.getSerializedState() == null) {
+			return null;
+		}
+		
+		try {
+			return new ObjectMapper().readValue(AuditLogUtil.getAsString(snapshot.getSerializedState()), Map.class);
+		}
+		catch (Exception e) {
+			throw new APIException("Failed to read the snapshot of the audit log " + auditLog.getUuid(), e);
+		}
+		finally {
+			//The state is only read once
+			session.evict(snapshot);
+		}
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#updateLatestAuditLog(AuditLog)
+	 */
+	@Override
+	public void updateLatestAuditLog(final AuditLog auditLog) {
+		if (auditLog.getAuditLogId() == null) {
+			return;
+		}
+		
+		withManualFlush(new SessionWork<Void>() {
+			
+			@Override
+			public Void doInSession(Session session) {
+				Integer typeId = getTypeId(auditLog.getType());
+				String identifier = auditLog.getIdentifier().toString();
+				Integer userId = (auditLog.getUser() != null) ? auditLog.getUser().getUserId() : null;
+				//Updates are counted to tell when the next snapshot is due, a null count stays null
+				String countUpdate = (auditLog.getAction() == Action.UPDATED) ? ", updates_since_snapshot = "
+				        + "updates_since_snapshot + 1" : "";
+				Query update = session.createSQLQuery("update auditlog_latest set audit_log_id = :auditLogId, "
+				        + "action = :action, user_id = :userId, date_created = :dateCreated" + countUpdate
+				        + " where type_id = :typeId and identifier = :identifier and audit_log_id < :auditLogId");
+				setLatestAuditLogParameters(update, auditLog, typeId, identifier, userId);
+				if (update.executeUpdate() == 0) {
+					//Either there is no row yet for the object or it already points to a later log
+					Number latestId = (Number) session.createSQLQuery(
+					    "select audit_log_id from auditlog_latest where type_id = :typeId and identifier = :identifier")
+					        .setInteger("typeId", typeId).setString("identifier", identifier).uniqueResult();
+					if (latestId == null && !insertLatestAuditLog(session, auditLog, typeId, identifier, userId)) {
+						//Another transaction inserted the row in the meantime, it is committed by now
+						update.executeUpdate();
+					}
+				}
+				return null;
+			}
+		});
+		
+		if (auditLog.hasChildLogs()) {
+			for (AuditLog childLog : auditLog.getChildAuditLogs()) {
+				updateLatestAuditLog(childLog);
+			}
+		}
+	}
+	
+	/**
+	 * Inserts the row pointing the object of the specified audit log to it, the insert is run inside
+	 * a savepoint so that if another transaction inserts a row for the same object first, only the
+	 * failed insert is rolled back and not the transaction that is saving the audit log.
+	 * 
+	 * @return true if the row was inserted, false if a row for the object already exists
+	 */
+	private boolean insertLatestAuditLog(Session session, AuditLog auditLog, Integer typeId, String identifier,
+	                                     Integer userId) {
+		Query insert = session.createSQLQuery("insert into auditlog_latest (type_id, identifier, audit_log_id, "
+		        + "action, user_id, date_created) values (:typeId, :identifier, :auditLogId, :action, :userId, "
+		        + ":dateCreated)");
+		setLatestAuditLogParameters(insert, auditLog, typeId, identifier, userId);
+		if (insertInSavepoint(session, insert)) {
+			return true;
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("The latest audit log of the object with id:" + identifier + " was inserted concurrently");
+		}
+		return false;
+	}
+	
+	private void setLatestAuditLogParameters(Query query, AuditLog auditLog, Integer typeId, String identifier,
+	                                         Integer userId) {
+		query.setInteger("typeId", typeId);
+		query.setString("identifier", identifier);
+		query.setInteger("auditLogId", auditLog.getAuditLogId());
+		query.setString("action", auditLog.getAction().name());
+		query.setParameter("userId", userId, Hibernate.INTEGER);
+		query.setTimestamp("dateCreated", auditLog.getDateCreated());
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getLatestAuditLog(java.io.Serializable,
+	 *      java.util.List)
+	 */
+	@Override
+	public AuditLog getLatestAuditLog(Serializable id, List<Class<?>> types) {
+		List<Integer> typeIds = getTypeIds(types);
+		if (typeIds.isEmpty()) {
+			return null;
+		}
+		
+		Session session = sessionFactory.getCurrentSession();
+		Number auditLogId = (Number) session.createSQLQuery("select audit_log_id from auditlog_latest where type_id in "
+		        + "(:typeIds) and identifier = :identifier order by date_created desc, audit_log_id desc")
+		        .setParameterList("typeIds", typeIds).setString("identifier", AuditLogUtil.serializeObject(id))
+		        .setMaxResults(1).uniqueResult();
+		if (auditLogId == null) {
+			return null;
+		}
+		
+		return (AuditLog) session.get(AuditLog.class, auditLogId.intValue());
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getLatestDeletedAuditLogs(java.util.List,
+	 *      java.util.Date, Integer)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<AuditLog> getLatestDeletedAuditLogs(List<Class<?>> types, Date startDate, Integer maxResults) {
+		List<Integer> typeIds = null;
+		if (types != null) {
+			typeIds = getTypeIds(types);
+			if (typeIds.isEmpty()) {
+				return Collections.emptyList();
+			}
+		}
+		
+		//The action and date_created columns are indexed together for this query
+		Session session = sessionFactory.getCurrentSession();
+		Query query = session.createSQLQuery("select audit_log_id from auditlog_latest where action = :action"
+		        + (typeIds != null ? " and type_id in (:typeIds)" : "")
+		        + (startDate != null ? " and date_created >= :startDate" : "")
+		        + " order by date_created desc, audit_log_id desc");
+		query.setString("action", Action.DELETED.name());
+		if (typeIds != null) {
+			query.setParameterList("typeIds", typeIds);
+		}
+		if (startDate != null) {
+			query.setTimestamp("startDate", startDate);
+		}
+		if (maxResults != null && maxResults > 0) {
+			query.setMaxResults(maxResults);
+		}
+		
+		List<Integer> auditLogIds = new ArrayList<Integer>();
+		for (Number auditLogId : (List<Number>) query.list()) {
+			auditLogIds.add(auditLogId.intValue());
+		}
+		Map<Integer, AuditLog> idAuditLogMap = new HashMap<Integer, AuditLog>();
+		for (int i = 0; i < auditLogIds.size(); i += IN_CLAUSE_BATCH_SIZE) {
+			Criteria criteria = session.createCriteria(AuditLog.class);
+			criteria.add(Restrictions.in("auditLogId",
+			    auditLogIds.subList(i, Math.min(i + IN_CLAUSE_BATCH_SIZE, auditLogIds.size()))));
+			for (AuditLog auditLog : (List<AuditLog>) criteria.list()) {
+				idAuditLogMap.put(auditLog.getAuditLogId(), auditLog);
+			}
+		}
+		
+		//Keep the order of the ids across the batches
+		List<AuditLog> auditLogs = new ArrayList<AuditLog>(auditLogIds.size());
+		for (Integer auditLogId : auditLogIds) {
+			if (idAuditLogMap.containsKey(auditLogId)) {
+				auditLogs.add(idAuditLogMap.get(auditLogId));
+			}
+		}
+		
+		return auditLogs;
+	}
+	
+	/**
+	 * Gets the ids of the specified types, types that have never been audited are left out
+	 */
+	private List<Integer> getTypeIds(List<Class<?>> types) {
+		List<Integer> typeIds = new ArrayList<Integer>();
+		for (Class<?> type : types) {
+			Integer typeId = getTypeId(type);
+			if (typeId != null) {
+				typeIds.add(typeId);
+			}
+		}
+		return typeIds;
+	}
+	
+	/**
+	 * @see AuditLogDAO#getAuditLogsByChangedProperties(List, List, Date, Date, Integer, Integer)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<AuditLog> getAuditLogsByChangedProperties(List<Class<?>> clazzes, List<String> propertyNames,
+	                                                      Date startDate, Date endDate, Integer start, Integer length) {
+		List<Integer> propertyNameIds = new ArrayList<Integer>();
+		if (propertyNames != null) {
+			for (String propertyName : propertyNames) {
+				Integer propertyNameId = getPropertyNameId(propertyName, false);
+				if (propertyNameId != null) {
+					propertyNameIds.add(propertyNameId);
+				}
+			}
+		}
+		if (propertyNameIds.isEmpty()) {
+			return new ArrayList<AuditLog>();
+		}
+		
+		//The ids are integers read from the database so they are safe to inline
+		String sql = "{alias}.audit_log_id in (select cp.audit_log_id from auditlog_changed_property cp where "
+		        + "cp.property_name_id in (" + StringUtils.join(propertyNameIds, ",") + ")";
+		if (clazzes != null) {
+			List<Integer> typeIds = new ArrayList<Integer>();
+			for (Class<?> clazz : clazzes) {
+				Integer typeId = getTypeId(clazz);
+				if (typeId != null) {
+					typeIds.add(typeId);
+				}
+			}
+			if (typeIds.isEmpty()) {
+				return new ArrayList<AuditLog>();
+			}
+			sql += " and cp.type_id in (" + StringUtils.join(typeIds, ",") + ")";
+		}
+		sql += ")";
+		
+		Criteria criteria = createAuditLogCriteria(sessionFactory.getCurrentSession(), null, clazzes, null, null,
+		    startDate, endDate, false);
+		criteria.add(Restrictions.sqlRestriction(sql));
+		addDefaultOrder(criteria);
+		if (start != null) {
+			criteria.setFirstResult(start);
+		}
+		if (length != null && length > 0) {
+			criteria.setMaxResults(length);
+		}
+		
+		return criteria.list();
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getCollectionElements(String,
+	 *      Collection, boolean)
+	 */
+	@Override
+	public Map<Serializable, List<Object>> getCollectionElements(String role, Collection<Serializable> ownerIds,
+	                                                             boolean idsOnly) {
+		//The role is the owner's entity name followed by the path of the property which includes the
+		//names of the components for a collection declared inside a component
+		CollectionPersister cp = ((SessionFactoryImplementor) sessionFactory).getCollectionPersister(role);
+		String ownerEntityName = cp.getOwnerEntityPersister().getEntityName();
+		String propertyPath = role.substring(ownerEntityName.length() + 1);
+		final String hql = "select owner.id, " + (idsOnly ? "element.id" : "element") + " from " + ownerEntityName
+		        + " owner join owner." + propertyPath + " element where owner.id in (:ownerIds)";
+		final List<Serializable> ids = new ArrayList<Serializable>(ownerIds);
+		return withManualFlush(new SessionWork<Map<Serializable, List<Object>>>() {
+			
+			@SuppressWarnings("unchecked")
+			@Override
+			public Map<Serializable, List<Object>> doInSession(Session session) {
+				Map<Serializable, List<Object>> ownerIdElementsMap = new HashMap<Serializable, List<Object>>();
+				for (int i = 0; i < ids.size(); i += IN_CLAUSE_BATCH_SIZE) {
+					Query query = session.createQuery(hql);
+					query.setParameterList("ownerIds", ids.subList(i, Math.min(i + IN_CLAUSE_BATCH_SIZE, ids.size())));
+					for (Object[] row : (List<Object[]>) query.list()) {
+						List<Object> elements = ownerIdElementsMap.get(row[0]);
+						if (elements == null) {
+							elements = new ArrayList<Object>();
+							ownerIdElementsMap.put((Serializable) row[0], elements);
+						}
+						elements.add(row[1]);
+					}
+				}
+				
+				return ownerIdElementsMap;
+			}
+		});
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.db.AuditLogDAO#getId(Object)
+	 * @return
+	 */
+	@Override
+	public Serializable getId(Object object) {
+		return sessionFactory.getClassMetadata(object.getClass()).getIdentifier(object, EntityMode.POJO);
+	}
+	
+	/**
+	 * @see org.openmrs.api.GlobalPropertyListener#globalPropertyChanged(org.openmrs.GlobalProperty)
+	 */
+	@Override
+	public void globalPropertyChanged(GlobalProperty gp) {
+		globalPropertyDeleted(gp.getProperty());
+	}
+	
+	/**
+	 * @see org.openmrs.api.GlobalPropertyListener#globalPropertyDeleted(java.lang.String)
+	 */
+	@Override
+	public void globalPropertyDeleted(String gpName) {
+		if (AuditLogConstants.GP_STORE_LAST_STATE_OF_DELETED_ITEMS.equals(gpName)) {
+			storeLastStateOfDeletedItemsCache = null;
+		} else if (AuditLogConstants.GP_INDEX_CHANGED_VALUES.equals(gpName)) {
+			indexChangedValuesCache = null;
+		} else if (AuditLogConstants.GP_COALESCING_WINDOWS.equals(gpName)) {
+			coalescingWindowsCache = null;
+		} else {
+			integerGlobalPropertyCache.remove(gpName);
+		}
+	}
+	
+	/**
+	 * @see org.openmrs.api.GlobalPropertyListener#supportsPropertyName(java.lang.String)
+	 */
+	@Override
+	public boolean supportsPropertyName(String gpName) {
+		return AuditLogConstants.GP_STORE_LAST_STATE_OF_DELETED_ITEMS.equals(gpName)
+		        || AuditLogConstants.GP_DELETED_ITEMS_COLLECTION_SIZE_LIMIT.equals(gpName)
+		        || AuditLogConstants.GP_DELETED_ITEMS_SERIALIZATION_DEPTH.equals(gpName)
+		        || AuditLogConstants.GP_PARALLEL_SERIALIZATION_THRESHOLD.equals(gpName)
+		        || AuditLogConstants.GP_COALESCING_WINDOWS.equals(gpName)
+		        || AuditLogConstants.GP_LARGE_VALUE_THRESHOLD.equals(gpName)
+		        || AuditLogConstants.GP_INDEX_CHANGED_VALUES.equals(gpName)
+		        || AuditLogConstants.GP_SNAPSHOT_INTERVAL.equals(gpName);
+	}
+	
+	/**
+	 * Gets the cached value of the global property with the specified name as an integer
+	 * 
+	 * @param gpName the name of the global property
+	 * @return the integer value or null if the value is blank or not a valid integer
+	 */
+	private Integer getIntegerGlobalProperty(String gpName) {
+		if (integerGlobalPropertyCache.containsKey(gpName)) {
+			return integerGlobalPropertyCache.get(gpName);
+		}
+		
+		Integer value = null;
+		String gpValue = Context.getAdministrationService().getGlobalProperty(gpName);
+		if (StringUtils.isNotBlank(gpValue)) {
+			try {
+				value = Integer.valueOf(gpValue.trim());
+			}
+			catch (NumberFormatException e) {
+				log.warn("Ignoring invalid value for the global property " + gpName + ": " + gpValue);
+			}
+		}
+		integerGlobalPropertyCache.put(gpName, value);
+		
+		return value;
 	}
 }
@@ -0,0 +1,207 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.api.db.hibernate.interceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Hibernate;
+import org.openmrs.module.auditlog.AuditLog;
+import org.openmrs.module.auditlog.util.AuditLogUtil;
+
+/**
+ * Generates the serialized data of audit logs from the already captured property values, when a
+ * transaction produces a number of audit logs above the configured threshold the JSON generation
+ * is split across a small bounded thread pool. Only the JSON is generated by the worker threads,
+ * the data is set on the audit logs and they get saved by the thread that owns the session. The
+ * property values themselves are serialized beforehand by the interceptor in the thread that owns
+ * the session and can't be moved to the pool, doing so reads lazy associations and collections
+ * through the hibernate session which isn't thread safe and is bound to that thread.
+ */
+public final class AuditLogPayloadSerializer {
+	
+	private static final Log log = LogFactory.getLog(AuditLogPayloadSerializer.class);
+	
+	private static final int POOL_SIZE = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	
+	private static final int QUEUE_CAPACITY = 100;
+	
+	//The maximum time to wait for a chunk before serializing it in the calling thread
+	private static final long TIMEOUT_SECONDS = 30;
+	
+	private static ThreadPoolExecutor executor;
+	
+	private AuditLogPayloadSerializer() {
+	}
+	
+	/**
+	 * Serializes the payloads to JSON and sets the generated data on their respective audit logs
+	 * 
+	 * @param auditLogPayloadMap a map of audit logs and their payloads, the payloads are expected to
+	 *            already be serialized property values
+	 */
+	static void serialize(Map<AuditLog, Object> auditLogPayloadMap) {
+		if (auditLogPayloadMap.isEmpty()) {
+			return;
+		}
+		
+		List<AuditLog> auditLogs = new ArrayList<AuditLog>(auditLogPayloadMap.keySet());
+		List<Object> payloads = new ArrayList<Object>(auditLogs.size());
+		for (AuditLog auditLog : auditLogs) {
+			payloads.add(auditLogPayloadMap.get(auditLog));
+		}
+		
+		String[] jsonArray;
+		Integer threshold = InterceptorUtil.getAuditLogDao().getParallelSerializationThreshold();
+		if (threshold != null && payloads.size() >= threshold) {
+			jsonArray = serializeInParallel(payloads);
+		} else {
+			jsonArray = serializeToJson(payloads, 0, payloads.size());
+		}
+		
+		for (int i = 0; i < auditLogs.size(); i++) {
+			if (jsonArray[i] != null) {
+				auditLogs.get(i).setSerializedData(Hibernate.createBlob(jsonArray[i].getBytes()));
+			}
+		}
+	}
+	
+	/**
+	 * Shuts down the thread pool if it was ever started
+	 */
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+	
+	/**
+	 * Splits the payloads into chunks and serializes each chunk in a separate thread, a chunk that
+	 * can't be submitted because the pool is busy or shut down is serialized by the current thread
+	 * 
+	 * @param payloads the payloads to serialize
+	 * @return the generated JSON for each payload
+	 */
+	private static String[] serializeInParallel(final List<Object> payloads) {
+		int chunkSize = (payloads.size() + POOL_SIZE - 1) / POOL_SIZE;
+		List<Future<String[]>> futures = new ArrayList<Future<String[]>>(POOL_SIZE);
+		for (int start = 0; start < payloads.size(); start += chunkSize) {
+			final int from = start;
+			final int to = Math.min(start + chunkSize, payloads.size());
+			Callable<String[]> task = new Callable<String[]>() {
+				
+				@Override
+				public String[] call() throws Exception {
+					return serializeToJson(payloads, from, to);
+				}
+			};
+			try {
+				futures.add(getExecutor().submit(task));
+			}
+			catch (RejectedExecutionException e) {
+				if (log.isDebugEnabled()) {
+					log.debug("Serializing the audit log data in the current thread, the thread pool is busy or shut down");
+				}
+				FutureTask<String[]> futureTask = new FutureTask<String[]>(task);
+				futureTask.run();
+				futures.add(futureTask);
+			}
+		}
+		
+		String[] jsonArray = new String[payloads.size()];
+		boolean interrupted = false;
+		for (int i = 0; i < futures.size(); i++) {
+			Future<String[]> future = futures.get(i);
+			int from = i * chunkSize;
+			String[] chunk = null;
+			try {
+				if (!interrupted) {
+					chunk = future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				} else if (future.isDone() && !future.isCancelled()) {
+					chunk = future.get();
+				}
+			}
+			catch (InterruptedException e) {
+				//Stop waiting, the chunks that are already done are still used and the others
+				//are serialized by the current thread
+				interrupted = true;
+				for (Future<String[]> outstanding : futures.subList(i, futures.size())) {
+					outstanding.cancel(true);
+				}
+			}
+			catch (ExecutionException e) {
+				log.warn("Failed to serialize audit log data in a separate thread, falling back to the current thread", e);
+			}
+			catch (TimeoutException e) {
+				log.warn("Timed out waiting for audit log data to be serialized, falling back to the current thread");
+				future.cancel(true);
+			}
+			if (chunk == null) {
+				chunk = serializeToJson(payloads, from, Math.min(from + chunkSize, payloads.size()));
+			}
+			System.arraycopy(chunk, 0, jsonArray, from, chunk.length);
+		}
+		//Restore the interrupt status only now, otherwise getting the results of the chunks that
+		//are done would fail too
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		
+		return jsonArray;
+	}
+	
+	private static String[] serializeToJson(List<Object> payloads, int from, int to) {
+		String[] jsonArray = new String[to - from];
+		for (int i = from; i < to; i++) {
+			jsonArray[i - from] = AuditLogUtil.serializeToJson(payloads.get(i));
+		}
+		return jsonArray;
+	}
+	
+	private static synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			//When the pool and queue are full or the pool is shut down, the submit fails and the
+			//calling thread does the work itself, see serializeInParallel
+			executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+			        QUEUE_CAPACITY), new ThreadFactory() {
+				
+				private final AtomicInteger count = new AtomicInteger();
+				
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "auditlog-serializer-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			}, new ThreadPoolExecutor.AbortPolicy());
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+}
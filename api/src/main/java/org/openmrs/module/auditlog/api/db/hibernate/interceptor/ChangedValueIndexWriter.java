@@ -0,0 +1,192 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.api.db.hibernate.interceptor;
+
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.auditlog.api.AuditLogService;
+import org.openmrs.module.auditlog.util.AuditLogConstants;
+
+/**
+ * Writes the words in the changed values of saved audit logs to the index in a background thread,
+ * the words of the logs of a transaction are queued once it commits and they are written in
+ * batches each in its own transaction so that indexing adds no latency to the audited
+ * transactions. Queued words that aren't written before the module stops are lost, the index can
+ * be rebuilt with {@link AuditLogService#rebuildChangedValueIndex(Integer, Integer)}.
+ */
+public final class ChangedValueIndexWriter {
+	
+	private static final Log log = LogFactory.getLog(ChangedValueIndexWriter.class);
+	
+	//The maximum number of audit logs whose words are written in a single transaction
+	private static final int BATCH_SIZE = 100;
+	
+	//The maximum time to wait for the queued words to be written when the module stops
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+	
+	private static final Queue<Map.Entry<Integer, Map<String, Set<String>>>> queue = new ConcurrentLinkedQueue<Map.Entry<Integer, Map<String, Set<String>>>>();
+	
+	//Set when a drain is submitted and cleared when it starts, so that at most one waits to run
+	private static final AtomicBoolean drainScheduled = new AtomicBoolean();
+	
+	private static ExecutorService executor;
+	
+	private static final Runnable DRAIN_TASK = new Runnable() {
+		
+		@Override
+		public void run() {
+			drainScheduled.set(false);
+			drain();
+		}
+	};
+	
+	private ChangedValueIndexWriter() {
+	}
+	
+	/**
+	 * Queues the words of the specified committed audit logs to be written, the words replace any
+	 * that are already indexed for the logs
+	 * 
+	 * @param auditLogIdTokens the ids of the audit logs mapped to the names of their changed
+	 *            properties mapped to the words in the values
+	 */
+	static void enqueue(Map<Integer, Map<String, Set<String>>> auditLogIdTokens) {
+		if (auditLogIdTokens.isEmpty()) {
+			return;
+		}
+		
+		for (Map.Entry<Integer, Map<String, Set<String>>> entry : auditLogIdTokens.entrySet()) {
+			queue.add(new AbstractMap.SimpleEntry<Integer, Map<String, Set<String>>>(entry));
+		}
+		if (drainScheduled.compareAndSet(false, true)) {
+			try {
+				getExecutor().execute(DRAIN_TASK);
+			}
+			catch (RejectedExecutionException e) {
+				drainScheduled.set(false);
+				log.warn("Failed to queue the changed values of " + auditLogIdTokens.size()
+				        + " audit logs for indexing, the index needs to be rebuilt", e);
+			}
+		}
+	}
+	
+	/**
+	 * Waits for the words queued so far to be written, this is mainly useful for tests
+	 * 
+	 * @param timeoutSeconds the maximum time to wait in seconds
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 * @throws TimeoutException
+	 */
+	public static void awaitPendingWrites(long timeoutSeconds) throws InterruptedException, ExecutionException,
+	    TimeoutException {
+		//The executor has a single thread so the drains submitted before this task are done when it runs
+		getExecutor().submit(new Runnable() {
+			
+			@Override
+			public void run() {
+			}
+		}).get(timeoutSeconds, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Shuts down the background thread if it was ever started after writing the queued words
+	 */
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+					log.warn("Timed out writing the queued changed values, the index needs to be rebuilt");
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			executor = null;
+		}
+	}
+	
+	/**
+	 * Writes the queued words in batches until the queue is empty
+	 */
+	private static void drain() {
+		Context.openSession();
+		try {
+			Context.addProxyPrivilege(AuditLogConstants.PRIV_MANAGE_AUDITLOG);
+			Map<Integer, Map<String, Set<String>>> batch = new LinkedHashMap<Integer, Map<String, Set<String>>>();
+			Map.Entry<Integer, Map<String, Set<String>>> entry;
+			while ((entry = queue.poll()) != null) {
+				//A log queued again after it was coalesced with a later update gets the later words
+				batch.put(entry.getKey(), entry.getValue());
+				if (batch.size() >= BATCH_SIZE) {
+					write(batch);
+					batch = new LinkedHashMap<Integer, Map<String, Set<String>>>();
+				}
+			}
+			if (!batch.isEmpty()) {
+				write(batch);
+			}
+		}
+		finally {
+			Context.removeProxyPrivilege(AuditLogConstants.PRIV_MANAGE_AUDITLOG);
+			Context.closeSession();
+		}
+	}
+	
+	private static void write(Map<Integer, Map<String, Set<String>>> batch) {
+		try {
+			Context.getService(AuditLogService.class).saveChangedValueIndex(batch);
+		}
+		catch (Exception e) {
+			log.error("Failed to index the changed values of the audit logs with ids " + batch.keySet()
+			        + ", the index needs to be rebuilt", e);
+		}
+		finally {
+			Context.clearSession();
+		}
+	}
+	
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			//A single thread keeps the batches in the order the transactions committed in
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "auditlog-value-indexer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+}
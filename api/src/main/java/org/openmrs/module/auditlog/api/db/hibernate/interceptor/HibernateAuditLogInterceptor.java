@@ -3,12 +3,12 @@
  * Version 1.0 (the "License"); you may not use this file except in
  * compliance with the License. You may obtain a copy of the License at
  * http://license.openmrs.org
- *
+ * 
  * Software distributed under the License is distributed on an "AS IS"
  * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
  * License for the specific language governing rights and limitations
  * under the License.
- *
+ * 
  * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
  */
 package org.openmrs.module.auditlog.api.db.hibernate.interceptor;
@@ -16,11 +16,15 @@ package org.openmrs.module.auditlog.api.db.hibernate.interceptor;
 import java.io.Serializable;
 import java.sql.Blob;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -51,6 +55,10 @@ import org.openmrs.module.auditlog.AuditLog;
 import org.openmrs.module.auditlog.AuditLog.Action;
 import org.openmrs.module.auditlog.util.AuditLogConstants;
 import org.openmrs.module.auditlog.util.AuditLogUtil;
+import org.openmrs.module.auditlog.util.DigestUtil;
+import org.openmrs.module.auditlog.util.DisplayStringCache;
+import org.openmrs.module.auditlog.util.ObjectStateCache;
+import org.openmrs.module.auditlog.util.ValueTokenizer;
 import org.openmrs.util.OpenmrsConstants;
 import org.openmrs.util.OpenmrsUtil;
 import org.springframework.orm.hibernate3.SessionFactoryUtils;
@@ -102,8 +110,32 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 	//Mapping between parent entities and sets of removed collection elements
 	private ThreadLocal<Stack<Map<Object, HashSet<Object>>>> entityRemovedChildrenMap = new ThreadLocal<Stack<Map<Object, HashSet<Object>>>>();
 	
+	//Mapping between deleted objects and their serialized last states captured at the time of deletion
+	private ThreadLocal<Stack<Map<Object, Map<String, Object>>>> deletedObjectStateMap = new ThreadLocal<Stack<Map<Object, Map<String, Object>>>>();
+	
+	//The uninitialized collections in the last states of deleted objects, their elements are fetched
+	//at the start of the next flush before the deletes are executed
+	private ThreadLocal<Stack<PendingCollections>> pendingCollections = new ThreadLocal<Stack<PendingCollections>>();
+	
+	//Set while hibernate is flushing, objects deleted by cascade during a flush can't wait for the
+	//next one since their rows and those of their collections are deleted in the current flush
+	private ThreadLocal<Boolean> flushing = new ThreadLocal<Boolean>();
+	
+	//Mapping between the created AuditLogs and the data to serialize for each of them
+	private ThreadLocal<Stack<Map<AuditLog, Object>>> auditLogPayloadMap = new ThreadLocal<Stack<Map<AuditLog, Object>>>();
+	
 	private ThreadLocal<Stack<Date>> date = new ThreadLocal<Stack<Date>>();
 	
+	//Mapping between the types and ids of the objects that got new AuditLogs, their cached display
+	//strings and states are removed after the transaction completes. Unlike the other stacks, this
+	//one is popped in afterTransactionCompletion
+	private ThreadLocal<Stack<Map<Class<?>, Set<String>>>> changedObjectIdsMap = new ThreadLocal<Stack<Map<Class<?>, Set<String>>>>();
+	
+	//Mapping between the ids of the saved AuditLogs and the words in their changed values, the words
+	//are queued to be indexed after the transaction commits so this one is also popped in
+	//afterTransactionCompletion
+	private ThreadLocal<Stack<Map<Integer, Map<String, Set<String>>>>> valueTokensMap = new ThreadLocal<Stack<Map<Integer, Map<String, Set<String>>>>>();
+	
 	//Ignore these properties because they match auditLog.user and auditLog.dateCreated
 	private static final String[] IGNORED_PROPERTIES = new String[] { "changedBy", "dateChanged", "creator", "dateCreated",
 	        "voidedBy", "dateVoided", "retiredBy", "dateRetired", "personChangedBy", "personDateChanged", "personCreator",
@@ -124,7 +156,12 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 		ownerUuidChildLogsMap.get().push(new HashMap<Object, List<AuditLog>>());
 		childbjectUuidAuditLogMap.get().push(new HashMap<Object, AuditLog>());
 		entityRemovedChildrenMap.get().push(new HashMap<Object, HashSet<Object>>());
+		deletedObjectStateMap.get().push(new HashMap<Object, Map<String, Object>>());
+		pendingCollections.get().push(new PendingCollections());
+		auditLogPayloadMap.get().push(new IdentityHashMap<AuditLog, Object>());
 		date.get().push(new Date());
+		changedObjectIdsMap.get().push(new HashMap<Class<?>, Set<String>>());
+		valueTokensMap.get().push(new LinkedHashMap<Integer, Map<String, Set<String>>>());
 	}
 	
 	/**
@@ -171,6 +208,7 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 				
 			}
 			Map<String, Object[]> propertyChangesMap = null;//Map<propertyName, Object[]{currentValue, PreviousValue}>
+			Integer largeValueThreshold = InterceptorUtil.getAuditLogDao().getLargeValueThreshold();
 			for (int i = 0; i < propertyNames.length; i++) {
 				//we need to ignore dateChanged and changedBy fields in any case they
 				//are actually part of the Auditlog in form of user and dateCreated
@@ -181,6 +219,12 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 				Object previousValue = (previousState != null) ? previousState[i] : null;
 				Object currentValue = (currentState != null) ? currentState[i] : null;
 				if (!types[i].isCollectionType() && !OpenmrsUtil.nullSafeEquals(currentValue, previousValue)) {
+					//byte arrays are compared by reference by nullSafeEquals
+					if (currentValue instanceof byte[] && previousValue instanceof byte[]
+					        && Arrays.equals((byte[]) currentValue, (byte[]) previousValue)) {
+						continue;
+					}
+					
 					//For string properties, ignore changes from null to blank and vice versa
 					//TODO This should be user configurable via a module GP
 					if (StringType.class.getName().equals(types[i].getClass().getName())
@@ -205,11 +249,24 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 						propertyChangesMap = new HashMap<String, Object[]>();
 					}
 					
-					String serializedPreviousValue = AuditLogUtil.serializeObject(previousValue);
-					String serializedCurrentValue = AuditLogUtil.serializeObject(currentValue);
-					
-					propertyChangesMap.put(propertyNames[i],
-					    new String[] { serializedCurrentValue, serializedPreviousValue });
+					if (currentValue instanceof byte[] || previousValue instanceof byte[]) {
+						propertyChangesMap.put(propertyNames[i], new Object[] { DigestUtil.createDigest((byte[]) currentValue),
+						        DigestUtil.createDigest((byte[]) previousValue) });
+					} else if (isLargeText(currentValue, largeValueThreshold)
+					        || isLargeText(previousValue, largeValueThreshold)) {
+						//Store digests instead of the full values, the new value includes a delta
+						String currentText = (String) currentValue;
+						String previousText = (String) previousValue;
+						propertyChangesMap.put(propertyNames[i], new Object[] {
+						        DigestUtil.createDigest(currentText, previousText, largeValueThreshold),
+						        DigestUtil.createDigest(previousText) });
+					} else {
+						String serializedPreviousValue = AuditLogUtil.serializeObject(previousValue);
+						String serializedCurrentValue = AuditLogUtil.serializeObject(currentValue);
+						
+						propertyChangesMap.put(propertyNames[i], new String[] { serializedCurrentValue,
+						        serializedPreviousValue });
+					}
 				}
 			}
 			
@@ -227,6 +284,10 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 		return false;
 	}
 	
+	private boolean isLargeText(Object value, Integer largeValueThreshold) {
+		return largeValueThreshold != null && value instanceof String && ((String) value).length() > largeValueThreshold;
+	}
+	
 	/**
 	 * @see org.hibernate.EmptyInterceptor#onDelete(Object, java.io.Serializable, Object[],
 	 *      String[], org.hibernate.type.Type[])
@@ -237,16 +298,55 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 			if (log.isDebugEnabled()) {
 				log.debug("Creating log entry for deleted object with id:" + id + " of type:" + entity.getClass().getName());
 			}
-			for (int i = 0; i < types.length; i++) {
-				if (types[i].isCollectionType()) {
-					//Avoids LazyInitializationException since the parent is already purged
-					Hibernate.initialize(state[i]);
+			if (InterceptorUtil.storeLastStateOfDeletedItems()) {
+				//Capture the last state now from the state array passed in by hibernate, this way we
+				//avoid reading the properties by name later and initializing every collection
+				//TODO if one edits and deletes an object in the same API call, the property
+				//value that gets serialized is the new one but actually was never saved
+				int depth = InterceptorUtil.getAuditLogDao().getDeletedItemsSerializationDepth();
+				boolean isFlushing = Boolean.TRUE.equals(flushing.get());
+				if (isFlushing) {
+					//Loading the collection elements would add entities to the session while
+					//hibernate is iterating over them, so only their ids are read
+					depth = Math.min(depth, 1);
+				}
+				PendingCollections pending = pendingCollections.get().peek();
+				deletedObjectStateMap.get().peek().put(
+				    entity,
+				    InterceptorUtil.serializeState(AuditLogUtil.getActualType(entity), id, state, propertyNames, types,
+				        InterceptorUtil.getAuditLogDao().getDeletedItemsCollectionSizeLimit(), depth, pending));
+				if (isFlushing) {
+					pending.resolve();
 				}
 			}
 			deletes.get().peek().add(entity);
 		}
 	}
 	
+	/**
+	 * Fetches the elements of the collections in the last states of the objects deleted since the
+	 * previous flush, this has to be done before hibernate executes the deletes
+	 * 
+	 * @see org.hibernate.EmptyInterceptor#preFlush(java.util.Iterator)
+	 */
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void preFlush(Iterator entities) {
+		if (pendingCollections.get() != null && !pendingCollections.get().empty()) {
+			pendingCollections.get().peek().resolve();
+		}
+		flushing.set(true);
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#postFlush(java.util.Iterator)
+	 */
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void postFlush(Iterator entities) {
+		flushing.remove();
+	}
+	
 	/**
 	 * @see org.hibernate.EmptyInterceptor#onCollectionUpdate(Object, java.io.Serializable)
 	 */
@@ -291,6 +391,11 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 				boolean isOwnerDeleted = OpenmrsUtil.collectionContains(deletes.get().peek(), owningObject);
 				if (Collection.class.isAssignableFrom(collection.getClass())) {
 					Collection coll = (Collection) collection;
+					//If the owner is deleted and the collection was never initialized, none of its
+					//elements was deleted by cascade otherwise hibernate would have initialized it
+					if (isOwnerDeleted && !persistentColl.wasInitialized()) {
+						return;
+					}
 					if (!coll.isEmpty()) {
 						if (isOwnerDeleted) {
 							if (entityRemovedChildrenMap.get().peek().get(owningObject) == null) {
@@ -371,6 +476,7 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 	/**
 	 * @see org.hibernate.EmptyInterceptor#beforeTransactionCompletion(org.hibernate.Transaction)
 	 */
+	@SuppressWarnings("unchecked")
 	@Override
 	public void beforeTransactionCompletion(Transaction tx) {
 		try {
@@ -378,6 +484,9 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 				return;
 			}
 			
+			//In case the session was never flushed after the deletes e.g if its flush mode is manual
+			pendingCollections.get().peek().resolve();
+			
 			try {
 				//TODO handle daemon or un authenticated operations
 				
@@ -453,8 +562,12 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 				}
 				
 				List<AuditLog> logs = new ArrayList<AuditLog>();
+				//The created and updated objects of the logs, used to take snapshots of their states
+				Map<AuditLog, Object> auditLogObjectMap = new IdentityHashMap<AuditLog, Object>();
 				for (Object insert : inserts.get().peek()) {
-					logs.add(createAuditLogIfNecessary(insert, Action.CREATED));
+					AuditLog auditLog = createAuditLogIfNecessary(insert, Action.CREATED);
+					logs.add(auditLog);
+					auditLogObjectMap.put(auditLog, insert);
 				}
 				
 				for (Object delete : deletes.get().peek()) {
@@ -462,12 +575,64 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 				}
 				
 				for (Object update : updates.get().peek()) {
-					logs.add(createAuditLogIfNecessary(update, Action.UPDATED));
+					AuditLog auditLog = createAuditLogIfNecessary(update, Action.UPDATED);
+					logs.add(auditLog);
+					auditLogObjectMap.put(auditLog, update);
 				}
 				
+				Map<Class<?>, Integer> coalescingWindows = InterceptorUtil.getAuditLogDao().getCoalescingWindows();
+				if (!coalescingWindows.isEmpty()) {
+					for (Iterator<AuditLog> iterator = logs.iterator(); iterator.hasNext();) {
+						if (coalesceIfNecessary(iterator.next(), coalescingWindows)) {
+							iterator.remove();
+						}
+					}
+				}
+				
+				AuditLogPayloadSerializer.serialize(auditLogPayloadMap.get().peek());
+				
 				for (AuditLog al : logs) {
 					InterceptorUtil.saveAuditLog(al);
 				}
+				
+				//Point the objects to their new latest logs in the same transaction as the logs, the
+				//child logs are skipped since they are updated along with their parents
+				for (AuditLog al : logs) {
+					if (al.getParentAuditLog() == null) {
+						InterceptorUtil.getAuditLogDao().updateLatestAuditLog(al);
+					}
+				}
+				
+				//The logs have ids now, so the names of the properties they changed can be recorded
+				//and the words in the values can be queued for indexing
+				boolean indexChangedValues = InterceptorUtil.getAuditLogDao().isIndexChangedValues();
+				for (Map.Entry<AuditLog, Object> entry : auditLogPayloadMap.get().peek().entrySet()) {
+					if (!(entry.getValue() instanceof Map)) {
+						continue;
+					}
+					Map<String, Object> values = (Map<String, Object>) entry.getValue();
+					if (entry.getKey().getAction() == Action.UPDATED) {
+						InterceptorUtil.getAuditLogDao().saveChangedProperties(entry.getKey(), values.keySet());
+					}
+					if (indexChangedValues) {
+						Map<String, Set<String>> propertyTokens = ValueTokenizer.tokenizeProperties(values);
+						if (!propertyTokens.isEmpty()) {
+							valueTokensMap.get().peek().put(entry.getKey().getAuditLogId(), propertyTokens);
+						}
+					}
+				}
+				
+				Integer snapshotInterval = InterceptorUtil.getAuditLogDao().getSnapshotInterval();
+				if (snapshotInterval != null && !auditLogObjectMap.isEmpty()) {
+					//The update counts are read for all the logs at once, coalesced logs are never saved
+					Set<Integer> snapshotDueIds = InterceptorUtil.getAuditLogDao().getSnapshotDueAuditLogIds(
+					    auditLogObjectMap.keySet(), snapshotInterval);
+					for (Map.Entry<AuditLog, Object> entry : auditLogObjectMap.entrySet()) {
+						if (snapshotDueIds.contains(entry.getKey().getAuditLogId())) {
+							saveSnapshot(entry.getKey(), entry.getValue());
+						}
+					}
+				}
 			}
 			catch (Exception e) {
 				//error should not bubble out of the interceptor
@@ -484,12 +649,70 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 			ownerUuidChildLogsMap.get().pop();
 			childbjectUuidAuditLogMap.get().pop();
 			entityRemovedChildrenMap.get().pop();
+			deletedObjectStateMap.get().pop();
+			pendingCollections.get().pop();
+			auditLogPayloadMap.get().pop();
 			date.get().pop();
 			
 			removeStacksIfEmpty();
 		}
 	}
 	
+	/**
+	 * Removes the cached display strings and states of the objects that got new audit logs, this is
+	 * done after the transaction completes otherwise a concurrent request could cache the values
+	 * read before the changes got committed. If the transaction committed, the words in the changed
+	 * values of its audit logs are queued to be indexed by a background thread.
+	 * 
+	 * @see org.hibernate.EmptyInterceptor#afterTransactionCompletion(org.hibernate.Transaction)
+	 */
+	@Override
+	public void afterTransactionCompletion(Transaction tx) {
+		if (changedObjectIdsMap.get() == null || changedObjectIdsMap.get().empty()) {
+			return;
+		}
+		
+		Map<Class<?>, Set<String>> changedObjectIds = changedObjectIdsMap.get().pop();
+		Map<Integer, Map<String, Set<String>>> valueTokens = valueTokensMap.get().pop();
+		if (changedObjectIdsMap.get().empty()) {
+			changedObjectIdsMap.remove();
+			valueTokensMap.remove();
+		}
+		for (Map.Entry<Class<?>, Set<String>> entry : changedObjectIds.entrySet()) {
+			for (String id : entry.getValue()) {
+				DisplayStringCache.getInstance().invalidate(entry.getKey(), id);
+				ObjectStateCache.getInstance().invalidate(entry.getKey(), id);
+			}
+		}
+		if (tx != null && tx.wasCommitted()) {
+			ChangedValueIndexWriter.enqueue(valueTokens);
+		}
+	}
+	
+	/**
+	 * Stores the current state of the specified object as the snapshot for the specified audit log,
+	 * the ignored properties are left out since they are never recorded as changes.
+	 * 
+	 * @param auditLog the saved audit log
+	 * @param object the created or updated object
+	 */
+	private void saveSnapshot(AuditLog auditLog, Object object) {
+		Class<?> type = AuditLogUtil.getActualType(object);
+		ClassMetadata cmd = AuditLogUtil.getClassMetadata(type);
+		//The collections aren't truncated since the states are reconstructed from the snapshots
+		PendingCollections pending = new PendingCollections();
+		Map<String, Object> state = InterceptorUtil.serializeState(type, InterceptorUtil.getId(object),
+		    cmd.getPropertyValues(object, EntityMode.POJO), cmd.getPropertyNames(), cmd.getPropertyTypes(), null, 1,
+		    pending);
+		pending.resolve();
+		for (String propertyName : IGNORED_PROPERTIES) {
+			state.remove(propertyName);
+		}
+		
+		Blob blob = Hibernate.createBlob(AuditLogUtil.serializeToJson(state).getBytes());
+		InterceptorUtil.getAuditLogDao().saveSnapshot(auditLog, blob);
+	}
+	
 	/**
 	 * Creates if necessary
 	 * 
@@ -511,6 +734,106 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 		return auditLog;
 	}
 	
+	/**
+	 * Merges the changes of the specified audit log into the most recent log for the same object if
+	 * its type has a coalescing window and the most recent log is an update by the same user that
+	 * was created within the window. The merged log keeps the earliest previous value and the latest
+	 * new value of each property and its creation date is left unchanged, this implies the window is
+	 * measured from the first update. A property whose latest new value is its earliest previous
+	 * value is dropped from the merged log, if all the properties are dropped the changes are not
+	 * merged.
+	 * 
+	 * @param auditLog the new audit log
+	 * @param coalescingWindows the types and their coalescing windows in seconds
+	 * @return true if the changes were merged into an existing log otherwise false
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private boolean coalesceIfNecessary(AuditLog auditLog, Map<Class<?>, Integer> coalescingWindows) {
+		if (auditLog.getAction() != Action.UPDATED || auditLog.getParentAuditLog() != null || auditLog.hasChildLogs()) {
+			return false;
+		}
+		Integer window = coalescingWindows.get(auditLog.getType());
+		if (window == null || window < 1) {
+			return false;
+		}
+		Map<String, Object[]> changes = (Map<String, Object[]>) auditLogPayloadMap.get().peek().get(auditLog);
+		if (changes == null) {
+			return false;
+		}
+		
+		Date startDate = new Date(auditLog.getDateCreated().getTime() - window * 1000L);
+		AuditLog mostRecent = InterceptorUtil.getAuditLogDao().getMostRecentAuditLog(auditLog.getType(),
+		    auditLog.getIdentifier(), startDate);
+		if (mostRecent == null || mostRecent.getAction() != Action.UPDATED
+		        || !OpenmrsUtil.nullSafeEquals(mostRecent.getUser(), auditLog.getUser()) || mostRecent.hasChildLogs()) {
+			return false;
+		}
+		
+		Map<String, Object> mergedChanges = new HashMap<String, Object>();
+		Map<String, List> previousChanges = AuditLogUtil.getChangesOfUpdatedItem(mostRecent);
+		mergedChanges.putAll(previousChanges);
+		//The properties changed back to their values before the most recent log
+		Set<String> revertedProperties = new HashSet<String>();
+		for (Map.Entry<String, Object[]> entry : changes.entrySet()) {
+			List previousChange = previousChanges.get(entry.getKey());
+			if (previousChange != null) {
+				Object newValue = entry.getValue()[0];
+				if (DigestUtil.isDigest(newValue)) {
+					//The delta is against the intermediate value which is getting dropped
+					newValue = new HashMap<String, Object>((Map<String, Object>) newValue);
+					((Map<String, Object>) newValue).remove(DigestUtil.KEY_DELTA);
+				}
+				if (isSameValue(newValue, previousChange.get(1))) {
+					mergedChanges.remove(entry.getKey());
+					revertedProperties.add(entry.getKey());
+				} else {
+					mergedChanges.put(entry.getKey(), new Object[] { newValue, previousChange.get(1) });
+				}
+			} else {
+				mergedChanges.put(entry.getKey(), entry.getValue());
+			}
+		}
+		if (mergedChanges.isEmpty()) {
+			//Keep both logs rather than a log without changes
+			return false;
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Merging changes for object with id:" + auditLog.getIdentifier() + " of type:"
+			        + auditLog.getType().getName() + " into the log with uuid:" + mostRecent.getUuid());
+		}
+		
+		Blob blob = Hibernate.createBlob(AuditLogUtil.serializeToJson(mergedChanges).getBytes());
+		InterceptorUtil.getAuditLogDao().updateSerializedData(mostRecent, blob);
+		InterceptorUtil.getAuditLogDao().deleteChangedProperties(mostRecent, revertedProperties);
+		InterceptorUtil.getAuditLogDao().saveChangedProperties(mostRecent, mergedChanges.keySet());
+		if (InterceptorUtil.getAuditLogDao().isIndexChangedValues()) {
+			//The queued words replace the indexed ones, so the words of the dropped intermediate
+			//values no longer match the merged log
+			valueTokensMap.get().peek().put(mostRecent.getAuditLogId(), ValueTokenizer.tokenizeProperties(mergedChanges));
+		}
+		auditLogPayloadMap.get().peek().remove(auditLog);
+		
+		return true;
+	}
+	
+	/**
+	 * Checks if the specified serialized property values are the same, digests are compared by
+	 * their hashes
+	 * 
+	 * @param value the first value
+	 * @param otherValue the second value
+	 * @return true if the values are the same otherwise false
+	 */
+	@SuppressWarnings("rawtypes")
+	private boolean isSameValue(Object value, Object otherValue) {
+		if (DigestUtil.isDigest(value) && DigestUtil.isDigest(otherValue)) {
+			return OpenmrsUtil.nullSafeEquals(((Map) value).get(DigestUtil.KEY_HASH),
+			    ((Map) otherValue).get(DigestUtil.KEY_HASH));
+		}
+		return OpenmrsUtil.nullSafeEquals(value, otherValue);
+	}
+	
 	/**
 	 * Creates a new instance of an {@link org.openmrs.module.auditlog.AuditLog} for the specified
 	 * object and Action
@@ -526,21 +849,22 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 		        .peek());
 		auditLog.setOpenmrsVersion(OpenmrsConstants.OPENMRS_VERSION_SHORT);
 		auditLog.setModuleVersion(AuditLogConstants.MODULE_VERSION);
-		if (action == Action.UPDATED || action == Action.DELETED) {
-			Map<String, Object[]> propertyValuesMap = null;
-			if (action == Action.UPDATED) {
-				propertyValuesMap = objectChangesMap.get().peek().get(object);
-				if (propertyValuesMap != null) {
-					Blob blob = Hibernate.createBlob(AuditLogUtil.serializeToJson(propertyValuesMap).getBytes());
-					auditLog.setSerializedData(blob);
-				}
-			} else if (InterceptorUtil.storeLastStateOfDeletedItems()) {
-				//TODO if one edits and deletes an object in the same API call, the property
-				//value that gets serialized is the new one but actually was never saved
-				//Should we store the value in the DB or the one in the current session?
-				Blob blob = Hibernate.createBlob(InterceptorUtil.serializePersistentObject(object).getBytes());
-				auditLog.setSerializedData(blob);
-			}
+		//The object is changing so its cached display string and states will be stale
+		Set<String> changedIds = changedObjectIdsMap.get().peek().get(object.getClass());
+		if (changedIds == null) {
+			changedIds = new HashSet<String>();
+			changedObjectIdsMap.get().peek().put(object.getClass(), changedIds);
+		}
+		changedIds.add(serializedId);
+		//The data is serialized later for all the logs at once, see AuditLogPayloadSerializer
+		Object payload = null;
+		if (action == Action.UPDATED) {
+			payload = objectChangesMap.get().peek().get(object);
+		} else if (action == Action.DELETED) {
+			payload = deletedObjectStateMap.get().peek().get(object);
+		}
+		if (payload != null) {
+			auditLogPayloadMap.get().peek().put(auditLog, payload);
 		}
 		return auditLog;
 	}
@@ -570,9 +894,24 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 		if (entityRemovedChildrenMap.get() == null) {
 			entityRemovedChildrenMap.set(new Stack<Map<Object, HashSet<Object>>>());
 		}
+		if (deletedObjectStateMap.get() == null) {
+			deletedObjectStateMap.set(new Stack<Map<Object, Map<String, Object>>>());
+		}
+		if (pendingCollections.get() == null) {
+			pendingCollections.set(new Stack<PendingCollections>());
+		}
+		if (auditLogPayloadMap.get() == null) {
+			auditLogPayloadMap.set(new Stack<Map<AuditLog, Object>>());
+		}
 		if (date.get() == null) {
 			date.set(new Stack<Date>());
 		}
+		if (changedObjectIdsMap.get() == null) {
+			changedObjectIdsMap.set(new Stack<Map<Class<?>, Set<String>>>());
+		}
+		if (valueTokensMap.get() == null) {
+			valueTokensMap.set(new Stack<Map<Integer, Map<String, Set<String>>>>());
+		}
 	}
 	
 	private void removeStacksIfEmpty() {
@@ -600,6 +939,15 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 		if (entityRemovedChildrenMap.get().empty()) {
 			entityRemovedChildrenMap.remove();
 		}
+		if (deletedObjectStateMap.get().empty()) {
+			deletedObjectStateMap.remove();
+		}
+		if (pendingCollections.get().empty()) {
+			pendingCollections.remove();
+		}
+		if (auditLogPayloadMap.get().empty()) {
+			auditLogPayloadMap.remove();
+		}
 		if (date.get().empty()) {
 			date.remove();
 		}
@@ -609,11 +957,6 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 		
 		if (currentCollOrMap != null || previousCollOrMap != null) {
 			String propertyName = role.substring(role.lastIndexOf('.') + 1);
-			
-			if (objectChangesMap.get().peek().get(owningObject) == null) {
-				objectChangesMap.get().peek().put(owningObject, new HashMap<String, Object[]>());
-			}
-			
 			Object previousSerializedItems = null;
 			Object newSerializedItems = null;
 			Class<?> collectionOrMapType;
@@ -642,8 +985,21 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 					}
 				}
 				
-				previousSerializedItems = AuditLogUtil.serializeCollectionItems(pColl);
-				newSerializedItems = AuditLogUtil.serializeCollectionItems(cColl);
+				//Hibernate also calls onCollectionUpdate/onCollectionRemove when the collection instance
+				//gets replaced even if the new one has the same elements, so we compare the elements by
+				//their identifiers and ignore the collection if nothing was actually added or removed
+				if (pColl != null && cColl != null && pColl.size() == cColl.size()) {
+					List<String> previousItems = AuditLogUtil.serializeCollectionItems(pColl);
+					List<String> newItems = AuditLogUtil.serializeCollectionItems(cColl);
+					if (hasSameItems(previousItems, newItems, List.class.isAssignableFrom(collectionOrMapType))) {
+						return;
+					}
+					previousSerializedItems = previousItems;
+					newSerializedItems = newItems;
+				} else {
+					previousSerializedItems = AuditLogUtil.serializeCollectionItems(pColl);
+					newSerializedItems = AuditLogUtil.serializeCollectionItems(cColl);
+				}
 				
 				//Track removed items so that when we create logs for them,
 				//and link them to the parent's log
@@ -661,7 +1017,7 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 				//For some reason hibernate ends calling onCollectionUpdate even when the map has
 				//no changes. I think it uses object equality for the map entries and assumes the map has
 				//changes. Noticed this happens for user.userProperties and added a unit test to prove it
-				if (previousCollOrMap.equals(currentCollOrMap)) {
+				if (OpenmrsUtil.nullSafeEquals(previousCollOrMap, currentCollOrMap)) {
 					return;
 				}
 				
@@ -669,9 +1025,33 @@ public class HibernateAuditLogInterceptor extends EmptyInterceptor {
 				newSerializedItems = AuditLogUtil.serializeMapItems((Map) currentCollOrMap);
 			}
 			
+			if (objectChangesMap.get().peek().get(owningObject) == null) {
+				objectChangesMap.get().peek().put(owningObject, new HashMap<String, Object[]>());
+			}
+			
 			updates.get().peek().add(owningObject);
 			objectChangesMap.get().peek().get(owningObject)
 			        .put(propertyName, new Object[] { newSerializedItems, previousSerializedItems });
 		}
 	}
+	
+	/**
+	 * Checks if the specified serialized collection items are the same, for lists the order of the
+	 * items matters while for other collections it doesn't
+	 * 
+	 * @param previousItems the serialized items of the previous collection
+	 * @param newItems the serialized items of the new collection
+	 * @param isList specifies if the collections are lists
+	 * @return true if the items are the same otherwise false
+	 */
+	private boolean hasSameItems(List<String> previousItems, List<String> newItems, boolean isList) {
+		if (CollectionUtils.isEmpty(previousItems) || CollectionUtils.isEmpty(newItems)) {
+			return CollectionUtils.isEmpty(previousItems) && CollectionUtils.isEmpty(newItems);
+		}
+		if (isList) {
+			return previousItems.equals(newItems);
+		}
+		
+		return CollectionUtils.isEqualCollection(previousItems, newItems);
+	}
 }
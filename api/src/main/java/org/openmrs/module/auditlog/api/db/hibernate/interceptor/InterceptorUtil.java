@@ -3,26 +3,36 @@
  * Version 1.0 (the "License"); you may not use this file except in
  * compliance with the License. You may obtain a copy of the License at
  * http://license.openmrs.org
- *
+ * 
  * Software distributed under the License is distributed on an "AS IS"
  * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
  * License for the specific language governing rights and limitations
  * under the License.
- *
+ * 
  * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
  */
 package org.openmrs.module.auditlog.api.db.hibernate.interceptor;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.EntityMode;
+import org.hibernate.Hibernate;
 import org.hibernate.SessionFactory;
+import org.hibernate.collection.PersistentCollection;
+import org.hibernate.engine.SessionFactoryImplementor;
 import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.type.CollectionType;
+import org.hibernate.type.Type;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.auditlog.AuditLog;
 import org.openmrs.module.auditlog.AuditLogHelper;
@@ -76,39 +86,148 @@ final class InterceptorUtil {
 	}
 	
 	/**
-	 * Serializes mapped hibernate objects
+	 * Serializes the specified state of a mapped hibernate object, the values are read by index
+	 * from the state array as passed to the interceptor by hibernate rather than by property name
+	 * from the object itself. A collection that is not yet initialized and whose elements are
+	 * entities is added to the specified pending collections so that its elements get fetched
+	 * together with those of the other collections with the same role, the other collections are
+	 * initialized.
 	 * 
-	 * @param object the object to serialize
-	 * @return the serialized JSON text
+	 * @param type the mapped type of the object
+	 * @param id the identifier of the object
+	 * @param state the property values of the object
+	 * @param propertyNames the property names matching the values in the state
+	 * @param types the hibernate types of the properties matching the values in the state
+	 * @param collectionSizeLimit the maximum number of elements to serialize for each collection,
+	 *            null for no limit and zero to leave out the collections
+	 * @param depth the number of levels of collections to serialize, zero leaves out the
+	 *            collections, 1 serializes the identifiers of entity elements and each extra level
+	 *            serializes the states of the elements instead
+	 * @param pendingCollections the pending collections to add the uninitialized collections to
+	 * @return a map of property names and their serialized values
 	 */
-	static String serializePersistentObject(Object object) {
-		//TODO Might be better to use xstream
-		Map<String, Object> propertyNameValueMap = null;
-		ClassMetadata cmd = DAOUtils.getClassMetadata(AuditLogUtil.getActualType(object));
+	static Map<String, Object> serializeState(Class<?> type, Serializable id, Object[] state, String[] propertyNames,
+	                                          Type[] types, Integer collectionSizeLimit, int depth,
+	                                          PendingCollections pendingCollections) {
+		Map<String, Object> propertyNameValueMap = new HashMap<String, Object>();
+		ClassMetadata cmd = DAOUtils.getClassMetadata(type);
 		if (cmd != null) {
-			propertyNameValueMap = new HashMap<String, Object>();
-			propertyNameValueMap.put(cmd.getIdentifierPropertyName(), cmd.getIdentifier(object, EntityMode.POJO));
-			for (String propertyName : cmd.getPropertyNames()) {
-				Object value = cmd.getPropertyValue(object, propertyName, EntityMode.POJO);
-				if (value != null) {
-					Object serializedValue = null;
-					if (cmd.getPropertyType(propertyName).isCollectionType()) {
-						if (Collection.class.isAssignableFrom(value.getClass())) {
-							serializedValue = AuditLogUtil.serializeCollectionItems((Collection) value);
-						} else if (Map.class.isAssignableFrom(value.getClass())) {
-							serializedValue = AuditLogUtil.serializeMapItems((Map) value);
-						}
+			propertyNameValueMap.put(cmd.getIdentifierPropertyName(), id);
+		}
+		for (int i = 0; i < propertyNames.length; i++) {
+			Object value = state[i];
+			if (value == null) {
+				continue;
+			}
+			Object serializedValue = null;
+			if (types[i].isCollectionType()) {
+				if (depth > 0 && (collectionSizeLimit == null || collectionSizeLimit > 0)) {
+					String role = ((CollectionType) types[i]).getRole();
+					if (isUninitializedEntityCollection(value, role)) {
+						pendingCollections.add(role, id, propertyNameValueMap, propertyNames[i], collectionSizeLimit,
+						    depth);
 					} else {
-						serializedValue = AuditLogUtil.serializeObject(value);
-					}
-					if (serializedValue != null) {
-						propertyNameValueMap.put(propertyName, serializedValue);
+						serializedValue = serializeCollectionState(value, collectionSizeLimit, depth, pendingCollections);
 					}
 				}
+			} else {
+				serializedValue = AuditLogUtil.serializeObject(value);
+			}
+			if (serializedValue != null) {
+				propertyNameValueMap.put(propertyNames[i], serializedValue);
+			}
+		}
+		
+		return propertyNameValueMap;
+	}
+	
+	/**
+	 * Serializes the specified collection elements, if the depth is greater than 1 the states of
+	 * the elements that are entities are serialized otherwise their identifiers
+	 * 
+	 * @param elements the collection elements to serialize
+	 * @param sizeLimit the maximum number of elements to serialize, null for no limit
+	 * @param depth the number of levels of collections to serialize
+	 * @param pendingCollections the pending collections to add the uninitialized collections of
+	 *            the elements to
+	 * @return the serialized elements
+	 */
+	static List<Object> serializeElements(Collection<?> elements, Integer sizeLimit, int depth,
+	                                      PendingCollections pendingCollections) {
+		if (elements.isEmpty()) {
+			return null;
+		}
+		
+		List<Object> serializedElements = new ArrayList<Object>(elements.size());
+		for (Object element : elements) {
+			if (sizeLimit != null && serializedElements.size() == sizeLimit) {
+				break;
+			}
+			Object serializedElement = null;
+			ClassMetadata cmd = (depth > 1) ? DAOUtils.getClassMetadata(AuditLogUtil.getActualType(element)) : null;
+			if (cmd != null) {
+				serializedElement = serializeState(AuditLogUtil.getActualType(element), cmd.getIdentifier(element,
+				    EntityMode.POJO), cmd.getPropertyValues(element, EntityMode.POJO), cmd.getPropertyNames(), cmd
+				        .getPropertyTypes(), sizeLimit, depth - 1, pendingCollections);
+			} else {
+				serializedElement = AuditLogUtil.serializeObject(element);
+			}
+			if (serializedElement != null) {
+				serializedElements.add(serializedElement);
+			}
+		}
+		
+		return serializedElements;
+	}
+	
+	/**
+	 * Checks if the specified collection is not yet initialized and its elements are entities
+	 * 
+	 * @param collOrMap the collection or map to check
+	 * @param role the role of the collection
+	 * @return true if the elements can be fetched by the owner id otherwise false
+	 */
+	private static boolean isUninitializedEntityCollection(Object collOrMap, String role) {
+		if (collOrMap instanceof PersistentCollection && !((PersistentCollection) collOrMap).wasInitialized()
+		        && Collection.class.isAssignableFrom(collOrMap.getClass())) {
+			CollectionPersister cp = ((SessionFactoryImplementor) getSessionFactory()).getCollectionPersister(role);
+			return cp.getElementType().isEntityType();
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Serializes the elements of the specified collection or map, initializing it if necessary
+	 * 
+	 * @param collOrMap the collection or map to serialize
+	 * @param sizeLimit the maximum number of elements to serialize, null for no limit
+	 * @param depth the number of levels of collections to serialize
+	 * @param pendingCollections the pending collections to add the uninitialized collections of
+	 *            the elements to
+	 * @return the serialized items
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static Object serializeCollectionState(Object collOrMap, Integer sizeLimit, int depth,
+	                                               PendingCollections pendingCollections) {
+		Hibernate.initialize(collOrMap);
+		if (Collection.class.isAssignableFrom(collOrMap.getClass())) {
+			return serializeElements((Collection) collOrMap, sizeLimit, depth, pendingCollections);
+		} else if (Map.class.isAssignableFrom(collOrMap.getClass())) {
+			Map map = (Map) collOrMap;
+			if (sizeLimit != null && map.size() > sizeLimit) {
+				Map limited = new LinkedHashMap();
+				Iterator<Map.Entry> iterator = map.entrySet().iterator();
+				while (limited.size() < sizeLimit) {
+					Map.Entry entry = iterator.next();
+					limited.put(entry.getKey(), entry.getValue());
+				}
+				map = limited;
 			}
+			return AuditLogUtil.serializeMapItems(map);
 		}
 		
-		return AuditLogUtil.serializeToJson(propertyNameValueMap);
+		return null;
 	}
 	
 	static SessionFactory getSessionFactory() {
@@ -0,0 +1,115 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.api.db.hibernate.interceptor;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the uninitialized collections of entities that are found while serializing the states
+ * of deleted objects so that the elements of all the collections with the same role are fetched
+ * with a single query instead of a query per collection. The serialized values are put in the
+ * states when {@link #resolve()} is called, which has to happen before the deletes get flushed.
+ */
+final class PendingCollections {
+	
+	//Mapping between the collection roles and the owner ids mapped to their pending collections
+	private Map<String, Map<Serializable, List<PendingCollection>>> rolePendingCollectionsMap = new LinkedHashMap<String, Map<Serializable, List<PendingCollection>>>();
+	
+	/**
+	 * Adds a collection whose serialized value should be put in the specified state
+	 * 
+	 * @param role the role of the collection
+	 * @param ownerId the identifier of the collection owner
+	 * @param state the serialized state of the owner
+	 * @param propertyName the name of the collection property
+	 * @param sizeLimit the maximum number of elements to serialize, null for no limit
+	 * @param depth the number of levels of collections to serialize
+	 */
+	void add(String role, Serializable ownerId, Map<String, Object> state, String propertyName, Integer sizeLimit,
+	         int depth) {
+		Map<Serializable, List<PendingCollection>> ownerIdCollectionsMap = rolePendingCollectionsMap.get(role);
+		if (ownerIdCollectionsMap == null) {
+			ownerIdCollectionsMap = new LinkedHashMap<Serializable, List<PendingCollection>>();
+			rolePendingCollectionsMap.put(role, ownerIdCollectionsMap);
+		}
+		List<PendingCollection> collections = ownerIdCollectionsMap.get(ownerId);
+		if (collections == null) {
+			collections = new ArrayList<PendingCollection>();
+			ownerIdCollectionsMap.put(ownerId, collections);
+		}
+		collections.add(new PendingCollection(state, propertyName, sizeLimit, depth));
+	}
+	
+	/**
+	 * Fetches the elements of the pending collections with a query per role and puts their
+	 * serialized values in the states of the owners. The collections of the elements that get
+	 * serialized when the depth is greater than 1 are fetched in the next round.
+	 */
+	void resolve() {
+		while (!rolePendingCollectionsMap.isEmpty()) {
+			Map<String, Map<Serializable, List<PendingCollection>>> current = rolePendingCollectionsMap;
+			rolePendingCollectionsMap = new LinkedHashMap<String, Map<Serializable, List<PendingCollection>>>();
+			for (Map.Entry<String, Map<Serializable, List<PendingCollection>>> entry : current.entrySet()) {
+				//Only load the elements if the states of some of them are going to be serialized
+				boolean idsOnly = true;
+				for (List<PendingCollection> collections : entry.getValue().values()) {
+					for (PendingCollection collection : collections) {
+						if (collection.depth > 1) {
+							idsOnly = false;
+						}
+					}
+				}
+				
+				Map<Serializable, List<Object>> ownerIdElementsMap = InterceptorUtil.getAuditLogDao().getCollectionElements(
+				    entry.getKey(), entry.getValue().keySet(), idsOnly);
+				for (Map.Entry<Serializable, List<PendingCollection>> ownerEntry : entry.getValue().entrySet()) {
+					List<Object> elements = ownerIdElementsMap.get(ownerEntry.getKey());
+					if (elements == null) {
+						elements = Collections.emptyList();
+					}
+					for (PendingCollection collection : ownerEntry.getValue()) {
+						Object serializedValue = InterceptorUtil.serializeElements(elements, collection.sizeLimit,
+						    collection.depth, this);
+						if (serializedValue != null) {
+							collection.state.put(collection.propertyName, serializedValue);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	private static final class PendingCollection {
+		
+		private final Map<String, Object> state;
+		
+		private final String propertyName;
+		
+		private final Integer sizeLimit;
+		
+		private final int depth;
+		
+		private PendingCollection(Map<String, Object> state, String propertyName, Integer sizeLimit, int depth) {
+			this.state = state;
+			this.propertyName = propertyName;
+			this.sizeLimit = sizeLimit;
+			this.depth = depth;
+		}
+	}
+}
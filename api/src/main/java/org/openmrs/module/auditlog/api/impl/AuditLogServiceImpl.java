@@ -15,21 +15,35 @@ package org.openmrs.module.auditlog.api.impl;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
+import org.openmrs.User;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.auditlog.AuditLog;
 import org.openmrs.module.auditlog.AuditLog.Action;
 import org.openmrs.module.auditlog.AuditLogHelper;
+import org.openmrs.module.auditlog.AuditLogSummary;
+import org.openmrs.module.auditlog.api.AuditLogCallback;
 import org.openmrs.module.auditlog.api.AuditLogService;
 import org.openmrs.module.auditlog.api.db.AuditLogDAO;
 import org.openmrs.module.auditlog.api.db.DAOUtils;
 import org.openmrs.module.auditlog.strategy.AuditStrategy;
 import org.openmrs.module.auditlog.util.AuditLogConstants;
+import org.openmrs.module.auditlog.util.AuditLogUtil;
+import org.openmrs.module.auditlog.util.ContinuationToken;
+import org.openmrs.module.auditlog.util.NetChanges;
+import org.openmrs.module.auditlog.util.ObjectStateCache;
+import org.openmrs.module.auditlog.util.ValueTokenizer;
 import org.openmrs.util.OpenmrsUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.annotation.Transactional;
@@ -70,16 +84,107 @@ public class AuditLogServiceImpl extends BaseOpenmrsService implements AuditLogS
 	 *      java.util.List, java.util.Date, java.util.Date, boolean, java.lang.Integer,
 	 *      java.lang.Integer)
 	 */
-	@SuppressWarnings({ "rawtypes" })
 	@Override
 	@Transactional(readOnly = true)
 	public List<AuditLog> getAuditLogs(List<Class<?>> clazzes, List<Action> actions, Date startDate, Date endDate,
 	                                   boolean excludeChildAuditLogs, Integer start, Integer length) {
+		validateStartDate(startDate);
+		
+		return dao.getAuditLogs(null, getClassesToMatch(clazzes), actions, startDate, endDate, excludeChildAuditLogs,
+		    start, length);
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.AuditLogService#getAuditLogsAfter(java.util.List,
+	 *      java.util.List, org.openmrs.User, java.util.Date, java.util.Date, boolean, String,
+	 *      java.lang.Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<AuditLog> getAuditLogsAfter(List<Class<?>> clazzes, List<Action> actions, User user, Date startDate,
+	                                        Date endDate, boolean excludeChildAuditLogs, String continuationToken,
+	                                        Integer length) {
+		validateStartDate(startDate);
+		
+		Date lastDateCreated = null;
+		Integer lastAuditLogId = null;
+		if (continuationToken != null) {
+			ContinuationToken token = ContinuationToken.parse(continuationToken);
+			lastDateCreated = token.getDateCreated();
+			lastAuditLogId = token.getAuditLogId();
+		}
+		
+		return dao.getAuditLogsAfter(null, getClassesToMatch(clazzes), actions, user, startDate, endDate,
+		    excludeChildAuditLogs, lastDateCreated, lastAuditLogId, length);
+	}
+	
+	/**
+	 * @see AuditLogService#getAuditLogSummariesAfter(java.util.List, java.util.List,
+	 *      org.openmrs.User, java.util.Date, java.util.Date, boolean, String, Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<AuditLogSummary> getAuditLogSummariesAfter(List<Class<?>> clazzes, List<Action> actions, User user,
+	                                                       Date startDate, Date endDate, boolean excludeChildAuditLogs,
+	                                                       String continuationToken, Integer length) {
+		validateStartDate(startDate);
+		
+		Date lastDateCreated = null;
+		Integer lastAuditLogId = null;
+		if (continuationToken != null) {
+			ContinuationToken token = ContinuationToken.parse(continuationToken);
+			lastDateCreated = token.getDateCreated();
+			lastAuditLogId = token.getAuditLogId();
+		}
+		
+		return dao.getAuditLogSummariesAfter(getClassesToMatch(clazzes), actions, user, startDate, endDate,
+		    excludeChildAuditLogs, lastDateCreated, lastAuditLogId, length);
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.AuditLogService#countAuditLogs(java.util.List,
+	 *      java.util.List, java.util.Date, java.util.Date, boolean)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Long countAuditLogs(List<Class<?>> clazzes, List<Action> actions, Date startDate, Date endDate,
+	                           boolean excludeChildAuditLogs) {
+		validateStartDate(startDate);
+		
+		return dao.countAuditLogs(null, getClassesToMatch(clazzes), actions, startDate, endDate, excludeChildAuditLogs);
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.AuditLogService#getEstimatedAuditLogCount()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Long getEstimatedAuditLogCount() {
+		return dao.getEstimatedAuditLogCount();
+	}
+	
+	/**
+	 * @see org.openmrs.module.auditlog.api.AuditLogService#streamAuditLogs(java.util.List,
+	 *      java.util.List, java.util.Date, java.util.Date, boolean, AuditLogCallback)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public void streamAuditLogs(List<Class<?>> clazzes, List<Action> actions, Date startDate, Date endDate,
+	                            boolean excludeChildAuditLogs, AuditLogCallback callback) {
+		validateStartDate(startDate);
+		
+		dao.streamAuditLogs(null, getClassesToMatch(clazzes), actions, startDate, endDate, excludeChildAuditLogs, callback);
+	}
+	
+	private void validateStartDate(Date startDate) {
 		if (OpenmrsUtil.compareWithNullAsEarliest(startDate, new Date()) > 0) {
 			throw new APIException(Context.getMessageSourceService().getMessage(
 			    AuditLogConstants.MODULE_ID + ".exception.startDateInFuture"));
 		}
-		
+	}
+	
+	@SuppressWarnings({ "rawtypes" })
+	private List<Class<?>> getClassesToMatch(List<Class<?>> clazzes) {
 		List<Class<?>> classesToMatch = null;
 		if (clazzes != null) {
 			classesToMatch = new ArrayList<Class<?>>();
@@ -90,8 +195,264 @@ public class AuditLogServiceImpl extends BaseOpenmrsService implements AuditLogS
 				}
 			}
 		}
+		return classesToMatch;
+	}
+	
+	/**
+	 * @see AuditLogService#getChildAuditLogCounts(java.util.Collection)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<Integer, Integer> getChildAuditLogCounts(Collection<AuditLog> auditLogs) {
+		return dao.getChildAuditLogCounts(auditLogs);
+	}
+	
+	/**
+	 * @see AuditLogService#getChildAuditLogs(AuditLog, Integer, Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<AuditLog> getChildAuditLogs(AuditLog parentAuditLog, Integer start, Integer length) {
+		return dao.getChildAuditLogs(parentAuditLog, start, length);
+	}
+	
+	/**
+	 * @see AuditLogService#getAuditLogsByChangedProperties(List, List, Date, Date, Integer, Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<AuditLog> getAuditLogsByChangedProperties(List<Class<?>> clazzes, List<String> propertyNames,
+	                                                      Date startDate, Date endDate, Integer start, Integer length) {
+		return dao.getAuditLogsByChangedProperties(clazzes, propertyNames, startDate, endDate, start, length);
+	}
+	
+	/**
+	 * @see AuditLogService#searchChangedValues(String, List, Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<String> searchChangedValues(String text, List<String> propertyNames, Integer maxResults) {
+		return dao.searchChangedValues(ValueTokenizer.tokenize(text), propertyNames, maxResults);
+	}
+	
+	/**
+	 * @see AuditLogService#rebuildChangedValueIndex(Integer, Integer)
+	 */
+	@Override
+	public int rebuildChangedValueIndex(Integer fromAuditLogId, Integer toAuditLogId) {
+		dao.deleteValueTokens(fromAuditLogId, toAuditLogId);
+		List<AuditLog> auditLogs = dao.getAuditLogsByIdRange(fromAuditLogId, toAuditLogId,
+		    Arrays.asList(Action.UPDATED, Action.DELETED));
+		Map<Integer, Map<String, Set<String>>> auditLogIdTokens = new LinkedHashMap<Integer, Map<String, Set<String>>>();
+		for (AuditLog auditLog : auditLogs) {
+			Map<String, ?> values;
+			if (auditLog.getAction() == Action.UPDATED) {
+				values = AuditLogUtil.getChangesOfUpdatedItem(auditLog);
+			} else {
+				values = AuditLogUtil.getLastStateOfDeletedItem(auditLog);
+			}
+			Map<String, Set<String>> propertyTokens = ValueTokenizer.tokenizeProperties(values);
+			if (!propertyTokens.isEmpty()) {
+				auditLogIdTokens.put(auditLog.getAuditLogId(), propertyTokens);
+			}
+			//The logs are read once, this keeps the session small when many chunks are indexed in it
+			Context.evictFromSession(auditLog);
+		}
+		//The words of the logs in the range were just removed
+		dao.saveValueTokens(auditLogIdTokens, false);
 		
-		return dao.getAuditLogs(null, classesToMatch, actions, startDate, endDate, excludeChildAuditLogs, start, length);
+		return auditLogIdTokens.size();
+	}
+	
+	/**
+	 * @see AuditLogService#saveChangedValueIndex(java.util.Map)
+	 */
+	@Override
+	public void saveChangedValueIndex(Map<Integer, Map<String, Set<String>>> auditLogIdTokens) {
+		dao.saveValueTokens(auditLogIdTokens, true);
+	}
+	
+	/**
+	 * @see AuditLogService#getMaxAuditLogId()
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Integer getMaxAuditLogId() {
+		return dao.getMaxAuditLogId();
+	}
+	
+	/**
+	 * @see AuditLogService#getStateAt(Class, java.io.Serializable, java.util.Date)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<String, Object> getStateAt(Class<?> clazz, Serializable id, Date date) {
+		if (clazz == null || id == null || date == null) {
+			throw new APIException("class, id and date are required when getting the state of an object");
+		}
+		
+		List<Class<?>> clazzes = getTypeAndSubclasses(clazz);
+		List<AuditLog> lastLogs = dao.getAuditLogs(id, clazzes, null, null, date, false, 0, 1);
+		AuditLog lastLog = lastLogs.isEmpty() ? null : lastLogs.get(0);
+		if (lastLog != null && lastLog.getAction() == Action.DELETED) {
+			return null;
+		}
+		
+		//The state at the date is the state after the last log created at or before it
+		Integer lastAuditLogId = (lastLog != null) ? lastLog.getAuditLogId() : null;
+		ObjectStateCache cache = ObjectStateCache.getInstance();
+		Map<String, Object> state = cache.get(clazz, id, lastAuditLogId);
+		if (state == null) {
+			state = reconstructState(id, clazzes, date, lastLog);
+			if (state == null) {
+				return null;
+			}
+			cache.put(clazz, id, lastAuditLogId, state);
+		}
+		
+		return new HashMap<String, Object>(state);
+	}
+	
+	/**
+	 * @see AuditLogService#getNetChanges(Class, java.io.Serializable, java.util.Date,
+	 *      java.util.Date)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public NetChanges getNetChanges(Class<?> clazz, Serializable id, Date startDate, Date endDate) {
+		if (clazz == null || id == null) {
+			throw new APIException("class and id are required when getting the net changes of an object");
+		}
+		validateStartDate(startDate);
+		
+		final NetChanges netChanges = new NetChanges(clazz, id);
+		//The logs are streamed starting with the latest which is the order NetChanges expects
+		dao.streamAuditLogs(id, getTypeAndSubclasses(clazz), null, startDate, endDate, false, new AuditLogCallback() {
+			
+			@Override
+			public void handle(AuditLog auditLog) throws Exception {
+				netChanges.add(auditLog);
+			}
+		});
+		
+		return netChanges;
+	}
+	
+	/**
+	 * @see AuditLogService#getLatestAuditLog(Class, java.io.Serializable)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public AuditLog getLatestAuditLog(Class<?> clazz, Serializable id) {
+		if (clazz == null || id == null) {
+			throw new APIException("class and id are required when getting the latest AuditLog of an object");
+		}
+		
+		return dao.getLatestAuditLog(id, getTypeAndSubclasses(clazz));
+	}
+	
+	/**
+	 * @see AuditLogService#getRecentlyDeletedAuditLogs(java.util.List, java.util.Date, Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<AuditLog> getRecentlyDeletedAuditLogs(List<Class<?>> clazzes, Date startDate, Integer maxResults) {
+		validateStartDate(startDate);
+		
+		return dao.getLatestDeletedAuditLogs(getClassesToMatch(clazzes), startDate, maxResults);
+	}
+	
+	/**
+	 * Builds the state of an object at the specified date from the closest snapshot
+	 * 
+	 * @param id the id of the object
+	 * @param clazzes the type and subclasses of the object
+	 * @param date the date at which to get the state
+	 * @param lastLog the last audit log for the object created at or before the date
+	 * @return the state or null if the object didn't exist or there is no snapshot
+	 */
+	private Map<String, Object> reconstructState(Serializable id, List<Class<?>> clazzes, Date date, AuditLog lastLog) {
+		if (lastLog != null) {
+			AuditLog snapshotLog = dao.getSnapshotAuditLog(id, clazzes, date, true);
+			if (snapshotLog != null) {
+				Map<String, Object> state = dao.getSnapshotState(snapshotLog);
+				if (state == null) {
+					return null;
+				}
+				//Replay the updates from the oldest, the snapshot log is included since coalescing
+				//can merge later changes into it after the snapshot was taken
+				List<AuditLog> logs = dao.getAuditLogs(id, clazzes, null, snapshotLog.getDateCreated(), date, false,
+				    null, null);
+				for (int i = logs.size() - 1; i >= 0; i--) {
+					AuditLog auditLog = logs.get(i);
+					if (auditLog.getAction() == Action.UPDATED && !isBefore(auditLog, snapshotLog)) {
+						applyChanges(state, auditLog, 0);
+					}
+				}
+				return state;
+			}
+		}
+		
+		AuditLog snapshotLog = dao.getSnapshotAuditLog(id, clazzes, date, false);
+		if (snapshotLog == null) {
+			return null;
+		}
+		Map<String, Object> state = dao.getSnapshotState(snapshotLog);
+		if (state == null) {
+			return null;
+		}
+		//Undo the changes made after the date starting from the latest
+		List<AuditLog> logs = dao.getAuditLogs(id, clazzes, null, date, snapshotLog.getDateCreated(), false, null, null);
+		for (AuditLog auditLog : logs) {
+			if (!auditLog.getDateCreated().after(date) || isBefore(snapshotLog, auditLog)) {
+				continue;
+			}
+			if (auditLog.getAction() == Action.CREATED) {
+				return null;
+			}
+			if (auditLog.getAction() == Action.UPDATED) {
+				applyChanges(state, auditLog, 1);
+			}
+		}
+		
+		return state;
+	}
+	
+	/**
+	 * Sets the properties changed by the specified audit log to their new or previous values
+	 * 
+	 * @param state the state to update
+	 * @param auditLog the audit log of an updated object
+	 * @param valueIndex 0 to set the new values and 1 to set the previous values
+	 */
+	@SuppressWarnings("rawtypes")
+	private void applyChanges(Map<String, Object> state, AuditLog auditLog, int valueIndex) {
+		for (Map.Entry<String, List> entry : AuditLogUtil.getChangesOfUpdatedItem(auditLog).entrySet()) {
+			Object value = (entry.getValue() != null && entry.getValue().size() > valueIndex) ? entry.getValue().get(
+			    valueIndex) : null;
+			if (value != null) {
+				state.put(entry.getKey(), value);
+			} else {
+				state.remove(entry.getKey());
+			}
+		}
+	}
+	
+	/**
+	 * @return true if the first audit log comes before the second one in the order of creation
+	 */
+	private boolean isBefore(AuditLog first, AuditLog second) {
+		int result = first.getDateCreated().compareTo(second.getDateCreated());
+		return result < 0 || (result == 0 && first.getAuditLogId() < second.getAuditLogId());
+	}
+	
+	private List<Class<?>> getTypeAndSubclasses(Class<?> clazz) {
+		List<Class<?>> clazzes = new ArrayList<Class<?>>();
+		clazzes.add(clazz);
+		for (Class<?> subclass : DAOUtils.getPersistentConcreteSubclasses(clazz)) {
+			clazzes.add(subclass);
+		}
+		return clazzes;
 	}
 	
 	/**
@@ -103,6 +464,24 @@ public class AuditLogServiceImpl extends BaseOpenmrsService implements AuditLogS
 		return dao.getObjectById(clazz, id);
 	}
 	
+	/**
+	 * @see AuditLogService#getObjectsByIds(Class, java.util.Collection)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public <T> Map<String, T> getObjectsByIds(Class<T> clazz, Collection<String> ids) {
+		return dao.getObjectsByIds(clazz, ids);
+	}
+	
+	/**
+	 * @see AuditLogService#getExistingIds(Class, java.util.Collection)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Set<String> getExistingIds(Class<?> clazz, Collection<String> ids) {
+		return dao.getExistingIds(clazz, ids);
+	}
+	
 	/**
 	 * @see org.openmrs.module.auditlog.api.AuditLogService#getObjectByUuid(java.lang.Class,
 	 *      java.lang.String)
@@ -139,13 +518,8 @@ public class AuditLogServiceImpl extends BaseOpenmrsService implements AuditLogS
 			throw new APIException("class and uuid are required when fetching AuditLogs for an object");
 		}
 		
-		List<Class<?>> clazzes = new ArrayList<Class<?>>();
-		clazzes.add(clazz);
-		for (Class subclass : DAOUtils.getPersistentConcreteSubclasses(clazz)) {
-			clazzes.add(subclass);
-		}
-		
-		return dao.getAuditLogs(id, clazzes, actions, startDate, endDate, excludeChildAuditLogs, null, null);
+		return dao.getAuditLogs(id, getTypeAndSubclasses(clazz), actions, startDate, endDate, excludeChildAuditLogs,
+		    null, null);
 	}
 	
 	/**
@@ -158,4 +532,32 @@ public class AuditLogServiceImpl extends BaseOpenmrsService implements AuditLogS
 	                                   boolean excludeChildAuditLogs) {
 		return getAuditLogs(dao.getId(object), object.getClass(), actions, startDate, endDate, excludeChildAuditLogs);
 	}
+	
+	/**
+	 * @see AuditLogService#getAuditLogsForObjects(Class, java.util.Collection, java.util.List,
+	 *      java.util.Date, java.util.Date, boolean, boolean)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Map<String, List<AuditLog>> getAuditLogsForObjects(Class<?> clazz, Collection<String> ids,
+	                                                          List<Action> actions, Date startDate, Date endDate,
+	                                                          boolean excludeChildAuditLogs, boolean latestOnly) {
+		if (clazz == null) {
+			throw new APIException("class is required when fetching AuditLogs for objects");
+		}
+		
+		Map<String, List<AuditLog>> idAuditLogsMap = new LinkedHashMap<String, List<AuditLog>>();
+		for (AuditLog auditLog : dao.getAuditLogsForObjects(getTypeAndSubclasses(clazz), ids, actions, startDate,
+		    endDate, excludeChildAuditLogs, latestOnly)) {
+			String id = auditLog.getIdentifier().toString();
+			List<AuditLog> auditLogs = idAuditLogsMap.get(id);
+			if (auditLogs == null) {
+				auditLogs = new ArrayList<AuditLog>();
+				idAuditLogsMap.put(id, auditLogs);
+			}
+			auditLogs.add(auditLog);
+		}
+		
+		return idAuditLogsMap;
+	}
 }
@@ -0,0 +1,134 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.scheduler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.auditlog.api.AuditLogService;
+import org.openmrs.module.auditlog.util.AuditLogConstants;
+import org.openmrs.scheduler.tasks.AbstractTask;
+
+/**
+ * Re-indexes the words in the changed values of all the audit logs, this is needed for the logs
+ * saved before the AuditLogConstants#GP_INDEX_CHANGED_VALUES global property was set to true. The
+ * audit log ids are split into chunks that are indexed by the scheduler thread along with a small
+ * pool of threads, each chunk is indexed in its own transaction.
+ */
+public class RebuildChangedValueIndexTask extends AbstractTask {
+	
+	private static final Log log = LogFactory.getLog(RebuildChangedValueIndexTask.class);
+	
+	private static final int CHUNK_SIZE = 1000;
+	
+	private static final int THREAD_COUNT = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	
+	/**
+	 * @see org.openmrs.scheduler.tasks.AbstractTask#execute()
+	 */
+	@Override
+	public void execute() {
+		if (isExecuting()) {
+			return;
+		}
+		startExecuting();
+		try {
+			Integer maxAuditLogId = getMaxAuditLogId();
+			if (maxAuditLogId == null) {
+				return;
+			}
+			
+			final int lastAuditLogId = maxAuditLogId;
+			final AtomicInteger nextChunkStart = new AtomicInteger(1);
+			final AtomicInteger indexedCount = new AtomicInteger();
+			ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT - 1);
+			for (int i = 0; i < THREAD_COUNT - 1; i++) {
+				executor.execute(new Runnable() {
+					
+					@Override
+					public void run() {
+						//Unlike the scheduler thread, the pool threads have no session of their own
+						Context.openSession();
+						try {
+							indexChunks(nextChunkStart, lastAuditLogId, indexedCount);
+						}
+						finally {
+							Context.closeSession();
+						}
+					}
+				});
+			}
+			indexChunks(nextChunkStart, lastAuditLogId, indexedCount);
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			
+			if (log.isInfoEnabled()) {
+				log.info("Indexed the changed values of " + indexedCount.get() + " audit logs");
+			}
+		}
+		catch (InterruptedException e) {
+			log.warn("Interrupted while indexing the changed values of the audit logs");
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			stopExecuting();
+		}
+	}
+	
+	/**
+	 * Indexes the next chunk until all the chunks up to the specified audit log id are taken, this
+	 * is run by each of the threads in the session of the calling thread
+	 */
+	private static void indexChunks(AtomicInteger nextChunkStart, int lastAuditLogId, AtomicInteger indexedCount) {
+		try {
+			addProxyPrivileges();
+			int fromAuditLogId;
+			while ((fromAuditLogId = nextChunkStart.getAndAdd(CHUNK_SIZE)) <= lastAuditLogId) {
+				indexedCount.addAndGet(Context.getService(AuditLogService.class).rebuildChangedValueIndex(fromAuditLogId,
+				    fromAuditLogId + CHUNK_SIZE - 1));
+			}
+		}
+		catch (Exception e) {
+			log.error("An error occurred while indexing the changed values of the audit logs", e);
+		}
+		finally {
+			removeProxyPrivileges();
+		}
+	}
+	
+	private Integer getMaxAuditLogId() {
+		try {
+			addProxyPrivileges();
+			return Context.getService(AuditLogService.class).getMaxAuditLogId();
+		}
+		finally {
+			removeProxyPrivileges();
+		}
+	}
+	
+	private static void addProxyPrivileges() {
+		Context.addProxyPrivilege(AuditLogConstants.PRIV_GET_AUDITLOGS);
+		Context.addProxyPrivilege(AuditLogConstants.PRIV_MANAGE_AUDITLOG);
+	}
+	
+	private static void removeProxyPrivileges() {
+		Context.removeProxyPrivilege(AuditLogConstants.PRIV_GET_AUDITLOGS);
+		Context.removeProxyPrivilege(AuditLogConstants.PRIV_MANAGE_AUDITLOG);
+	}
+}
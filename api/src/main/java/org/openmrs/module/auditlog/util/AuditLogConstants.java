@@ -37,6 +37,27 @@ public final class AuditLogConstants {
 	//Specifies whether the last states of deleted items should be stored on the auditlog
 	public static final String GP_STORE_LAST_STATE_OF_DELETED_ITEMS = MODULE_ID + ".storeLastStateOfDeletedItems";
 	
+	//Specifies the maximum number of collection elements to include in the last states of deleted items
+	public static final String GP_DELETED_ITEMS_COLLECTION_SIZE_LIMIT = MODULE_ID + ".deletedItemsCollectionSizeLimit";
+	
+	//Specifies the number of levels of collections to include in the last states of deleted items
+	public static final String GP_DELETED_ITEMS_SERIALIZATION_DEPTH = MODULE_ID + ".deletedItemsSerializationDepth";
+	
+	//Specifies the number of audit logs in a transaction above which their data is serialized in parallel
+	public static final String GP_PARALLEL_SERIALIZATION_THRESHOLD = MODULE_ID + ".parallelSerializationThreshold";
+	
+	//Specifies the types for which consecutive updates by the same user within a window get merged
+	public static final String GP_COALESCING_WINDOWS = MODULE_ID + ".coalescingWindows";
+	
+	//Specifies the length above which text values of updated properties are stored as digests
+	public static final String GP_LARGE_VALUE_THRESHOLD = MODULE_ID + ".largeValueThreshold";
+	
+	//Specifies whether the words in the changed values should be indexed for searching
+	public static final String GP_INDEX_CHANGED_VALUES = MODULE_ID + ".indexChangedValues";
+	
+	//Specifies the number of updates to an object after which a snapshot of its full state is stored
+	public static final String GP_SNAPSHOT_INTERVAL = MODULE_ID + ".snapshotInterval";
+	
 	/* MODULE PRIVILEGES */
 	public static final String PRIV_GET_AUDITLOGS = "Get Audit Logs";
 	
@@ -0,0 +1,262 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+
+/**
+ * Caches the rows of the auditlog_type table in both directions along with the display name of
+ * each type, entries are added as new types get audited and are never changed so the dictionary is
+ * only reloaded from the database when a lookup misses. A type added by a transaction is only
+ * visible to the thread running it until the transaction commits, and lookups of types that have
+ * never been audited reload the dictionary at most once per {@link #MIN_RELOAD_INTERVAL} millis.
+ */
+public final class AuditLogTypeDictionary {
+	
+	private static final Log log = LogFactory.getLog(AuditLogTypeDictionary.class);
+	
+	private static final AuditLogTypeDictionary INSTANCE = new AuditLogTypeDictionary();
+	
+	//The minimum time in millis between the reloads triggered by lookups of types that aren't audited
+	public static final long MIN_RELOAD_INTERVAL = 60000;
+	
+	private final Map<Integer, Class<?>> idTypeMap = new ConcurrentHashMap<Integer, Class<?>>();
+	
+	private final Map<Class<?>, Integer> typeIdMap = new ConcurrentHashMap<Class<?>, Integer>();
+	
+	private final Map<Class<?>, String> typeDisplayNameMap = new ConcurrentHashMap<Class<?>, String>();
+	
+	//The types whose rows were inserted by the transaction of the current thread and not yet committed
+	private final ThreadLocal<Map<Class<?>, Integer>> pendingTypeIdMap = new ThreadLocal<Map<Class<?>, Integer>>();
+	
+	//The ids of the rows whose classes can't be loaded, they aren't looked up again until the next load
+	private final Set<Integer> unloadableIds = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+	
+	private volatile long lastLoadTime;
+	
+	private AuditLogTypeDictionary() {
+	}
+	
+	/**
+	 * @return the shared instance
+	 */
+	public static AuditLogTypeDictionary getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * Gets the id of the specified type
+	 * 
+	 * @param type the type to look up
+	 * @return the id or null if the type isn't in the dictionary
+	 * @should return the id of the type
+	 * @should return null for a type that is not in the dictionary
+	 */
+	public Integer getId(Class<?> type) {
+		Integer id = typeIdMap.get(type);
+		if (id == null && pendingTypeIdMap.get() != null) {
+			id = pendingTypeIdMap.get().get(type);
+		}
+		return id;
+	}
+	
+	/**
+	 * Gets the type with the specified id
+	 * 
+	 * @param id the id to look up
+	 * @return the type or null if there is no type with the id in the dictionary
+	 * @should return the type with the id
+	 */
+	public Class<?> getType(Integer id) {
+		Class<?> type = idTypeMap.get(id);
+		if (type == null && pendingTypeIdMap.get() != null) {
+			for (Map.Entry<Class<?>, Integer> entry : pendingTypeIdMap.get().entrySet()) {
+				if (entry.getValue().equals(id)) {
+					return entry.getKey();
+				}
+			}
+		}
+		return type;
+	}
+	
+	/**
+	 * Checks if the row with the specified id was skipped by the last load because its class
+	 * couldn't be loaded
+	 * 
+	 * @param id the id to check
+	 * @return true if the class of the row couldn't be loaded otherwise false
+	 */
+	public boolean isUnloadable(Integer id) {
+		return unloadableIds.contains(id);
+	}
+	
+	/**
+	 * Adds the specified type to the dictionary
+	 * 
+	 * @param id the id of the type
+	 * @param type the type
+	 */
+	public synchronized void put(Integer id, Class<?> type) {
+		idTypeMap.put(id, type);
+		typeIdMap.put(type, id);
+	}
+	
+	/**
+	 * Adds the specified type for the current thread only, this is used for a type whose row was
+	 * inserted by the current transaction, it is added to the dictionary by {@link #publishPending()}
+	 * once the transaction commits
+	 * 
+	 * @param id the id of the type
+	 * @param type the type
+	 * @should make the type visible to the current thread only
+	 */
+	public void putPending(Integer id, Class<?> type) {
+		Map<Class<?>, Integer> pendingTypeIds = pendingTypeIdMap.get();
+		if (pendingTypeIds == null) {
+			pendingTypeIds = new HashMap<Class<?>, Integer>();
+			pendingTypeIdMap.set(pendingTypeIds);
+		}
+		pendingTypeIds.put(type, id);
+	}
+	
+	/**
+	 * Adds the pending types of the current thread to the dictionary
+	 * 
+	 * @should add the pending types to the dictionary
+	 */
+	public synchronized void publishPending() {
+		Map<Class<?>, Integer> pendingTypeIds = pendingTypeIdMap.get();
+		pendingTypeIdMap.remove();
+		if (pendingTypeIds != null) {
+			for (Map.Entry<Class<?>, Integer> entry : pendingTypeIds.entrySet()) {
+				put(entry.getValue(), entry.getKey());
+			}
+		}
+	}
+	
+	/**
+	 * Discards the pending types of the current thread, this is used when the transaction that
+	 * inserted their rows doesn't commit
+	 */
+	public void clearPending() {
+		pendingTypeIdMap.remove();
+	}
+	
+	/**
+	 * Removes the specified type from the dictionary, this is used to discard a type whose row was
+	 * rolled back
+	 * 
+	 * @param type the type to remove
+	 * @should remove the type
+	 */
+	public synchronized void remove(Class<?> type) {
+		Integer id = typeIdMap.remove(type);
+		if (id != null) {
+			idTypeMap.remove(id);
+		}
+	}
+	
+	/**
+	 * Reads all the rows of the auditlog_type table using the specified connection and adds them
+	 * to the dictionary, rows for classes that can't be loaded are skipped
+	 * 
+	 * @param connection the connection to use
+	 * @throws SQLException
+	 * @should load all the types from the database
+	 */
+	public synchronized void load(Connection connection) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			unloadableIds.clear();
+			ResultSet rs = statement.executeQuery("select type_id, classname from auditlog_type");
+			while (rs.next()) {
+				String classname = rs.getString(2);
+				try {
+					put(rs.getInt(1), Context.loadClass(classname));
+				}
+				catch (ClassNotFoundException e) {
+					unloadableIds.add(rs.getInt(1));
+					log.warn("Skipping audit log type " + classname + " since the class can't be loaded");
+				}
+			}
+			rs.close();
+			lastLoadTime = System.currentTimeMillis();
+		}
+		finally {
+			statement.close();
+		}
+	}
+	
+	/**
+	 * Calls {@link #load(Connection)} unless the dictionary was loaded less than
+	 * {@link #MIN_RELOAD_INTERVAL} millis ago, this is used on lookup misses which are repeated for
+	 * every query on a type that has never been audited
+	 * 
+	 * @param connection the connection to use
+	 * @throws SQLException
+	 * @should not reload the dictionary within the reload interval
+	 */
+	public void loadIfStale(Connection connection) throws SQLException {
+		if (System.currentTimeMillis() - lastLoadTime < MIN_RELOAD_INTERVAL) {
+			return;
+		}
+		synchronized (this) {
+			//Another thread may have loaded it while this one was waiting
+			if (System.currentTimeMillis() - lastLoadTime >= MIN_RELOAD_INTERVAL) {
+				load(connection);
+			}
+		}
+	}
+	
+	/**
+	 * Removes all the entries
+	 */
+	public synchronized void clear() {
+		idTypeMap.clear();
+		typeIdMap.clear();
+		unloadableIds.clear();
+		pendingTypeIdMap.remove();
+		lastLoadTime = 0;
+	}
+	
+	/**
+	 * Gets the display name of the specified type i.e. its simple name split at the camel case
+	 * boundaries e.g. 'Concept Name' for ConceptName, the name is computed once per type
+	 * 
+	 * @param type the type
+	 * @return the display name
+	 * @should split the simple name at the camel case boundaries
+	 */
+	public String getDisplayName(Class<?> type) {
+		String displayName = typeDisplayNameMap.get(type);
+		if (displayName == null) {
+			displayName = StringUtils.join(StringUtils.splitByCharacterTypeCamelCase(type.getSimpleName()), " ");
+			typeDisplayNameMap.put(type, displayName);
+		}
+		return displayName;
+	}
+}
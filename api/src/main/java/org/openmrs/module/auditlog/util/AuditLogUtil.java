@@ -36,6 +36,7 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -148,7 +149,7 @@ public class AuditLogUtil {
 			try {
 				String serializedStr = getAsString(auditLog.getSerializedData());
 				if (StringUtils.isNotBlank(serializedStr)) {
-					changes = new ObjectMapper().readValue(serializedStr, Map.class);
+					changes = getMapper().readValue(serializedStr, Map.class);
 				}
 			}
 			catch (Exception e) {
@@ -174,7 +175,7 @@ public class AuditLogUtil {
 			try {
 				String serializedStr = getAsString(auditLog.getSerializedData());
 				if (StringUtils.isNotBlank(serializedStr)) {
-					changes = new ObjectMapper().readValue(serializedStr, Map.class);
+					changes = getMapper().readValue(serializedStr, Map.class);
 				}
 			}
 			catch (Exception e) {
@@ -280,6 +281,52 @@ public class AuditLogUtil {
 		return sb.toString();
 	}
 	
+	/**
+	 * Gets the numeric form of the specified object identifier, an identifier is numeric if its
+	 * String form is the canonical String form of a long value.
+	 * 
+	 * @param identifier the identifier to convert
+	 * @return the numeric form or null if the identifier is not numeric
+	 * @should return the numeric form of a numeric identifier
+	 * @should return null for a non numeric identifier
+	 * @should return null for a numeric identifier with leading zeros
+	 */
+	public static Long getNumericIdentifier(Serializable identifier) {
+		if (identifier == null) {
+			return null;
+		}
+		String str = identifier.toString().trim();
+		if (!NumberUtils.isDigits(str)) {
+			return null;
+		}
+		try {
+			Long numericIdentifier = Long.valueOf(str);
+			//Identifiers like 007 would otherwise be matched with 7
+			return numericIdentifier.toString().equals(str) ? numericIdentifier : null;
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Gets the key to use when caching values for the object with the specified type and id, the
+	 * type in the key is the root persistent type so that a type and its persistent subclasses
+	 * share the same key for the same id
+	 * 
+	 * @param type the type of the object
+	 * @param id the id of the object
+	 * @return the key
+	 * @should return the same key for a type and its persistent subclasses
+	 */
+	public static String getObjectKey(Class<?> type, Object id) {
+		Class<?> rootType = type;
+		while (rootType.getSuperclass() != null && isPersistent(rootType.getSuperclass())) {
+			rootType = rootType.getSuperclass();
+		}
+		return rootType.getName() + "#" + id.toString().trim();
+	}
+	
 	/**
 	 * Serializes the specified object to a String, typically it returns the object's uuid if it is
 	 * an OpenmrsObject, if not it returns the primary key value if it is a persistent object
@@ -0,0 +1,101 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import java.util.Date;
+
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.api.APIException;
+import org.openmrs.module.auditlog.AuditLog;
+import org.openmrs.module.auditlog.AuditLogSummary;
+
+/**
+ * Marks the position of an audit log in the list of audit logs sorted by date of creation and id
+ * starting with the latest, it is used to fetch the page of audit logs that comes after it. Callers
+ * should treat the String form of a token as opaque.
+ */
+public final class ContinuationToken {
+	
+	private static final String SEPARATOR = ":";
+	
+	private final Date dateCreated;
+	
+	private final Integer auditLogId;
+	
+	private ContinuationToken(Date dateCreated, Integer auditLogId) {
+		this.dateCreated = dateCreated;
+		this.auditLogId = auditLogId;
+	}
+	
+	/**
+	 * Creates the token for the page that comes after the specified audit log, typically this is
+	 * the last audit log in the current page
+	 * 
+	 * @param auditLog the saved audit log
+	 * @return the token
+	 */
+	public static String create(AuditLog auditLog) {
+		if (auditLog == null || auditLog.getAuditLogId() == null || auditLog.getDateCreated() == null) {
+			throw new APIException("A continuation token can only be created for a saved audit log");
+		}
+		return auditLog.getDateCreated().getTime() + SEPARATOR + auditLog.getAuditLogId();
+	}
+	
+	/**
+	 * Creates the token for the page that comes after the audit log of the specified summary
+	 * 
+	 * @param summary the summary of the audit log
+	 * @return the token
+	 * @see #create(AuditLog)
+	 */
+	public static String create(AuditLogSummary summary) {
+		if (summary == null || summary.getAuditLogId() == null || summary.getDateCreated() == null) {
+			throw new APIException("A continuation token can only be created for a saved audit log");
+		}
+		return summary.getDateCreated().getTime() + SEPARATOR + summary.getAuditLogId();
+	}
+	
+	/**
+	 * Parses the specified token
+	 * 
+	 * @param token the token to parse
+	 * @return the parsed token
+	 */
+	public static ContinuationToken parse(String token) {
+		String[] parts = StringUtils.split(token, SEPARATOR);
+		if (parts == null || parts.length != 2) {
+			throw new APIException("Invalid continuation token: " + token);
+		}
+		try {
+			return new ContinuationToken(new Date(Long.parseLong(parts[0])), Integer.valueOf(parts[1]));
+		}
+		catch (NumberFormatException e) {
+			throw new APIException("Invalid continuation token: " + token, e);
+		}
+	}
+	
+	/**
+	 * @return the dateCreated of the audit log the token was created from
+	 */
+	public Date getDateCreated() {
+		return dateCreated;
+	}
+	
+	/**
+	 * @return the id of the audit log the token was created from
+	 */
+	public Integer getAuditLogId() {
+		return auditLogId;
+	}
+}
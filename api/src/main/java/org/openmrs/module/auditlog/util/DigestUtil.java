@@ -0,0 +1,184 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openmrs.api.APIException;
+
+/**
+ * Contains utility methods for creating digests of large property values, a digest is a map
+ * holding the SHA-256 hash and length of a value and optionally a line level delta against another
+ * value, it is stored in place of the value itself.
+ */
+public final class DigestUtil {
+	
+	public static final String KEY_HASH = "sha256";
+	
+	public static final String KEY_LENGTH = "length";
+	
+	public static final String KEY_DELTA = "delta";
+	
+	private static final String LINE_SEPARATOR_REGEX = "\r?\n";
+	
+	private static final String TRUNCATED_MARKER = "\n...";
+	
+	private DigestUtil() {
+	}
+	
+	/**
+	 * Checks if the specified value is a digest
+	 * 
+	 * @param value the value to check
+	 * @return true if the value is a digest otherwise false
+	 * @should return true for a digest
+	 * @should return false for a value that is not a digest
+	 */
+	public static boolean isDigest(Object value) {
+		return value instanceof Map && ((Map<?, ?>) value).containsKey(KEY_HASH);
+	}
+	
+	/**
+	 * Creates a digest of the specified text
+	 * 
+	 * @param text the text
+	 * @return the digest or null if the text is null
+	 */
+	public static Map<String, Object> createDigest(String text) {
+		if (text == null) {
+			return null;
+		}
+		return createDigest(getBytes(text), text.length());
+	}
+	
+	/**
+	 * Creates a digest of the specified bytes
+	 * 
+	 * @param bytes the bytes
+	 * @return the digest or null if the bytes are null
+	 */
+	public static Map<String, Object> createDigest(byte[] bytes) {
+		if (bytes == null) {
+			return null;
+		}
+		return createDigest(bytes, bytes.length);
+	}
+	
+	/**
+	 * Creates a digest of the specified new text including a line level delta against the
+	 * specified previous text
+	 * 
+	 * @param newText the new text
+	 * @param previousText the previous text
+	 * @param maxDeltaLength the length above which the delta is truncated
+	 * @return the digest or null if the new text is null
+	 * @should include the delta against the previous text
+	 */
+	public static Map<String, Object> createDigest(String newText, String previousText, int maxDeltaLength) {
+		Map<String, Object> digest = createDigest(newText);
+		if (digest != null) {
+			digest.put(KEY_DELTA, createLineDelta(previousText, newText, maxDeltaLength));
+		}
+		return digest;
+	}
+	
+	/**
+	 * Creates a compact line level delta between the specified texts, the lines the texts have in
+	 * common at the start and at the end are left out and what remains is included as removed and
+	 * added lines after a header line of the form
+	 * <code>@@ -startLine,removedLineCount +startLine,addedLineCount @@</code>, removed lines are
+	 * prefixed with '-' and added lines with '+'
+	 * 
+	 * @param previousText the previous text
+	 * @param newText the new text
+	 * @param maxLength the length above which the delta is truncated
+	 * @return the delta
+	 * @should leave out the lines in common at the start and end
+	 * @should truncate the delta if it is longer than the max length
+	 */
+	public static String createLineDelta(String previousText, String newText, int maxLength) {
+		String[] previousLines = splitLines(previousText);
+		String[] newLines = splitLines(newText);
+		int prefix = 0;
+		while (prefix < previousLines.length && prefix < newLines.length
+		        && previousLines[prefix].equals(newLines[prefix])) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < previousLines.length - prefix && suffix < newLines.length - prefix
+		        && previousLines[previousLines.length - 1 - suffix].equals(newLines[newLines.length - 1 - suffix])) {
+			suffix++;
+		}
+		
+		StringBuilder sb = new StringBuilder();
+		sb.append("@@ -").append(prefix + 1).append(',').append(previousLines.length - prefix - suffix);
+		sb.append(" +").append(prefix + 1).append(',').append(newLines.length - prefix - suffix).append(" @@");
+		for (int i = prefix; i < previousLines.length - suffix && sb.length() <= maxLength; i++) {
+			sb.append('\n').append('-').append(previousLines[i]);
+		}
+		for (int i = prefix; i < newLines.length - suffix && sb.length() <= maxLength; i++) {
+			sb.append('\n').append('+').append(newLines[i]);
+		}
+		if (sb.length() > maxLength) {
+			sb.setLength(maxLength);
+			sb.append(TRUNCATED_MARKER);
+		}
+		
+		return sb.toString();
+	}
+	
+	private static String[] splitLines(String text) {
+		if (text == null || text.length() == 0) {
+			return new String[0];
+		}
+		return text.split(LINE_SEPARATOR_REGEX, -1);
+	}
+	
+	private static Map<String, Object> createDigest(byte[] bytes, int length) {
+		Map<String, Object> digest = new LinkedHashMap<String, Object>();
+		digest.put(KEY_HASH, toHex(getMessageDigest().digest(bytes)));
+		digest.put(KEY_LENGTH, length);
+		return digest;
+	}
+	
+	private static byte[] getBytes(String text) {
+		try {
+			return text.getBytes("UTF-8");
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new APIException("Failed to get the bytes of the text", e);
+		}
+	}
+	
+	private static MessageDigest getMessageDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new APIException("Failed to create a SHA-256 message digest", e);
+		}
+	}
+	
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+}
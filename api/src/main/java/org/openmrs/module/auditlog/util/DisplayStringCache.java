@@ -0,0 +1,205 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A bounded cache of the display strings of the objects referenced by audit logs keyed by the type
+ * and id of each object and the locale the display string was generated in. The objects whose
+ * display strings were least recently used are evicted when the cache is full and entries expire
+ * after a fixed time to live, all the entries of an object are also removed when a new audit log
+ * is created for it. Subclasses of a persistent type share the entries of the top most persistent
+ * type so that e.g. a ConceptNumeric and a Concept with the same id map to one entry.
+ */
+public final class DisplayStringCache {
+	
+	public static final int DEFAULT_MAX_SIZE = 1000;
+	
+	public static final long DEFAULT_TIME_TO_LIVE = 10 * 60 * 1000L;
+	
+	private static final DisplayStringCache INSTANCE = new DisplayStringCache(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+	
+	private final int maxSize;
+	
+	private final long timeToLive;
+	
+	private final Map<String, Map<Locale, Entry>> entries;
+	
+	private long hitCount;
+	
+	private long missCount;
+	
+	private long evictionCount;
+	
+	/**
+	 * @param maxSize the maximum number of objects to hold display strings for
+	 * @param timeToLive the time in milliseconds after which an entry expires
+	 */
+	DisplayStringCache(int maxSize, long timeToLive) {
+		this.maxSize = maxSize;
+		this.timeToLive = timeToLive;
+		entries = new LinkedHashMap<String, Map<Locale, Entry>>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Map<Locale, Entry>> eldest) {
+				if (size() > DisplayStringCache.this.maxSize) {
+					evictionCount += eldest.getValue().size();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	
+	/**
+	 * @return the shared instance
+	 */
+	public static DisplayStringCache getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * Gets the cached display string for the object with the specified type and id in the specified
+	 * locale
+	 * 
+	 * @param type the type of the object
+	 * @param id the id of the object
+	 * @param locale the locale the display string was generated in
+	 * @return the display string or null if there is none or it has expired
+	 * @should return the cached display string
+	 * @should return null for an expired entry
+	 * @should share entries between a type and its persistent subclasses
+	 * @should return null for a display string cached in another locale
+	 */
+	public synchronized String get(Class<?> type, Object id, Locale locale) {
+		String key = AuditLogUtil.getObjectKey(type, id);
+		Map<Locale, Entry> localeEntries = entries.get(key);
+		Entry entry = (localeEntries != null) ? localeEntries.get(locale) : null;
+		if (entry != null && System.currentTimeMillis() - entry.created > timeToLive) {
+			localeEntries.remove(locale);
+			if (localeEntries.isEmpty()) {
+				entries.remove(key);
+			}
+			evictionCount++;
+			entry = null;
+		}
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		
+		hitCount++;
+		return entry.displayString;
+	}
+	
+	/**
+	 * Caches the display string for the object with the specified type and id in the specified
+	 * locale
+	 * 
+	 * @param type the type of the object
+	 * @param id the id of the object
+	 * @param locale the locale the display string was generated in
+	 * @param displayString the display string to cache
+	 * @should evict the least recently used entry when the cache is full
+	 */
+	public synchronized void put(Class<?> type, Object id, Locale locale, String displayString) {
+		String key = AuditLogUtil.getObjectKey(type, id);
+		Map<Locale, Entry> localeEntries = entries.get(key);
+		if (localeEntries == null) {
+			localeEntries = new HashMap<Locale, Entry>();
+			entries.put(key, localeEntries);
+		}
+		localeEntries.put(locale, new Entry(displayString));
+	}
+	
+	/**
+	 * Removes the cached display strings in all locales for the object with the specified type and
+	 * id
+	 * 
+	 * @param type the type of the object
+	 * @param id the id of the object
+	 * @should remove the entry for the object
+	 * @should remove the entries in all locales
+	 */
+	public synchronized void invalidate(Class<?> type, Object id) {
+		if (type == null || id == null) {
+			return;
+		}
+		entries.remove(AuditLogUtil.getObjectKey(type, id));
+	}
+	
+	/**
+	 * Removes all the entries and resets the statistics
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		hitCount = 0;
+		missCount = 0;
+		evictionCount = 0;
+	}
+	
+	/**
+	 * @return the number of objects with cached display strings
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+	
+	/**
+	 * @return the number of lookups that found a display string
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+	
+	/**
+	 * @return the number of lookups that found no display string
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+	
+	/**
+	 * @return the number of entries removed because the cache was full or they had expired
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		return "DisplayStringCache[size=" + entries.size() + ", hits=" + hitCount + ", misses=" + missCount
+		        + ", evictions=" + evictionCount + "]";
+	}
+	
+	private static final class Entry {
+		
+		private final String displayString;
+		
+		private final long created = System.currentTimeMillis();
+		
+		private Entry(String displayString) {
+			this.displayString = displayString;
+		}
+	}
+}
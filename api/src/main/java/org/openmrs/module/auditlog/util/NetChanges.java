@@ -0,0 +1,170 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.openmrs.module.auditlog.AuditLog;
+import org.openmrs.module.auditlog.AuditLog.Action;
+
+/**
+ * The net changes made to an object over a period of time, the audit logs for the object are
+ * folded into one pair of values per property made up of the latest new value and the earliest
+ * previous value. The changes of the collection items of the object recorded by the child logs are
+ * folded per item in the same way. The logs are expected to be added starting with the latest.
+ */
+public final class NetChanges {
+	
+	private final Class<?> type;
+	
+	private final Serializable identifier;
+	
+	//Maps the property names to arrays of their latest new and earliest previous values
+	private final Map<String, Object[]> changes = new LinkedHashMap<String, Object[]>();
+	
+	private final Map<String, NetChanges> childChanges = new LinkedHashMap<String, NetChanges>();
+	
+	private Action latestAction;
+	
+	private Action earliestAction;
+	
+	private int auditLogCount;
+	
+	/**
+	 * @param type the type of the object
+	 * @param identifier the identifier of the object
+	 */
+	public NetChanges(Class<?> type, Serializable identifier) {
+		this.type = type;
+		this.identifier = identifier;
+	}
+	
+	/**
+	 * Folds the changes of the specified audit log and its child logs into the net changes, the
+	 * log must be older than the logs added before it
+	 * 
+	 * @param auditLog the audit log to add
+	 * @should keep the latest new value and the earliest previous value of each property
+	 * @should fold the changes of the child logs per item
+	 */
+	@SuppressWarnings("rawtypes")
+	public void add(AuditLog auditLog) {
+		if (latestAction == null) {
+			latestAction = auditLog.getAction();
+		}
+		earliestAction = auditLog.getAction();
+		auditLogCount++;
+		
+		if (auditLog.getAction() == Action.UPDATED) {
+			for (Map.Entry<String, List> entry : AuditLogUtil.getChangesOfUpdatedItem(auditLog).entrySet()) {
+				List values = entry.getValue();
+				if (values == null || values.size() < 2) {
+					continue;
+				}
+				Object[] netValues = changes.get(entry.getKey());
+				if (netValues == null) {
+					changes.put(entry.getKey(), new Object[] { values.get(0), values.get(1) });
+				} else {
+					netValues[1] = values.get(1);
+				}
+			}
+		}
+		
+		if (auditLog.hasChildLogs()) {
+			for (AuditLog childLog : auditLog.getChildAuditLogs()) {
+				String key = childLog.getType().getName() + "#" + childLog.getIdentifier();
+				NetChanges netChildChanges = childChanges.get(key);
+				if (netChildChanges == null) {
+					netChildChanges = new NetChanges(childLog.getType(), childLog.getIdentifier());
+					childChanges.put(key, netChildChanges);
+				}
+				netChildChanges.add(childLog);
+			}
+		}
+	}
+	
+	/**
+	 * @return the type of the object
+	 */
+	public Class<?> getType() {
+		return type;
+	}
+	
+	/**
+	 * @return the identifier of the object
+	 */
+	public Serializable getIdentifier() {
+		return identifier;
+	}
+	
+	/**
+	 * Gets the net changes of the properties, properties whose latest new value matches their
+	 * earliest previous value are left out, digests of large values are matched by their hashes
+	 * since their deltas depend on the values they were compared against
+	 * 
+	 * @return a map of property names and arrays of their latest new and earliest previous values
+	 * @should leave out properties that were changed back to their previous values
+	 * @should leave out properties whose digests were changed back to their previous values
+	 */
+	public Map<String, Object[]> getChanges() {
+		Map<String, Object[]> netChanges = new LinkedHashMap<String, Object[]>();
+		for (Map.Entry<String, Object[]> entry : changes.entrySet()) {
+			if (!isSameValue(entry.getValue()[0], entry.getValue()[1])) {
+				netChanges.put(entry.getKey(), entry.getValue().clone());
+			}
+		}
+		return netChanges;
+	}
+	
+	private static boolean isSameValue(Object value, Object otherValue) {
+		if (DigestUtil.isDigest(value) && DigestUtil.isDigest(otherValue)) {
+			return ObjectUtils.equals(((Map<?, ?>) value).get(DigestUtil.KEY_HASH), ((Map<?, ?>) otherValue)
+			        .get(DigestUtil.KEY_HASH));
+		}
+		return ObjectUtils.equals(value, otherValue);
+	}
+	
+	/**
+	 * @return the net changes of the collection items of the object
+	 */
+	public Collection<NetChanges> getChildChanges() {
+		return new ArrayList<NetChanges>(childChanges.values());
+	}
+	
+	/**
+	 * Gets the net action, this is CREATED if the object was created in the period, DELETED if it
+	 * was deleted otherwise UPDATED
+	 * 
+	 * @return the net action or null if no audit logs were added
+	 */
+	public Action getAction() {
+		if (earliestAction == Action.CREATED) {
+			return Action.CREATED;
+		}
+		return latestAction;
+	}
+	
+	/**
+	 * @return the number of folded audit logs for the object excluding the child logs
+	 */
+	public int getAuditLogCount() {
+		return auditLogCount;
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the reconstructed states of audited objects keyed by the type and id of each
+ * object and the id of the last audit log applied to the state. The objects whose states were
+ * least recently used are evicted when the cache is full and all the states of an object are
+ * removed when a new audit log is created for it since coalescing can change an existing log.
+ * Subclasses of a persistent type share the entries of the top most persistent type.
+ */
+public final class ObjectStateCache {
+	
+	public static final int DEFAULT_MAX_SIZE = 500;
+	
+	private static final ObjectStateCache INSTANCE = new ObjectStateCache(DEFAULT_MAX_SIZE);
+	
+	private final int maxSize;
+	
+	private final Map<String, Map<Integer, Map<String, Object>>> entries;
+	
+	/**
+	 * @param maxSize the maximum number of objects to hold states for
+	 */
+	ObjectStateCache(int maxSize) {
+		this.maxSize = maxSize;
+		entries = new LinkedHashMap<String, Map<Integer, Map<String, Object>>>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Map<Integer, Map<String, Object>>> eldest) {
+				return size() > ObjectStateCache.this.maxSize;
+			}
+		};
+	}
+	
+	/**
+	 * @return the shared instance
+	 */
+	public static ObjectStateCache getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * Gets the cached state of the object with the specified type and id
+	 * 
+	 * @param type the type of the object
+	 * @param id the id of the object
+	 * @param auditLogId the id of the last audit log applied to the state
+	 * @return the unmodifiable state or null if there is none
+	 * @should return the cached state
+	 * @should share entries between a type and its persistent subclasses
+	 */
+	public synchronized Map<String, Object> get(Class<?> type, Object id, Integer auditLogId) {
+		Map<Integer, Map<String, Object>> states = entries.get(AuditLogUtil.getObjectKey(type, id));
+		return (states != null) ? states.get(auditLogId) : null;
+	}
+	
+	/**
+	 * Caches the state of the object with the specified type and id
+	 * 
+	 * @param type the type of the object
+	 * @param id the id of the object
+	 * @param auditLogId the id of the last audit log applied to the state
+	 * @param state the state to cache
+	 * @should evict the states of the least recently used object when the cache is full
+	 */
+	public synchronized void put(Class<?> type, Object id, Integer auditLogId, Map<String, Object> state) {
+		String key = AuditLogUtil.getObjectKey(type, id);
+		Map<Integer, Map<String, Object>> states = entries.get(key);
+		if (states == null) {
+			states = new HashMap<Integer, Map<String, Object>>();
+			entries.put(key, states);
+		}
+		states.put(auditLogId, Collections.unmodifiableMap(new HashMap<String, Object>(state)));
+	}
+	
+	/**
+	 * Removes the cached states of the object with the specified type and id
+	 * 
+	 * @param type the type of the object
+	 * @param id the id of the object
+	 * @should remove the states of the object
+	 */
+	public synchronized void invalidate(Class<?> type, Object id) {
+		if (type == null || id == null) {
+			return;
+		}
+		entries.remove(AuditLogUtil.getObjectKey(type, id));
+	}
+	
+	/**
+	 * Removes all the entries
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+	
+	/**
+	 * @return the number of objects with cached states
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the ids of the rows in the auditlog_property_name table by name, entries are added as
+ * properties of audited objects get changed and are never changed. A name added by a transaction is
+ * only visible to the thread running it until the transaction commits.
+ */
+public final class PropertyNameDictionary {
+	
+	private static final PropertyNameDictionary INSTANCE = new PropertyNameDictionary();
+	
+	private final Map<String, Integer> nameIdMap = new ConcurrentHashMap<String, Integer>();
+	
+	//The names whose rows were inserted by the transaction of the current thread and not yet committed
+	private final ThreadLocal<Map<String, Integer>> pendingNameIdMap = new ThreadLocal<Map<String, Integer>>();
+	
+	private PropertyNameDictionary() {
+	}
+	
+	/**
+	 * @return the shared instance
+	 */
+	public static PropertyNameDictionary getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * Gets the id of the property name
+	 * 
+	 * @param name the property name to look up
+	 * @return the id or null if the name isn't in the dictionary
+	 */
+	public Integer getId(String name) {
+		Integer id = nameIdMap.get(name);
+		if (id == null && pendingNameIdMap.get() != null) {
+			id = pendingNameIdMap.get().get(name);
+		}
+		return id;
+	}
+	
+	/**
+	 * Adds the specified property name to the dictionary
+	 * 
+	 * @param name the property name
+	 * @param id the id of the property name
+	 */
+	public void put(String name, Integer id) {
+		nameIdMap.put(name, id);
+	}
+	
+	/**
+	 * Adds the specified property name for the current thread only, this is used for a name whose
+	 * row was inserted by the current transaction, it is added to the dictionary by
+	 * {@link #publishPending()} once the transaction commits
+	 * 
+	 * @param name the property name
+	 * @param id the id of the property name
+	 */
+	public void putPending(String name, Integer id) {
+		Map<String, Integer> pendingNameIds = pendingNameIdMap.get();
+		if (pendingNameIds == null) {
+			pendingNameIds = new HashMap<String, Integer>();
+			pendingNameIdMap.set(pendingNameIds);
+		}
+		pendingNameIds.put(name, id);
+	}
+	
+	/**
+	 * Adds the pending property names of the current thread to the dictionary
+	 */
+	public void publishPending() {
+		Map<String, Integer> pendingNameIds = pendingNameIdMap.get();
+		pendingNameIdMap.remove();
+		if (pendingNameIds != null) {
+			nameIdMap.putAll(pendingNameIds);
+		}
+	}
+	
+	/**
+	 * Discards the pending property names of the current thread, this is used when the transaction
+	 * that inserted their rows doesn't commit
+	 */
+	public void clearPending() {
+		pendingNameIdMap.remove();
+	}
+	
+	/**
+	 * Removes all the entries
+	 */
+	public void clear() {
+		nameIdMap.clear();
+		pendingNameIdMap.remove();
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Splits the changed values in audit logs into the lower case words that are indexed for searching,
+ * a word is a run of letters and digits. Digests of large values are skipped since the actual text
+ * isn't stored.
+ */
+public final class ValueTokenizer {
+	
+	public static final int MIN_TOKEN_LENGTH = 2;
+	
+	public static final int MAX_TOKEN_LENGTH = 50;
+	
+	//The maximum number of words to index for a single property value
+	public static final int MAX_TOKENS_PER_VALUE = 100;
+	
+	private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+	
+	private ValueTokenizer() {
+	}
+	
+	/**
+	 * Gets the distinct words in the specified value, collections, arrays and map values are
+	 * tokenized element by element
+	 * 
+	 * @param value the value to tokenize
+	 * @return the words in the order they occur
+	 * @should split the value into lower case words
+	 * @should skip words that are too short or too long
+	 * @should tokenize the elements of collections and arrays
+	 * @should skip digests
+	 * @should stop at the maximum number of words
+	 */
+	public static Set<String> tokenize(Object value) {
+		Set<String> tokens = new LinkedHashSet<String>();
+		addTokens(value, tokens);
+		return tokens;
+	}
+	
+	/**
+	 * Tokenizes the values of the specified properties
+	 * 
+	 * @param propertyValues the property names mapped to their values
+	 * @return the property names mapped to their words, properties without words are left out
+	 */
+	public static Map<String, Set<String>> tokenizeProperties(Map<String, ?> propertyValues) {
+		Map<String, Set<String>> propertyTokens = new LinkedHashMap<String, Set<String>>();
+		if (propertyValues != null) {
+			for (Map.Entry<String, ?> entry : propertyValues.entrySet()) {
+				Set<String> tokens = tokenize(entry.getValue());
+				if (!tokens.isEmpty()) {
+					propertyTokens.put(entry.getKey(), tokens);
+				}
+			}
+		}
+		return propertyTokens;
+	}
+	
+	private static void addTokens(Object value, Set<String> tokens) {
+		if (value == null || tokens.size() >= MAX_TOKENS_PER_VALUE || DigestUtil.isDigest(value)) {
+			return;
+		}
+		if (value instanceof Collection) {
+			for (Object element : (Collection<?>) value) {
+				addTokens(element, tokens);
+			}
+		} else if (value instanceof Object[]) {
+			for (Object element : (Object[]) value) {
+				addTokens(element, tokens);
+			}
+		} else if (value instanceof Map) {
+			for (Object element : ((Map<?, ?>) value).values()) {
+				addTokens(element, tokens);
+			}
+		} else {
+			for (String token : SEPARATOR.split(value.toString().toLowerCase(Locale.ROOT))) {
+				if (tokens.size() >= MAX_TOKENS_PER_VALUE) {
+					return;
+				}
+				if (token.length() >= MIN_TOKEN_LENGTH && token.length() <= MAX_TOKEN_LENGTH) {
+					tokens.add(token);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util.databasechange;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import liquibase.FileOpener;
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.DatabaseConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.InvalidChangeDefinitionException;
+import liquibase.exception.SetupException;
+import liquibase.exception.UnsupportedChangeException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Superclass for the change sets that migrate the existing audit logs in chunks of audit log ids,
+ * each chunk is committed separately so that a large table doesn't need one huge transaction.
+ * Subclasses prepare their statements once and then process one chunk at a time.
+ */
+public abstract class BaseChunkedChangeSet implements CustomTaskChange {
+	
+	protected final Log log = LogFactory.getLog(getClass());
+	
+	protected static final int CHUNK_SIZE = 1000;
+	
+	private int processedCount = 0;
+	
+	/**
+	 * @see CustomTaskChange#execute(Database)
+	 */
+	@Override
+	public void execute(Database database) throws CustomChangeException, UnsupportedChangeException {
+		DatabaseConnection connection = database.getConnection();
+		Statement statement = null;
+		try {
+			statement = connection.createStatement();
+			int start = getStartId(statement);
+			int maxId = getMaxId(statement);
+			boolean autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			prepareStatements(connection);
+			while (start <= maxId) {
+				processedCount += processChunk(start, start + CHUNK_SIZE);
+				connection.commit();
+				start += CHUNK_SIZE;
+				if (log.isDebugEnabled()) {
+					log.debug(getConfirmationMessage());
+				}
+			}
+			connection.setAutoCommit(autoCommit);
+		}
+		catch (SQLException e) {
+			throw new CustomChangeException(getFailureMessage(), e);
+		}
+		finally {
+			closeStatements();
+			close(statement);
+		}
+	}
+	
+	/**
+	 * @param statement the statement to use to run queries
+	 * @return the id of the audit log to start from
+	 * @throws SQLException
+	 */
+	protected abstract int getStartId(Statement statement) throws SQLException;
+	
+	/**
+	 * @param statement the statement to use to run queries
+	 * @return the id of the last audit log to process
+	 * @throws SQLException
+	 */
+	protected abstract int getMaxId(Statement statement) throws SQLException;
+	
+	/**
+	 * Creates the statements used to process the chunks
+	 * 
+	 * @param connection the database connection
+	 * @throws SQLException
+	 */
+	protected abstract void prepareStatements(DatabaseConnection connection) throws SQLException;
+	
+	/**
+	 * Processes the audit logs with ids in the specified range
+	 * 
+	 * @param fromId the id to start from, inclusive
+	 * @param toId the id to stop at, exclusive
+	 * @return the number of processed rows
+	 * @throws SQLException
+	 */
+	protected abstract int processChunk(int fromId, int toId) throws SQLException;
+	
+	/**
+	 * Closes the statements created in {@link #prepareStatements(DatabaseConnection)}
+	 */
+	protected abstract void closeStatements();
+	
+	/**
+	 * @return the message of the exception thrown if the migration fails
+	 */
+	protected abstract String getFailureMessage();
+	
+	/**
+	 * @return the number of rows processed so far
+	 */
+	protected int getProcessedCount() {
+		return processedCount;
+	}
+	
+	protected int getInt(Statement statement, String sql) throws SQLException {
+		ResultSet rs = statement.executeQuery(sql);
+		try {
+			return rs.next() ? rs.getInt(1) : 0;
+		}
+		finally {
+			rs.close();
+		}
+	}
+	
+	protected void close(Statement statement) {
+		if (statement != null) {
+			try {
+				statement.close();
+			}
+			catch (SQLException e) {
+				log.warn("Failed to close statement", e);
+			}
+		}
+	}
+	
+	/**
+	 * @see liquibase.change.custom.CustomChange#setFileOpener(liquibase.FileOpener)
+	 */
+	@Override
+	public void setFileOpener(FileOpener fileOpener) {
+	}
+	
+	/**
+	 * @see liquibase.change.custom.CustomChange#setUp()
+	 */
+	@Override
+	public void setUp() throws SetupException {
+	}
+	
+	/**
+	 * @see liquibase.change.custom.CustomChange#validate(liquibase.database.Database)
+	 */
+	@Override
+	public void validate(Database database) throws InvalidChangeDefinitionException {
+	}
+}
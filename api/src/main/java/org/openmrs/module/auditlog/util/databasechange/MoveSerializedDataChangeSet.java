@@ -0,0 +1,90 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util.databasechange;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import liquibase.database.DatabaseConnection;
+
+/**
+ * Copies the serialized data of the audit logs from the serialized_data column of the
+ * auditlog_audit_log table to the auditlog_audit_log_data table. If the migration is interrupted it
+ * resumes after the last copied audit log the next time it runs.
+ */
+public class MoveSerializedDataChangeSet extends BaseChunkedChangeSet {
+	
+	private PreparedStatement insertStatement;
+	
+	/**
+	 * @see BaseChunkedChangeSet#getStartId(Statement)
+	 */
+	@Override
+	protected int getStartId(Statement statement) throws SQLException {
+		return getInt(statement, "select max(audit_log_id) from auditlog_audit_log_data") + 1;
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#getMaxId(Statement)
+	 */
+	@Override
+	protected int getMaxId(Statement statement) throws SQLException {
+		return getInt(statement, "select max(audit_log_id) from auditlog_audit_log where serialized_data is not null");
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#prepareStatements(DatabaseConnection)
+	 */
+	@Override
+	protected void prepareStatements(DatabaseConnection connection) throws SQLException {
+		insertStatement = connection.prepareStatement("insert into auditlog_audit_log_data (audit_log_id, "
+		        + "serialized_data) select audit_log_id, serialized_data from auditlog_audit_log where "
+		        + "audit_log_id >= ? and audit_log_id < ? and serialized_data is not null");
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#processChunk(int, int)
+	 */
+	@Override
+	protected int processChunk(int fromId, int toId) throws SQLException {
+		insertStatement.setInt(1, fromId);
+		insertStatement.setInt(2, toId);
+		return insertStatement.executeUpdate();
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#closeStatements()
+	 */
+	@Override
+	protected void closeStatements() {
+		close(insertStatement);
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#getFailureMessage()
+	 */
+	@Override
+	protected String getFailureMessage() {
+		return "Failed to move the serialized data of the audit logs";
+	}
+	
+	/**
+	 * @see liquibase.change.custom.CustomChange#getConfirmationMessage()
+	 */
+	@Override
+	public String getConfirmationMessage() {
+		return "Moved the serialized data of " + getProcessedCount() + " audit logs to auditlog_audit_log_data";
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util.databasechange;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import liquibase.database.DatabaseConnection;
+
+/**
+ * Fills the auditlog_latest table from the existing audit logs. The chunks are read starting with
+ * the oldest logs and each one overwrites the rows of the objects it has logs for, so if the
+ * migration is interrupted it is safe to run it again from the start.
+ */
+public class PopulateLatestAuditLogChangeSet extends BaseChunkedChangeSet {
+	
+	private PreparedStatement selectStatement;
+	
+	private PreparedStatement updateStatement;
+	
+	private PreparedStatement insertStatement;
+	
+	/**
+	 * @see BaseChunkedChangeSet#getStartId(Statement)
+	 */
+	@Override
+	protected int getStartId(Statement statement) throws SQLException {
+		return getInt(statement, "select min(audit_log_id) from auditlog_audit_log");
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#getMaxId(Statement)
+	 */
+	@Override
+	protected int getMaxId(Statement statement) throws SQLException {
+		return getInt(statement, "select max(audit_log_id) from auditlog_audit_log");
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#prepareStatements(DatabaseConnection)
+	 */
+	@Override
+	protected void prepareStatements(DatabaseConnection connection) throws SQLException {
+		selectStatement = connection.prepareStatement("select type_id, identifier, audit_log_id, action, user_id, "
+		        + "date_created from auditlog_audit_log where audit_log_id >= ? and audit_log_id < ? "
+		        + "order by audit_log_id");
+		updateStatement = connection.prepareStatement("update auditlog_latest set audit_log_id = ?, action = ?, "
+		        + "user_id = ?, date_created = ? where type_id = ? and identifier = ?");
+		insertStatement = connection.prepareStatement("insert into auditlog_latest (audit_log_id, action, user_id, "
+		        + "date_created, type_id, identifier) values (?, ?, ?, ?, ?, ?)");
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#processChunk(int, int)
+	 */
+	@Override
+	protected int processChunk(int fromId, int toId) throws SQLException {
+		selectStatement.setInt(1, fromId);
+		selectStatement.setInt(2, toId);
+		//Only the latest log of each object in the chunk matters
+		Map<String, Object[]> latestRows = new LinkedHashMap<String, Object[]>();
+		ResultSet rs = selectStatement.executeQuery();
+		try {
+			while (rs.next()) {
+				Object[] row = new Object[] { rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getString(4),
+				        rs.getObject(5), rs.getTimestamp(6) };
+				latestRows.put(row[0] + "#" + row[1], row);
+			}
+		}
+		finally {
+			rs.close();
+		}
+		for (Object[] row : latestRows.values()) {
+			setValues(updateStatement, row);
+			if (updateStatement.executeUpdate() == 0) {
+				setValues(insertStatement, row);
+				insertStatement.executeUpdate();
+			}
+		}
+		return latestRows.size();
+	}
+	
+	/**
+	 * Sets the audit log id, action, user id, date created, type id and identifier of the specified
+	 * row as the parameters of the specified statement
+	 */
+	private void setValues(PreparedStatement ps, Object[] row) throws SQLException {
+		ps.setInt(1, (Integer) row[2]);
+		ps.setString(2, (String) row[3]);
+		if (row[4] != null) {
+			ps.setInt(3, ((Number) row[4]).intValue());
+		} else {
+			ps.setNull(3, Types.INTEGER);
+		}
+		ps.setTimestamp(4, (Timestamp) row[5]);
+		ps.setInt(5, (Integer) row[0]);
+		ps.setString(6, (String) row[1]);
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#closeStatements()
+	 */
+	@Override
+	protected void closeStatements() {
+		close(insertStatement);
+		close(updateStatement);
+		close(selectStatement);
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#getFailureMessage()
+	 */
+	@Override
+	protected String getFailureMessage() {
+		return "Failed to fill the auditlog_latest table";
+	}
+	
+	/**
+	 * @see liquibase.change.custom.CustomChange#getConfirmationMessage()
+	 */
+	@Override
+	public String getConfirmationMessage() {
+		return "Pointed the latest audit logs of " + getProcessedCount() + " objects";
+	}
+}
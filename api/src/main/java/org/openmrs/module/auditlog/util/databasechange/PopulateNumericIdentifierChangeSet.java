@@ -0,0 +1,116 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util.databasechange;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import liquibase.database.DatabaseConnection;
+
+import org.openmrs.module.auditlog.util.AuditLogUtil;
+
+/**
+ * Sets the numeric_identifier column of the existing audit logs with numeric identifiers. Only the
+ * rows without a numeric identifier are read, so if the migration is interrupted it resumes where
+ * it stopped the next time it runs.
+ */
+public class PopulateNumericIdentifierChangeSet extends BaseChunkedChangeSet {
+	
+	private PreparedStatement selectStatement;
+	
+	private PreparedStatement updateStatement;
+	
+	/**
+	 * @see BaseChunkedChangeSet#getStartId(Statement)
+	 */
+	@Override
+	protected int getStartId(Statement statement) throws SQLException {
+		return getInt(statement, "select min(audit_log_id) from auditlog_audit_log where numeric_identifier is null");
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#getMaxId(Statement)
+	 */
+	@Override
+	protected int getMaxId(Statement statement) throws SQLException {
+		return getInt(statement, "select max(audit_log_id) from auditlog_audit_log where numeric_identifier is null");
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#prepareStatements(DatabaseConnection)
+	 */
+	@Override
+	protected void prepareStatements(DatabaseConnection connection) throws SQLException {
+		selectStatement = connection.prepareStatement("select audit_log_id, identifier from auditlog_audit_log "
+		        + "where audit_log_id >= ? and audit_log_id < ? and numeric_identifier is null");
+		updateStatement = connection.prepareStatement("update auditlog_audit_log set numeric_identifier = ? "
+		        + "where audit_log_id = ?");
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#processChunk(int, int)
+	 */
+	@Override
+	protected int processChunk(int fromId, int toId) throws SQLException {
+		selectStatement.setInt(1, fromId);
+		selectStatement.setInt(2, toId);
+		int batchSize = 0;
+		ResultSet rs = selectStatement.executeQuery();
+		try {
+			while (rs.next()) {
+				Long numericIdentifier = AuditLogUtil.getNumericIdentifier(rs.getString(2));
+				if (numericIdentifier != null) {
+					updateStatement.setLong(1, numericIdentifier);
+					updateStatement.setInt(2, rs.getInt(1));
+					updateStatement.addBatch();
+					batchSize++;
+				}
+			}
+		}
+		finally {
+			rs.close();
+		}
+		if (batchSize > 0) {
+			updateStatement.executeBatch();
+		}
+		return batchSize;
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#closeStatements()
+	 */
+	@Override
+	protected void closeStatements() {
+		close(updateStatement);
+		close(selectStatement);
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#getFailureMessage()
+	 */
+	@Override
+	protected String getFailureMessage() {
+		return "Failed to set the numeric identifiers of the audit logs";
+	}
+	
+	/**
+	 * @see liquibase.change.custom.CustomChange#getConfirmationMessage()
+	 */
+	@Override
+	public String getConfirmationMessage() {
+		return "Set the numeric identifiers of " + getProcessedCount() + " audit logs";
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util.databasechange;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import liquibase.database.DatabaseConnection;
+
+/**
+ * Sets the type_id column of the existing audit logs from the ids of their class names in the
+ * auditlog_type table. Only the rows without a type id are updated, so if the migration is
+ * interrupted it resumes where it stopped the next time it runs.
+ */
+public class PopulateTypeIdChangeSet extends BaseChunkedChangeSet {
+	
+	private PreparedStatement updateStatement;
+	
+	/**
+	 * @see BaseChunkedChangeSet#getStartId(Statement)
+	 */
+	@Override
+	protected int getStartId(Statement statement) throws SQLException {
+		return getInt(statement, "select min(audit_log_id) from auditlog_audit_log where type_id is null");
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#getMaxId(Statement)
+	 */
+	@Override
+	protected int getMaxId(Statement statement) throws SQLException {
+		return getInt(statement, "select max(audit_log_id) from auditlog_audit_log where type_id is null");
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#prepareStatements(DatabaseConnection)
+	 */
+	@Override
+	protected void prepareStatements(DatabaseConnection connection) throws SQLException {
+		updateStatement = connection.prepareStatement("update auditlog_audit_log set type_id = (select t.type_id from "
+		        + "auditlog_type t where t.classname = auditlog_audit_log.type) where audit_log_id >= ? and "
+		        + "audit_log_id < ? and type_id is null");
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#processChunk(int, int)
+	 */
+	@Override
+	protected int processChunk(int fromId, int toId) throws SQLException {
+		updateStatement.setInt(1, fromId);
+		updateStatement.setInt(2, toId);
+		return updateStatement.executeUpdate();
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#closeStatements()
+	 */
+	@Override
+	protected void closeStatements() {
+		close(updateStatement);
+	}
+	
+	/**
+	 * @see BaseChunkedChangeSet#getFailureMessage()
+	 */
+	@Override
+	protected String getFailureMessage() {
+		return "Failed to set the type ids of the audit logs";
+	}
+	
+	/**
+	 * @see liquibase.change.custom.CustomChange#getConfirmationMessage()
+	 */
+	@Override
+	public String getConfirmationMessage() {
+		return "Set the type ids of " + getProcessedCount() + " audit logs";
+	}
+}
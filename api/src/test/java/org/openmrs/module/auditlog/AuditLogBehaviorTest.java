@@ -32,6 +32,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.commons.lang.StringUtils;
 import org.junit.Test;
@@ -52,14 +54,21 @@ import org.openmrs.api.EncounterService;
 import org.openmrs.api.PatientService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.auditlog.AuditLog.Action;
+import org.openmrs.module.auditlog.api.db.hibernate.interceptor.ChangedValueIndexWriter;
 import org.openmrs.module.auditlog.strategy.AuditStrategy;
 import org.openmrs.module.auditlog.strategy.ExceptionBasedAuditStrategy;
 import org.openmrs.module.auditlog.util.AuditLogConstants;
 import org.openmrs.module.auditlog.util.AuditLogUtil;
+import org.openmrs.module.auditlog.util.DigestUtil;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.UncategorizedSQLException;
 import org.springframework.test.annotation.NotTransactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * Contains tests for testing the core functionality of the module
@@ -67,6 +76,9 @@ import org.springframework.test.annotation.NotTransactional;
 @SuppressWarnings("deprecation")
 public class AuditLogBehaviorTest extends BaseBehaviorTest {
 	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
 	@Test
 	@NotTransactional
 	public void shouldCreateAnAuditLogEntryWhenANewObjectIsCreated() {
@@ -154,6 +166,152 @@ public class AuditLogBehaviorTest extends BaseBehaviorTest {
 		assertEquals(newVersion, AuditLogUtil.getNewValueOfUpdatedItem("version", auditLog));
 	}
 	
+	@Test
+	@NotTransactional
+	public void shouldSerializeTheChangesInParallelIfTheParallelSerializationThresholdIsReached() throws Exception {
+		AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_PARALLEL_SERIALIZATION_THRESHOLD, "1");
+		try {
+			//Update enough objects in one transaction for their data to be split in at least 2 chunks
+			final Integer[] encounterTypeIds = { 1, 2, 6 };
+			final Integer[] conceptIds = { 3, 5089, 7 };
+			new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+				
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					for (Integer id : encounterTypeIds) {
+						EncounterType encounterType = encounterService.getEncounterType(id);
+						encounterType.setDescription("New Description-" + id);
+						encounterService.saveEncounterType(encounterType);
+					}
+					for (Integer id : conceptIds) {
+						Concept concept = conceptService.getConcept(id);
+						concept.setVersion("Version-" + id);
+						conceptService.saveConcept(concept);
+					}
+				}
+			});
+			
+			assertEquals(encounterTypeIds.length + conceptIds.length, getAllLogs().size());
+			for (Integer id : encounterTypeIds) {
+				List<AuditLog> logs = getAllLogs(id, EncounterType.class, null);
+				assertEquals(1, logs.size());
+				assertEquals(UPDATED, logs.get(0).getAction());
+				assertEquals(1, AuditLogUtil.getChangesOfUpdatedItem(logs.get(0)).size());
+				assertEquals("New Description-" + id, AuditLogUtil.getNewValueOfUpdatedItem("description", logs.get(0)));
+			}
+			for (Integer id : conceptIds) {
+				List<AuditLog> logs = getAllLogs(id, Concept.class, null);
+				assertEquals(1, logs.size());
+				assertEquals(UPDATED, logs.get(0).getAction());
+				assertEquals(1, AuditLogUtil.getChangesOfUpdatedItem(logs.get(0)).size());
+				assertEquals("Version-" + id, AuditLogUtil.getNewValueOfUpdatedItem("version", logs.get(0)));
+			}
+		}
+		finally {
+			AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_PARALLEL_SERIALIZATION_THRESHOLD, "500");
+		}
+	}
+	
+	@Test
+	@NotTransactional
+	public void shouldMergeConsecutiveUpdatesByTheSameUserWithinTheCoalescingWindow() throws Exception {
+		AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_COALESCING_WINDOWS, "org.openmrs.EncounterType:60");
+		try {
+			EncounterType encounterType = encounterService.getEncounterType(2);
+			String originalName = encounterType.getName();
+			String originalDescription = encounterType.getDescription();
+			encounterType.setName("first name");
+			encounterService.saveEncounterType(encounterType);
+			encounterType.setName("second name");
+			encounterType.setDescription("new description");
+			encounterService.saveEncounterType(encounterType);
+			
+			List<AuditLog> logs = getAllLogs(encounterType.getId(), EncounterType.class, null);
+			assertEquals(1, logs.size());
+			AuditLog auditLog = logs.get(0);
+			assertEquals(UPDATED, auditLog.getAction());
+			assertEquals(2, AuditLogUtil.getChangesOfUpdatedItem(auditLog).size());
+			assertEquals(originalName, AuditLogUtil.getPreviousValueOfUpdatedItem("name", auditLog));
+			assertEquals("second name", AuditLogUtil.getNewValueOfUpdatedItem("name", auditLog));
+			assertEquals(originalDescription, AuditLogUtil.getPreviousValueOfUpdatedItem("description", auditLog));
+			assertEquals("new description", AuditLogUtil.getNewValueOfUpdatedItem("description", auditLog));
+		}
+		finally {
+			AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_COALESCING_WINDOWS, "");
+		}
+	}
+	
+	@Test
+	@NotTransactional
+	public void shouldRebuildTheIndexAndDropTheRevertedPropertiesOfAMergedLog() throws Exception {
+		AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_COALESCING_WINDOWS, "org.openmrs.EncounterType:60");
+		AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_INDEX_CHANGED_VALUES, "true");
+		try {
+			EncounterType encounterType = encounterService.getEncounterType(2);
+			String originalName = encounterType.getName();
+			String originalDescription = encounterType.getDescription();
+			encounterType.setName("Malaria visit");
+			encounterService.saveEncounterType(encounterType);
+			encounterType.setName("Cholera visit");
+			encounterType.setDescription("new description");
+			encounterService.saveEncounterType(encounterType);
+			encounterType.setDescription(originalDescription);
+			encounterService.saveEncounterType(encounterType);
+			
+			List<AuditLog> logs = getAllLogs(encounterType.getId(), EncounterType.class, null);
+			assertEquals(1, logs.size());
+			AuditLog auditLog = logs.get(0);
+			assertEquals(1, AuditLogUtil.getChangesOfUpdatedItem(auditLog).size());
+			assertEquals(originalName, AuditLogUtil.getPreviousValueOfUpdatedItem("name", auditLog));
+			assertEquals("Cholera visit", AuditLogUtil.getNewValueOfUpdatedItem("name", auditLog));
+			//The words are indexed by a background thread after the transactions commit
+			ChangedValueIndexWriter.awaitPendingWrites(10);
+			assertEquals(0, auditLogService.searchChangedValues("malaria", null, null).size());
+			List<String> uuids = auditLogService.searchChangedValues("cholera", null, null);
+			assertEquals(1, uuids.size());
+			assertEquals(auditLog.getUuid(), uuids.get(0));
+			List<Class<?>> clazzes = new ArrayList<Class<?>>();
+			clazzes.add(EncounterType.class);
+			assertEquals(0, auditLogService.getAuditLogsByChangedProperties(clazzes,
+			    Collections.singletonList("description"), null, null, null, null).size());
+		}
+		finally {
+			AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_COALESCING_WINDOWS, "");
+			AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_INDEX_CHANGED_VALUES, "false");
+		}
+	}
+	
+	@Test
+	@NotTransactional
+	public void shouldStoreDigestsForTextValuesLongerThanTheLargeValueThreshold() throws Exception {
+		AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_LARGE_VALUE_THRESHOLD, "20");
+		try {
+			EncounterType encounterType = encounterService.getEncounterType(2);
+			String originalDescription = encounterType.getDescription();
+			String newDescription = "first line\nsecond line\nthird line";
+			encounterType.setDescription(newDescription);
+			encounterService.saveEncounterType(encounterType);
+			
+			List<AuditLog> logs = getAllLogs(encounterType.getId(), EncounterType.class, null);
+			assertEquals(1, logs.size());
+			AuditLog auditLog = logs.get(0);
+			Map<String, Object> newValue = (Map<String, Object>) AuditLogUtil.getNewValueOfUpdatedItem("description",
+			    auditLog);
+			assertEquals(DigestUtil.createDigest(newDescription).get(DigestUtil.KEY_HASH), newValue.get(DigestUtil.KEY_HASH));
+			assertEquals(newDescription.length(), newValue.get(DigestUtil.KEY_LENGTH));
+			assertEquals(DigestUtil.createLineDelta(originalDescription, newDescription, 20),
+			    newValue.get(DigestUtil.KEY_DELTA));
+			Map<String, Object> previousValue = (Map<String, Object>) AuditLogUtil.getPreviousValueOfUpdatedItem(
+			    "description", auditLog);
+			assertEquals(DigestUtil.createDigest(originalDescription).get(DigestUtil.KEY_HASH),
+			    previousValue.get(DigestUtil.KEY_HASH));
+			assertFalse(previousValue.containsKey(DigestUtil.KEY_DELTA));
+		}
+		finally {
+			AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_LARGE_VALUE_THRESHOLD, "");
+		}
+	}
+	
 	@Test
 	@NotTransactional
 	public void shouldCreateNoLogEntryIfNoChangesAreMadeToAnExistingObject() throws Exception {
@@ -566,4 +724,176 @@ public class AuditLogBehaviorTest extends BaseBehaviorTest {
 		assertEquals(oldName, AuditLogUtil.getPreviousValueOfUpdatedItem("name", log));
 		assertEquals(newName, AuditLogUtil.getNewValueOfUpdatedItem("name", log));
 	}
+	
+	@Test
+	@NotTransactional
+	public void shouldAssignTimeOrderedUuidsToTheSavedLogs() throws Exception {
+		EncounterType encounterType = encounterService.getEncounterType(6);
+		encounterService.purgeEncounterType(encounterType);
+		List<AuditLog> logs = getAllLogs(encounterType.getId(), EncounterType.class, null);
+		assertEquals(1, logs.size());
+		assertEquals(7, UUID.fromString(logs.get(0).getUuid()).version());
+	}
+	
+	@Test
+	@NotTransactional
+	public void shouldRecordTheNamesOfTheChangedProperties() throws Exception {
+		EncounterType encounterType = encounterService.getEncounterType(1);
+		encounterType.setName("new name");
+		encounterService.saveEncounterType(encounterType);
+		List<Class<?>> clazzes = new ArrayList<Class<?>>();
+		clazzes.add(EncounterType.class);
+		List<AuditLog> logs = auditLogService.getAuditLogsByChangedProperties(clazzes, Collections.singletonList("name"),
+		    null, null, null, null);
+		assertEquals(1, logs.size());
+		assertEquals(UPDATED, logs.get(0).getAction());
+		assertEquals(0, auditLogService.getAuditLogsByChangedProperties(clazzes,
+		    Collections.singletonList("description"), null, null, null, null).size());
+	}
+	
+	@Test
+	@NotTransactional
+	public void shouldIndexTheWordsInTheChangedValuesIfEnabled() throws Exception {
+		AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_INDEX_CHANGED_VALUES, "true");
+		try {
+			EncounterType encounterType = encounterService.getEncounterType(1);
+			encounterType.setName("Malaria follow-up");
+			encounterService.saveEncounterType(encounterType);
+			List<AuditLog> logs = getAllLogs(encounterType.getId(), EncounterType.class, null);
+			assertEquals(1, logs.size());
+			//The words are indexed by a background thread after the transaction commits
+			ChangedValueIndexWriter.awaitPendingWrites(10);
+			List<String> uuids = auditLogService.searchChangedValues("FOLLOW malaria", null, null);
+			assertEquals(1, uuids.size());
+			assertEquals(logs.get(0).getUuid(), uuids.get(0));
+			assertEquals(0, auditLogService.searchChangedValues("malaria", Collections.singletonList("description"), null)
+			        .size());
+		}
+		finally {
+			AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_INDEX_CHANGED_VALUES, "false");
+		}
+	}
+	
+	@Test
+	@NotTransactional
+	public void shouldIndexTheWordsInTheChangedValuesOfExistingLogsWhenTheIndexIsRebuilt() throws Exception {
+		EncounterType encounterType = encounterService.getEncounterType(1);
+		encounterType.setName("Malaria follow-up");
+		encounterService.saveEncounterType(encounterType);
+		assertEquals(0, auditLogService.searchChangedValues("malaria", null, null).size());
+		
+		Integer maxAuditLogId = auditLogService.getMaxAuditLogId();
+		assertEquals(1, auditLogService.rebuildChangedValueIndex(1, maxAuditLogId));
+		assertEquals(1, auditLogService.searchChangedValues("malaria", null, null).size());
+		assertEquals(0, auditLogService.rebuildChangedValueIndex(maxAuditLogId + 1, maxAuditLogId + 1000));
+	}
+	
+	@Test
+	@NotTransactional
+	public void shouldReconstructTheStateOfAnObjectAtAGivenDateFromTheSnapshots() throws Exception {
+		AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_SNAPSHOT_INTERVAL, "2");
+		try {
+			EncounterType encounterType = encounterService.getEncounterType(2);
+			String originalName = encounterType.getName();
+			String originalDescription = encounterType.getDescription();
+			Date beforeFirstUpdate = new Date();
+			Thread.sleep(10);
+			encounterType.setName("first name");
+			encounterService.saveEncounterType(encounterType);
+			Thread.sleep(10);
+			Date afterFirstUpdate = new Date();
+			Thread.sleep(10);
+			encounterType.setName("second name");
+			encounterService.saveEncounterType(encounterType);
+			Thread.sleep(10);
+			Date afterSecondUpdate = new Date();
+			Thread.sleep(10);
+			encounterType.setName("third name");
+			encounterService.saveEncounterType(encounterType);
+			
+			Integer id = encounterType.getId();
+			assertEquals(originalName, auditLogService.getStateAt(EncounterType.class, id, beforeFirstUpdate).get("name"));
+			assertEquals("first name", auditLogService.getStateAt(EncounterType.class, id, afterFirstUpdate).get("name"));
+			Map<String, Object> state = auditLogService.getStateAt(EncounterType.class, id, afterSecondUpdate);
+			assertEquals("second name", state.get("name"));
+			assertEquals(originalDescription, state.get("description"));
+			assertEquals("third name", auditLogService.getStateAt(EncounterType.class, id, new Date()).get("name"));
+		}
+		finally {
+			AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_SNAPSHOT_INTERVAL, "");
+		}
+	}
+	
+	@Test
+	@NotTransactional
+	public void shouldPointAnObjectToItsLatestAuditLogWhenTheLogIsSaved() throws Exception {
+		EncounterType encounterType = encounterService.getEncounterType(6);
+		assertNull(auditLogService.getLatestAuditLog(EncounterType.class, encounterType.getId()));
+		encounterType.setName("Some new name");
+		encounterService.saveEncounterType(encounterType);
+		AuditLog latest = auditLogService.getLatestAuditLog(EncounterType.class, encounterType.getId());
+		assertEquals(UPDATED, latest.getAction());
+		assertEquals(Context.getAuthenticatedUser(), latest.getUser());
+		
+		encounterService.purgeEncounterType(encounterType);
+		latest = auditLogService.getLatestAuditLog(EncounterType.class, encounterType.getId());
+		assertEquals(DELETED, latest.getAction());
+		List<AuditLog> deletedLogs = auditLogService.getRecentlyDeletedAuditLogs(
+		    Collections.<Class<?>> singletonList(EncounterType.class), null, null);
+		assertEquals(1, deletedLogs.size());
+		assertEquals(latest, deletedLogs.get(0));
+	}
+	
+	@Test
+	@NotTransactional
+	public void shouldPointAnObjectToItsLatestAuditLogWhenTheFirstLogsAreSavedConcurrently() throws Exception {
+		final Integer encounterTypeId = 2;
+		assertNull(auditLogService.getLatestAuditLog(EncounterType.class, encounterTypeId));
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		final Set<Thread> threads = new LinkedHashSet<Thread>();
+		for (int i = 0; i < 2; i++) {
+			threads.add(new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						Context.openSession();
+						Context.authenticate("admin", "test");
+						EncounterService es = Context.getEncounterService();
+						EncounterType encounterType = es.getEncounterType(encounterTypeId);
+						encounterType.setDescription("New Description-" + Thread.currentThread().getName());
+						startSignal.await();
+						es.saveEncounterType(encounterType);
+					}
+					catch (Throwable t) {
+						errors.add(t);
+					}
+					finally {
+						Context.closeSession();
+					}
+				}
+			}, Integer.toString(i)));
+		}
+		
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		startSignal.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		
+		assertTrue(errors.isEmpty());
+		List<AuditLog> logs = getAllLogs(encounterTypeId, EncounterType.class, null);
+		assertEquals(2, logs.size());
+		AuditLog latest = auditLogService.getLatestAuditLog(EncounterType.class, encounterTypeId);
+		assertEquals(Math.max(logs.get(0).getAuditLogId(), logs.get(1).getAuditLogId()), latest.getAuditLogId()
+		        .intValue());
+		//The rest of the work done for each log after pointing the object to it should not be skipped
+		List<AuditLog> changedLogs = auditLogService.getAuditLogsByChangedProperties(
+		    Collections.<Class<?>> singletonList(EncounterType.class), Collections.singletonList("description"), null,
+		    null, null, null);
+		assertEquals(2, changedLogs.size());
+	}
 }
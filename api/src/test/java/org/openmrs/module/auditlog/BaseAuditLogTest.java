@@ -32,7 +32,10 @@ import org.openmrs.module.auditlog.strategy.AuditStrategy;
 import org.openmrs.module.auditlog.strategy.ConfigurableAuditStrategy;
 import org.openmrs.module.auditlog.strategy.ExceptionBasedAuditStrategy;
 import org.openmrs.module.auditlog.util.AuditLogConstants;
+import org.openmrs.module.auditlog.util.AuditLogTypeDictionary;
 import org.openmrs.module.auditlog.util.AuditLogUtil;
+import org.openmrs.module.auditlog.util.ObjectStateCache;
+import org.openmrs.module.auditlog.util.PropertyNameDictionary;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 import org.openmrs.util.OpenmrsUtil;
 
@@ -52,6 +55,10 @@ public abstract class BaseAuditLogTest extends BaseModuleContextSensitiveTest {
 	public void before() throws Exception {
 		auditLogService = Context.getService(AuditLogService.class);
 		helper = Context.getRegisteredComponents(AuditLogHelper.class).get(0);
+		//The ids of the types cached by previous tests are gone with their rows
+		AuditLogTypeDictionary.getInstance().clear();
+		PropertyNameDictionary.getInstance().clear();
+		ObjectStateCache.getInstance().clear();
 		executeDataSet(MODULE_TEST_DATA);
 		String exceptionsGpValue = "org.openmrs.Concept,org.openmrs.EncounterType,org.openmrs.PatientIdentifierType";
 		setAuditConfiguration(AuditStrategy.NONE_EXCEPT, exceptionsGpValue, false);
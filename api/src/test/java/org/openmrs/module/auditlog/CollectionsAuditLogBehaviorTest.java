@@ -816,6 +816,79 @@ public class CollectionsAuditLogBehaviorTest extends BaseBehaviorTest {
         assertTrue(compareMaps(expectedMap, (Map) propertyNameValueMap.get("userProperties")));
     }
 
+    @Test
+    @NotTransactional
+    public void shouldNotSerializeCollectionsForADeletedItemIfTheCollectionSizeLimitIsZero() throws Exception {
+        executeDataSet("org/openmrs/api/include/UserServiceTest.xml");
+        AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_STORE_LAST_STATE_OF_DELETED_ITEMS, "true");
+        AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_DELETED_ITEMS_COLLECTION_SIZE_LIMIT, "0");
+        try {
+            UserService us = Context.getUserService();
+            User user = us.getUser(505);
+            assertEquals(1, user.getUserProperties().size());
+            startAuditing(User.class);
+            us.purgeUser(user);
+            List<AuditLog> logs = getAllLogs(user.getId(), User.class, Collections.singletonList(DELETED));
+            assertEquals(1, logs.size());
+            String serializedData = AuditLogUtil.getAsString(logs.get(0).getSerializedData());
+            Map<String, Object> propertyNameValueMap = new ObjectMapper().readValue(serializedData, Map.class);
+            assertEquals(user.getUserId().toString(), propertyNameValueMap.get("userId").toString());
+            assertFalse(propertyNameValueMap.containsKey("userProperties"));
+        }
+        finally {
+            AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_DELETED_ITEMS_COLLECTION_SIZE_LIMIT, "");
+        }
+    }
+
+    @Test
+    @NotTransactional
+    public void shouldNotSerializeCollectionsForADeletedItemIfTheSerializationDepthIsZero() throws Exception {
+        executeDataSet("org/openmrs/api/include/UserServiceTest.xml");
+        AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_STORE_LAST_STATE_OF_DELETED_ITEMS, "true");
+        AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_DELETED_ITEMS_SERIALIZATION_DEPTH, "0");
+        try {
+            UserService us = Context.getUserService();
+            User user = us.getUser(505);
+            assertEquals(1, user.getUserProperties().size());
+            startAuditing(User.class);
+            us.purgeUser(user);
+            List<AuditLog> logs = getAllLogs(user.getId(), User.class, Collections.singletonList(DELETED));
+            assertEquals(1, logs.size());
+            String serializedData = AuditLogUtil.getAsString(logs.get(0).getSerializedData());
+            Map<String, Object> propertyNameValueMap = new ObjectMapper().readValue(serializedData, Map.class);
+            assertEquals(user.getUserId().toString(), propertyNameValueMap.get("userId").toString());
+            assertFalse(propertyNameValueMap.containsKey("userProperties"));
+            assertFalse(propertyNameValueMap.containsKey("roles"));
+        }
+        finally {
+            AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_DELETED_ITEMS_SERIALIZATION_DEPTH, "");
+        }
+    }
+
+    @Test
+    @NotTransactional
+    public void shouldNotLimitTheCollectionsInASnapshotByTheDeletedItemsCollectionSizeLimit() throws Exception {
+        executeDataSet("org/openmrs/api/include/UserServiceTest.xml");
+        AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_DELETED_ITEMS_COLLECTION_SIZE_LIMIT, "0");
+        AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_SNAPSHOT_INTERVAL, "1");
+        try {
+            UserService us = Context.getUserService();
+            User user = us.getUser(505);
+            assertEquals(1, user.getUserProperties().size());
+            startAuditing(User.class);
+            user.setUsername("new username");
+            us.saveUser(user, null);
+            assertEquals(1, getAllLogs(user.getId(), User.class, null).size());
+            Map<String, Object> state = auditLogService.getStateAt(User.class, user.getId(), new Date());
+            assertEquals("new username", state.get("username"));
+            assertEquals(1, ((Map) state.get("userProperties")).size());
+        }
+        finally {
+            AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_DELETED_ITEMS_COLLECTION_SIZE_LIMIT, "");
+            AuditLogUtil.setGlobalProperty(AuditLogConstants.GP_SNAPSHOT_INTERVAL, "");
+        }
+    }
+
     /**
      * This tests assumes that the owner has other changes
      *
@@ -1130,6 +1203,28 @@ public class CollectionsAuditLogBehaviorTest extends BaseBehaviorTest {
         assertEquals(0, tagLogs.size());
     }
 
+    @Test
+    @NotTransactional
+    public void shouldNotMarkTheParentAsEditedWhenACollectionIsReplacedWithAnInstanceWithTheSameItems() throws Exception {
+        executeDataSet("org/openmrs/api/include/LocationServiceTest-initialData.xml");
+        LocationService ls = Context.getLocationService();
+        Location location = ls.getLocation(2);
+        ls.saveLocation(location);
+        assertEquals(2, location.getTags().size());
+
+        startAuditing(Location.class);
+        startAuditing(LocationTag.class);
+        Collection<LocationTag> originalColl = location.getTags();
+        location.setTags(new HashSet<LocationTag>(originalColl));
+
+        ls.saveLocation(location);
+
+        assertTrue(originalColl != location.getTags());
+        assertEquals(2, location.getTags().size());
+        assertEquals(0, getAllLogs(location.getId(), Location.class, null).size());
+        assertTrue(getAllLogs().isEmpty());
+    }
+
     /**
      * For this test we remove the item by replacing the collection with a nw instance that doesn't
      * contain it
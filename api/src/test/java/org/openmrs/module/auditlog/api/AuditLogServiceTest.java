@@ -3,12 +3,12 @@
  * Version 1.0 (the "License"); you may not use this file except in
  * compliance with the License. You may obtain a copy of the License at
  * http://license.openmrs.org
- *
+ * 
  * Software distributed under the License is distributed on an "AS IS"
  * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
  * License for the specific language governing rights and limitations
  * under the License.
- *
+ * 
  * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
  */
 package org.openmrs.module.auditlog.api;
@@ -19,10 +19,21 @@ import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.junit.Rule;
@@ -34,13 +45,17 @@ import org.openmrs.ConceptName;
 import org.openmrs.ConceptNumeric;
 import org.openmrs.Location;
 import org.openmrs.OpenmrsObject;
+import org.openmrs.User;
 import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.auditlog.AuditLog;
 import org.openmrs.module.auditlog.AuditLog.Action;
+import org.openmrs.module.auditlog.AuditLogSummary;
 import org.openmrs.module.auditlog.BaseAuditLogTest;
 import org.openmrs.module.auditlog.api.db.AuditLogDAO;
 import org.openmrs.module.auditlog.strategy.AuditStrategy;
+import org.openmrs.module.auditlog.util.ContinuationToken;
+import org.openmrs.module.auditlog.util.NetChanges;
 import org.openmrs.test.Verifies;
 import org.openmrs.util.OpenmrsUtil;
 
@@ -313,4 +328,704 @@ public class AuditLogServiceTest extends BaseAuditLogTest {
 		startAuditing(AuditLog.class);
 		assertEquals(false, auditLogService.isAudited(AuditLog.class));
 	}
+	
+	/**
+	 * @verifies return the ids of the collection elements of each owner
+	 * @see AuditLogDAO#getCollectionElements(String, java.util.Collection, boolean)
+	 */
+	@Test
+	public void getCollectionElements_shouldReturnTheIdsOfTheCollectionElementsOfEachOwner() throws Exception {
+		Concept concept = Context.getConceptService().getConcept(5089);
+		List<Object> expectedIds = new ArrayList<Object>();
+		for (ConceptName name : concept.getNames(true)) {
+			expectedIds.add(name.getConceptNameId());
+		}
+		assertTrue(expectedIds.size() > 1);
+		Map<java.io.Serializable, List<Object>> ownerIdElementsMap = getAuditLogDAO().getCollectionElements(
+		    "org.openmrs.Concept.names", Arrays.<java.io.Serializable> asList(5089, -1), true);
+		assertEquals(1, ownerIdElementsMap.size());
+		List<Object> ids = ownerIdElementsMap.get(5089);
+		assertEquals(expectedIds.size(), ids.size());
+		assertTrue(ids.containsAll(expectedIds));
+	}
+	
+	/**
+	 * @verifies return the collection elements of each owner if ids only is false
+	 * @see AuditLogDAO#getCollectionElements(String, java.util.Collection, boolean)
+	 */
+	@Test
+	public void getCollectionElements_shouldReturnTheCollectionElementsOfEachOwnerIfIdsOnlyIsFalse() throws Exception {
+		Concept concept = Context.getConceptService().getConcept(5089);
+		Map<java.io.Serializable, List<Object>> ownerIdElementsMap = getAuditLogDAO().getCollectionElements(
+		    "org.openmrs.Concept.names", Collections.<java.io.Serializable> singleton(5089), false);
+		List<Object> names = ownerIdElementsMap.get(5089);
+		assertEquals(concept.getNames(true).size(), names.size());
+		assertTrue(names.containsAll(concept.getNames(true)));
+	}
+	
+	/**
+	 * @verifies return the most recent audit log for the object
+	 * @see AuditLogDAO#getMostRecentAuditLog(Class, java.io.Serializable, Date)
+	 */
+	@Test
+	public void getMostRecentAuditLog_shouldReturnTheMostRecentAuditLogForTheObject() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		Calendar cal = Calendar.getInstance();
+		cal.set(2012, Calendar.APRIL, 1, 0, 0, 0);
+		AuditLog al = getAuditLogDAO().getMostRecentAuditLog(ConceptNumeric.class, 5089, cal.getTime());
+		assertEquals("4f7d57f0-9077-11e1-aaa4-00248140a5ec", al.getUuid());
+		cal.set(Calendar.MINUTE, 2);
+		assertNull(getAuditLogDAO().getMostRecentAuditLog(ConceptNumeric.class, 5089, cal.getTime()));
+	}
+	
+	/**
+	 * Checks the indexes defined in the mapping file against hand written queries for each filter,
+	 * it doesn't check the SQL generated by {@link AuditLogDAO}
+	 */
+	@Test
+	public void shouldMapAnIndexForEachAuditLogFilter() throws Exception {
+		Connection connection = getConnection();
+		Statement statement = connection.createStatement();
+		String[] types = { Concept.class.getName(), ConceptName.class.getName(), Location.class.getName() };
+		for (int i = 0; i < types.length; i++) {
+			statement.executeUpdate("insert into auditlog_type (type_id, classname) values (" + (i + 1) + ", '" + types[i]
+			        + "')");
+		}
+		statement.close();
+		PreparedStatement ps = connection.prepareStatement("insert into auditlog_audit_log (type_id, identifier, "
+		        + "numeric_identifier, action, user_id, date_created, openmrs_version, module_version, uuid) "
+		        + "values (?, ?, ?, ?, 1, ?, '1.8', '1.0', ?)");
+		long time = System.currentTimeMillis();
+		for (int i = 0; i < 500; i++) {
+			ps.setInt(1, i % types.length + 1);
+			ps.setString(2, Integer.toString(i));
+			ps.setLong(3, i);
+			ps.setString(4, Action.UPDATED.name());
+			ps.setTimestamp(5, new Timestamp(time - i * 60000L));
+			ps.setString(6, UUID.randomUUID().toString());
+			ps.addBatch();
+		}
+		ps.executeBatch();
+		ps.close();
+		
+		String select = "select * from auditlog_audit_log where ";
+		String orderBy = " order by date_created desc";
+		assertTrue(getQueryPlan(connection,
+		    select + "type_id = 1 and identifier = '3'" + orderBy).contains(
+		    "AUDITLOG_TYPE_IDENTIFIER_DATE_IDX"));
+		assertTrue(getQueryPlan(connection, select + "type_id = 1 and numeric_identifier = 3" + orderBy).contains(
+		    "AUDITLOG_TYPE_NUMERIC_ID_DATE_IDX"));
+		assertTrue(getQueryPlan(connection, select + "parent_auditlog_id = 1" + orderBy).contains(
+		    "AUDITLOG_PARENT_DATE_IDX"));
+		assertTrue(getQueryPlan(connection, select + "date_created >= '2012-04-01 00:00:00'" + orderBy).contains(
+		    "AUDITLOG_DATE_CREATED_IDX"));
+		assertTrue(getQueryPlan(connection, select + "user_id = 1 and date_created >= '2012-04-01 00:00:00'" + orderBy)
+		        .contains("AUDITLOG_USER_DATE_IDX"));
+	}
+	
+	private String getQueryPlan(Connection connection, String sql) throws Exception {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet resultSet = statement.executeQuery("explain " + sql);
+			resultSet.next();
+			return resultSet.getString(1).toUpperCase();
+		}
+		finally {
+			statement.close();
+		}
+	}
+	
+	/**
+	 * @verifies return the first page if no continuation token is specified
+	 * @see AuditLogService#getAuditLogsAfter(List, List, org.openmrs.User, Date, Date, boolean, String,
+	 *      Integer)
+	 */
+	@Test
+	public void getAuditLogsAfter_shouldReturnTheFirstPageIfNoContinuationTokenIsSpecified() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<AuditLog> auditLogs = auditLogService.getAuditLogsAfter(null, null, null, null, null, false, null, 4);
+		assertEquals(4, auditLogs.size());
+		assertEquals(6, auditLogs.get(0).getAuditLogId().intValue());
+		assertEquals(5, auditLogs.get(1).getAuditLogId().intValue());
+		assertEquals(4, auditLogs.get(2).getAuditLogId().intValue());
+		assertEquals(3, auditLogs.get(3).getAuditLogId().intValue());
+	}
+	
+	/**
+	 * @verifies return the page after the specified continuation token
+	 * @see AuditLogService#getAuditLogsAfter(List, List, org.openmrs.User, Date, Date, boolean, String,
+	 *      Integer)
+	 */
+	@Test
+	public void getAuditLogsAfter_shouldReturnThePageAfterTheSpecifiedContinuationToken() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<AuditLog> firstPage = auditLogService.getAuditLogsAfter(null, null, null, null, null, false, null, 4);
+		String token = ContinuationToken.create(firstPage.get(firstPage.size() - 1));
+		//logs 1, 2 and 3 have the same date created
+		List<AuditLog> secondPage = auditLogService.getAuditLogsAfter(null, null, null, null, null, false, token, 4);
+		assertEquals(2, secondPage.size());
+		assertEquals(2, secondPage.get(0).getAuditLogId().intValue());
+		assertEquals(1, secondPage.get(1).getAuditLogId().intValue());
+		
+		token = ContinuationToken.create(secondPage.get(secondPage.size() - 1));
+		assertTrue(auditLogService.getAuditLogsAfter(null, null, null, null, null, false, token, 4).isEmpty());
+	}
+	
+	/**
+	 * @verifies fail for an invalid continuation token
+	 * @see AuditLogService#getAuditLogsAfter(List, List, org.openmrs.User, Date, Date, boolean, String,
+	 *      Integer)
+	 */
+	@Test
+	public void getAuditLogsAfter_shouldFailForAnInvalidContinuationToken() throws Exception {
+		expectedException.expect(APIException.class);
+		expectedException.expectMessage("Invalid continuation token");
+		auditLogService.getAuditLogsAfter(null, null, null, null, null, false, "invalid", 4);
+	}
+	
+	/**
+	 * @verifies return the number of all audit logs in the database if all args are null
+	 * @see AuditLogService#countAuditLogs(List, List, Date, Date, boolean)
+	 */
+	@Test
+	public void countAuditLogs_shouldReturnTheNumberOfAllAuditLogsInTheDatabaseIfAllArgsAreNull() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		assertEquals(6, auditLogService.countAuditLogs(null, null, null, null, false).intValue());
+	}
+	
+	/**
+	 * @verifies count the logs matching the specified arguments
+	 * @see AuditLogService#countAuditLogs(List, List, Date, Date, boolean)
+	 */
+	@Test
+	public void countAuditLogs_shouldCountTheLogsMatchingTheSpecifiedArguments() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<Class<?>> clazzes = new ArrayList<Class<?>>();
+		clazzes.add(Concept.class);
+		assertEquals(3, auditLogService.countAuditLogs(clazzes, null, null, null, false).intValue());
+		List<Action> actions = new ArrayList<Action>();
+		actions.add(Action.UPDATED);
+		assertEquals(2, auditLogService.countAuditLogs(clazzes, actions, null, null, false).intValue());
+		Calendar cal = Calendar.getInstance();
+		cal.set(2012, Calendar.APRIL, 1, 0, 2, 0);
+		assertEquals(1, auditLogService.countAuditLogs(clazzes, actions, cal.getTime(), null, false).intValue());
+		assertEquals(4, auditLogService.countAuditLogs(null, null, null, null, true).intValue());
+	}
+	
+	/**
+	 * @verifies return the number of audit logs if table statistics are not supported
+	 * @see AuditLogService#getEstimatedAuditLogCount()
+	 */
+	@Test
+	public void getEstimatedAuditLogCount_shouldReturnTheNumberOfAuditLogsIfTableStatisticsAreNotSupported()
+	    throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		assertEquals(6, auditLogService.getEstimatedAuditLogCount().intValue());
+	}
+	
+	/**
+	 * @verifies pass all the matching logs to the callback in order
+	 * @see AuditLogService#streamAuditLogs(List, List, Date, Date, boolean, AuditLogCallback)
+	 */
+	@Test
+	public void streamAuditLogs_shouldPassAllTheMatchingLogsToTheCallbackInOrder() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		final List<Integer> auditLogIds = new ArrayList<Integer>();
+		auditLogService.streamAuditLogs(null, null, null, null, true, new AuditLogCallback() {
+			
+			@Override
+			public void handle(AuditLog auditLog) throws Exception {
+				auditLogIds.add(auditLog.getAuditLogId());
+			}
+		});
+		assertEquals(4, auditLogIds.size());
+		assertEquals(6, auditLogIds.get(0).intValue());
+		assertEquals(5, auditLogIds.get(1).intValue());
+		assertEquals(4, auditLogIds.get(2).intValue());
+		assertEquals(1, auditLogIds.get(3).intValue());
+	}
+	
+	/**
+	 * @verifies fail if the callback fails
+	 * @see AuditLogService#streamAuditLogs(List, List, Date, Date, boolean, AuditLogCallback)
+	 */
+	@Test
+	public void streamAuditLogs_shouldFailIfTheCallbackFails() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		expectedException.expect(APIException.class);
+		expectedException.expectMessage("Failed to stream the audit logs");
+		auditLogService.streamAuditLogs(null, null, null, null, false, new AuditLogCallback() {
+			
+			@Override
+			public void handle(AuditLog auditLog) throws Exception {
+				throw new Exception("Failed to write the audit log");
+			}
+		});
+	}
+	
+	/**
+	 * @verifies match on the specified user
+	 * @see AuditLogService#getAuditLogsAfter(List, List, org.openmrs.User, Date, Date, boolean, String,
+	 *      Integer)
+	 */
+	@Test
+	public void getAuditLogsAfter_shouldMatchOnTheSpecifiedUser() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<AuditLog> auditLogs = auditLogService.getAuditLogsAfter(null, null, Context.getUserService().getUser(501),
+		    null, null, false, null, null);
+		assertEquals(1, auditLogs.size());
+		assertEquals(5, auditLogs.get(0).getAuditLogId().intValue());
+	}
+	
+	/**
+	 * @verifies get the saved objects matching the specified ids
+	 * @see AuditLogService#getObjectsByIds(Class, java.util.Collection)
+	 */
+	@Test
+	public void getObjectsByIds_shouldGetTheSavedObjectsMatchingTheSpecifiedIds() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		Map<String, AuditLog> idObjectMap = auditLogService.getObjectsByIds(AuditLog.class, Arrays.asList("1", " 4",
+		    "9999"));
+		assertEquals(2, idObjectMap.size());
+		assertEquals("4f7d57f0-9077-11e1-aaa4-00248140a5eb", idObjectMap.get("1").getUuid());
+		assertEquals(4, idObjectMap.get("4").getAuditLogId().intValue());
+	}
+	
+	/**
+	 * @verifies fetch the objects in batches if there are many ids
+	 * @see AuditLogService#getObjectsByIds(Class, java.util.Collection)
+	 */
+	@Test
+	public void getObjectsByIds_shouldFetchTheObjectsInBatchesIfThereAreManyIds() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<String> ids = new ArrayList<String>();
+		for (int i = 1200; i > 0; i--) {
+			ids.add(Integer.toString(i));
+		}
+		Map<String, AuditLog> idObjectMap = auditLogService.getObjectsByIds(AuditLog.class, ids);
+		assertEquals(6, idObjectMap.size());
+		for (int i = 1; i <= 6; i++) {
+			assertEquals(i, idObjectMap.get(Integer.toString(i)).getAuditLogId().intValue());
+		}
+	}
+	
+	/**
+	 * @verifies return only the ids of saved objects
+	 * @see AuditLogService#getExistingIds(Class, java.util.Collection)
+	 */
+	@Test
+	public void getExistingIds_shouldReturnOnlyTheIdsOfSavedObjects() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		Set<String> existingIds = auditLogService.getExistingIds(AuditLog.class, Arrays.asList("2", "3", "9999"));
+		assertEquals(2, existingIds.size());
+		assertTrue(existingIds.contains("2"));
+		assertTrue(existingIds.contains("3"));
+	}
+	
+	/**
+	 * @verifies return the number of child logs of each audit log
+	 * @see AuditLogService#getChildAuditLogCounts(java.util.Collection)
+	 */
+	@Test
+	public void getChildAuditLogCounts_shouldReturnTheNumberOfChildLogsOfEachAuditLog() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<AuditLog> auditLogs = new ArrayList<AuditLog>();
+		auditLogs.add(auditLogService.getObjectById(AuditLog.class, 1));
+		auditLogs.add(auditLogService.getObjectById(AuditLog.class, 4));
+		Map<Integer, Integer> idCountMap = auditLogService.getChildAuditLogCounts(auditLogs);
+		assertEquals(1, idCountMap.size());
+		assertEquals(2, idCountMap.get(1).intValue());
+		assertNull(idCountMap.get(4));
+	}
+	
+	/**
+	 * @verifies return the specified page of child logs
+	 * @see AuditLogService#getChildAuditLogs(AuditLog, Integer, Integer)
+	 */
+	@Test
+	public void getChildAuditLogs_shouldReturnTheSpecifiedPageOfChildLogs() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		AuditLog parent = auditLogService.getObjectById(AuditLog.class, 1);
+		List<AuditLog> childLogs = auditLogService.getChildAuditLogs(parent, 0, 1);
+		assertEquals(1, childLogs.size());
+		assertEquals(2, childLogs.get(0).getAuditLogId().intValue());
+		childLogs = auditLogService.getChildAuditLogs(parent, 1, 10);
+		assertEquals(1, childLogs.size());
+		assertEquals(3, childLogs.get(0).getAuditLogId().intValue());
+	}
+	
+	/**
+	 * @verifies return the logs that changed any of the properties
+	 * @see AuditLogService#getAuditLogsByChangedProperties(List, List, Date, Date, Integer, Integer)
+	 */
+	@Test
+	public void getAuditLogsByChangedProperties_shouldReturnTheLogsThatChangedAnyOfTheProperties() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<AuditLog> auditLogs = auditLogService.getAuditLogsByChangedProperties(null, Arrays.asList("units",
+		    "hiAbsolute"), null, null, null, null);
+		assertEquals(2, auditLogs.size());
+		assertEquals(5, auditLogs.get(0).getAuditLogId().intValue());
+		assertEquals(4, auditLogs.get(1).getAuditLogId().intValue());
+		auditLogs = auditLogService.getAuditLogsByChangedProperties(null, Collections.singletonList("units"), null, null,
+		    null, null);
+		assertEquals(1, auditLogs.size());
+		assertEquals(5, auditLogs.get(0).getAuditLogId().intValue());
+	}
+	
+	/**
+	 * @verifies match only the logs of the specified types
+	 * @see AuditLogService#getAuditLogsByChangedProperties(List, List, Date, Date, Integer, Integer)
+	 */
+	@Test
+	public void getAuditLogsByChangedProperties_shouldMatchOnlyTheLogsOfTheSpecifiedTypes() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<String> propertyNames = Collections.singletonList("hiAbsolute");
+		List<Class<?>> clazzes = new ArrayList<Class<?>>();
+		clazzes.add(ConceptNumeric.class);
+		assertEquals(2, auditLogService.getAuditLogsByChangedProperties(clazzes, propertyNames, null, null, null, null)
+		        .size());
+		clazzes.set(0, ConceptName.class);
+		assertEquals(0, auditLogService.getAuditLogsByChangedProperties(clazzes, propertyNames, null, null, null, null)
+		        .size());
+	}
+	
+	/**
+	 * @verifies return an empty list for unknown property names
+	 * @see AuditLogService#getAuditLogsByChangedProperties(List, List, Date, Date, Integer, Integer)
+	 */
+	@Test
+	public void getAuditLogsByChangedProperties_shouldReturnAnEmptyListForUnknownPropertyNames() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		assertEquals(0, auditLogService.getAuditLogsByChangedProperties(null, Collections.singletonList("someProperty"),
+		    null, null, null, null).size());
+	}
+	
+	/**
+	 * @verifies return the logs whose values contain all the words
+	 * @see AuditLogService#searchChangedValues(String, List, Integer)
+	 */
+	@Test
+	public void searchChangedValues_shouldReturnTheLogsWhoseValuesContainAllTheWords() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<String> uuids = auditLogService.searchChangedValues("100", null, null);
+		assertEquals(2, uuids.size());
+		assertEquals("4f7d57f0-9077-11e1-aaa4-00248140a5ed", uuids.get(0));
+		assertEquals("4f7d57f0-9077-11e1-aaa4-00248140a5ec", uuids.get(1));
+		uuids = auditLogService.searchChangedValues("100 MG", null, null);
+		assertEquals(1, uuids.size());
+		assertEquals("4f7d57f0-9077-11e1-aaa4-00248140a5ed", uuids.get(0));
+		assertEquals(1, auditLogService.searchChangedValues("100", null, 1).size());
+		assertEquals(0, auditLogService.searchChangedValues("100 kg", null, null).size());
+	}
+	
+	/**
+	 * @verifies match only the values of the specified properties
+	 * @see AuditLogService#searchChangedValues(String, List, Integer)
+	 */
+	@Test
+	public void searchChangedValues_shouldMatchOnlyTheValuesOfTheSpecifiedProperties() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		assertEquals(2, auditLogService.searchChangedValues("100", Collections.singletonList("hiAbsolute"), null).size());
+		assertEquals(0, auditLogService.searchChangedValues("100", Collections.singletonList("units"), null).size());
+		assertEquals(0, auditLogService.searchChangedValues("100", Collections.singletonList("someProperty"), null).size());
+	}
+	
+	/**
+	 * @verifies return an empty list if the text has no words
+	 * @see AuditLogService#searchChangedValues(String, List, Integer)
+	 */
+	@Test
+	public void searchChangedValues_shouldReturnAnEmptyListIfTheTextHasNoWords() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		assertEquals(0, auditLogService.searchChangedValues(" - ", null, null).size());
+		assertEquals(0, auditLogService.searchChangedValues(null, null, null).size());
+	}
+	
+	/**
+	 * @verifies replace the indexed words of the audit logs
+	 * @see AuditLogService#saveChangedValueIndex(Map)
+	 */
+	@Test
+	public void saveChangedValueIndex_shouldReplaceTheIndexedWordsOfTheAuditLogs() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		Map<Integer, Map<String, Set<String>>> auditLogIdTokens = new HashMap<Integer, Map<String, Set<String>>>();
+		auditLogIdTokens.put(4, Collections.singletonMap("units", Collections.singleton("kg")));
+		auditLogService.saveChangedValueIndex(auditLogIdTokens);
+		List<String> uuids = auditLogService.searchChangedValues("100", null, null);
+		assertEquals(1, uuids.size());
+		assertEquals("4f7d57f0-9077-11e1-aaa4-00248140a5ed", uuids.get(0));
+		uuids = auditLogService.searchChangedValues("kg", Collections.singletonList("units"), null);
+		assertEquals(1, uuids.size());
+		assertEquals("4f7d57f0-9077-11e1-aaa4-00248140a5ec", uuids.get(0));
+	}
+	
+	/**
+	 * @verifies return null if there is no snapshot to start from
+	 * @see AuditLogService#getStateAt(Class, java.io.Serializable, Date)
+	 */
+	@Test
+	public void getStateAt_shouldReturnNullIfThereIsNoSnapshotToStartFrom() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		assertNull(auditLogService.getStateAt(ConceptNumeric.class, 5089, new Date()));
+	}
+	
+	/**
+	 * @verifies fail if any argument is null
+	 * @see AuditLogService#getStateAt(Class, java.io.Serializable, Date)
+	 */
+	@Test(expected = APIException.class)
+	public void getStateAt_shouldFailIfAnyArgumentIsNull() throws Exception {
+		auditLogService.getStateAt(ConceptNumeric.class, 5089, null);
+	}
+	
+	/**
+	 * @verifies fold the changes of the logs in the period
+	 * @see AuditLogService#getNetChanges(Class, java.io.Serializable, Date, Date)
+	 */
+	@Test
+	public void getNetChanges_shouldFoldTheChangesOfTheLogsInThePeriod() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		NetChanges netChanges = auditLogService.getNetChanges(Concept.class, 5089, null, null);
+		assertEquals(Action.CREATED, netChanges.getAction());
+		assertEquals(2, netChanges.getAuditLogCount());
+		assertEquals(2, netChanges.getChildChanges().size());
+		
+		Calendar cal = Calendar.getInstance();
+		cal.set(2012, Calendar.APRIL, 1, 0, 0, 30);
+		netChanges = auditLogService.getNetChanges(Concept.class, 5089, cal.getTime(), null);
+		assertEquals(Action.UPDATED, netChanges.getAction());
+		assertEquals(1, netChanges.getAuditLogCount());
+		assertEquals(0, netChanges.getChildChanges().size());
+	}
+	
+	/**
+	 * @verifies fail if the class or id is null
+	 * @see AuditLogService#getNetChanges(Class, java.io.Serializable, Date, Date)
+	 */
+	@Test(expected = APIException.class)
+	public void getNetChanges_shouldFailIfTheClassOrIdIsNull() throws Exception {
+		auditLogService.getNetChanges(Concept.class, null, null, null);
+	}
+	
+	/**
+	 * @verifies get the logs for each object grouped by id
+	 * @see AuditLogService#getAuditLogsForObjects(Class, java.util.Collection, List, Date, Date,
+	 *      boolean, boolean)
+	 */
+	@Test
+	public void getAuditLogsForObjects_shouldGetTheLogsForEachObjectGroupedById() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		Map<String, List<AuditLog>> idAuditLogsMap = auditLogService.getAuditLogsForObjects(Concept.class,
+		    Arrays.asList("5089", "2001", "9999"), null, null, null, false, false);
+		assertEquals(2, idAuditLogsMap.size());
+		List<AuditLog> auditLogs = idAuditLogsMap.get("5089");
+		assertEquals(2, auditLogs.size());
+		assertEquals(4, auditLogs.get(0).getAuditLogId().intValue());
+		assertEquals(1, auditLogs.get(1).getAuditLogId().intValue());
+		assertEquals(1, idAuditLogsMap.get("2001").size());
+		assertEquals(5, idAuditLogsMap.get("2001").get(0).getAuditLogId().intValue());
+		
+		idAuditLogsMap = auditLogService.getAuditLogsForObjects(Concept.class, Arrays.asList("5089", "2001"),
+		    Collections.singletonList(Action.CREATED), null, null, false, false);
+		assertEquals(1, idAuditLogsMap.size());
+		assertEquals(1, idAuditLogsMap.get("5089").get(0).getAuditLogId().intValue());
+	}
+	
+	/**
+	 * @verifies only get the latest log for each object if latestOnly is true
+	 * @see AuditLogService#getAuditLogsForObjects(Class, java.util.Collection, List, Date, Date,
+	 *      boolean, boolean)
+	 */
+	@Test
+	public void getAuditLogsForObjects_shouldOnlyGetTheLatestLogForEachObjectIfLatestOnlyIsTrue() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		Map<String, List<AuditLog>> idAuditLogsMap = auditLogService.getAuditLogsForObjects(Concept.class,
+		    Arrays.asList("5089", "2001"), null, null, null, false, true);
+		assertEquals(2, idAuditLogsMap.size());
+		assertEquals(1, idAuditLogsMap.get("5089").size());
+		assertEquals(4, idAuditLogsMap.get("5089").get(0).getAuditLogId().intValue());
+		assertEquals(1, idAuditLogsMap.get("2001").size());
+		assertEquals(5, idAuditLogsMap.get("2001").get(0).getAuditLogId().intValue());
+	}
+	
+	/**
+	 * @verifies fetch the logs in batches if there are many ids
+	 * @see AuditLogService#getAuditLogsForObjects(Class, java.util.Collection, List, Date, Date,
+	 *      boolean, boolean)
+	 */
+	@Test
+	public void getAuditLogsForObjects_shouldFetchTheLogsInBatchesIfThereAreManyIds() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<String> ids = new ArrayList<String>();
+		for (int i = 6000; i > 0; i--) {
+			ids.add(Integer.toString(i));
+		}
+		Map<String, List<AuditLog>> idAuditLogsMap = auditLogService.getAuditLogsForObjects(Concept.class, ids, null,
+		    null, null, false, false);
+		assertEquals(2, idAuditLogsMap.size());
+		assertEquals(2, idAuditLogsMap.get("5089").size());
+		assertEquals(1, idAuditLogsMap.get("2001").size());
+	}
+	
+	/**
+	 * @verifies get the latest log for the object
+	 * @see AuditLogService#getLatestAuditLog(Class, java.io.Serializable)
+	 */
+	@Test
+	public void getLatestAuditLog_shouldGetTheLatestLogForTheObject() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		AuditLog auditLog = auditLogService.getLatestAuditLog(Concept.class, 5089);
+		assertEquals(4, auditLog.getAuditLogId().intValue());
+		assertEquals(Action.UPDATED, auditLog.getAction());
+		assertEquals(6, auditLogService.getLatestAuditLog(ConceptName.class, 1001).getAuditLogId().intValue());
+	}
+	
+	/**
+	 * @verifies return null if the object has no logs
+	 * @see AuditLogService#getLatestAuditLog(Class, java.io.Serializable)
+	 */
+	@Test
+	public void getLatestAuditLog_shouldReturnNullIfTheObjectHasNoLogs() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		assertNull(auditLogService.getLatestAuditLog(Concept.class, 9999));
+		assertNull(auditLogService.getLatestAuditLog(Location.class, 5089));
+	}
+	
+	/**
+	 * @verifies fail if the class or id is null
+	 * @see AuditLogService#getLatestAuditLog(Class, java.io.Serializable)
+	 */
+	@Test(expected = APIException.class)
+	public void getLatestAuditLog_shouldFailIfTheClassOrIdIsNull() throws Exception {
+		auditLogService.getLatestAuditLog(null, 5089);
+	}
+	
+	/**
+	 * @verifies get the logs of the objects whose latest change is a delete
+	 * @see AuditLogService#getRecentlyDeletedAuditLogs(List, Date, Integer)
+	 */
+	@Test
+	public void getRecentlyDeletedAuditLogs_shouldGetTheLogsOfTheObjectsWhoseLatestChangeIsADelete() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<AuditLog> auditLogs = auditLogService.getRecentlyDeletedAuditLogs(null, null, null);
+		assertEquals(1, auditLogs.size());
+		assertEquals(6, auditLogs.get(0).getAuditLogId().intValue());
+		
+		List<Class<?>> clazzes = new ArrayList<Class<?>>();
+		clazzes.add(Concept.class);
+		assertEquals(0, auditLogService.getRecentlyDeletedAuditLogs(clazzes, null, null).size());
+		
+		Calendar cal = Calendar.getInstance();
+		cal.set(2012, Calendar.APRIL, 1, 0, 6, 0);
+		assertEquals(0, auditLogService.getRecentlyDeletedAuditLogs(null, cal.getTime(), null).size());
+	}
+	
+	/**
+	 * @verifies return the summaries in the same order as the audit logs
+	 * @see AuditLogService#getAuditLogSummariesAfter(List, List, org.openmrs.User, Date, Date,
+	 *      boolean, String, Integer)
+	 */
+	@Test
+	public void getAuditLogSummariesAfter_shouldReturnTheSummariesInTheSameOrderAsTheAuditLogs() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<AuditLog> auditLogs = auditLogService.getAuditLogsAfter(null, null, null, null, null, false, null, null);
+		List<AuditLogSummary> summaries = auditLogService.getAuditLogSummariesAfter(null, null, null, null, null, false,
+		    null, null);
+		assertEquals(6, summaries.size());
+		for (int i = 0; i < auditLogs.size(); i++) {
+			AuditLog auditLog = auditLogs.get(i);
+			AuditLogSummary summary = summaries.get(i);
+			assertEquals(auditLog.getAuditLogId(), summary.getAuditLogId());
+			assertEquals(auditLog.getUuid(), summary.getUuid());
+			assertEquals(auditLog.getType(), summary.getType());
+			assertEquals(auditLog.getIdentifier(), summary.getIdentifier());
+			assertEquals(auditLog.getAction(), summary.getAction());
+			assertEquals(auditLog.getDateCreated().getTime(), summary.getDateCreated().getTime());
+		}
+		
+		List<Class<?>> clazzes = new ArrayList<Class<?>>();
+		clazzes.add(Concept.class);
+		summaries = auditLogService.getAuditLogSummariesAfter(clazzes, null, null, null, null, true, null, null);
+		assertEquals(3, summaries.size());
+		assertEquals(5, summaries.get(0).getAuditLogId().intValue());
+		assertEquals(4, summaries.get(1).getAuditLogId().intValue());
+		assertEquals(1, summaries.get(2).getAuditLogId().intValue());
+	}
+	
+	/**
+	 * @verifies include the user name and child log count
+	 * @see AuditLogService#getAuditLogSummariesAfter(List, List, org.openmrs.User, Date, Date,
+	 *      boolean, String, Integer)
+	 */
+	@Test
+	public void getAuditLogSummariesAfter_shouldIncludeTheUserNameAndChildLogCount() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<AuditLogSummary> summaries = auditLogService.getAuditLogSummariesAfter(null, null, null, null, null, true,
+		    null, null);
+		assertEquals(4, summaries.size());
+		AuditLogSummary summary = summaries.get(1);
+		assertEquals(5, summary.getAuditLogId().intValue());
+		User user = Context.getUserService().getUser(501);
+		assertEquals(user.getUuid(), summary.getUserUuid());
+		assertEquals(user.getUsername(), summary.getUsername());
+		assertEquals(user.getPersonName().getFullName(), summary.getUserFullName());
+		assertEquals(0, summary.getChildLogCount());
+		
+		summary = summaries.get(3);
+		assertEquals(1, summary.getAuditLogId().intValue());
+		assertEquals(2, summary.getChildLogCount());
+	}
+	
+	/**
+	 * @verifies return the page after the specified continuation token
+	 * @see AuditLogService#getAuditLogSummariesAfter(List, List, org.openmrs.User, Date, Date,
+	 *      boolean, String, Integer)
+	 */
+	@Test
+	public void getAuditLogSummariesAfter_shouldReturnThePageAfterTheSpecifiedContinuationToken() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		List<AuditLogSummary> summaries = auditLogService.getAuditLogSummariesAfter(null, null, null, null, null, false,
+		    null, 2);
+		assertEquals(2, summaries.size());
+		assertEquals(6, summaries.get(0).getAuditLogId().intValue());
+		assertEquals(5, summaries.get(1).getAuditLogId().intValue());
+		
+		summaries = auditLogService.getAuditLogSummariesAfter(null, null, null, null, null, false,
+		    ContinuationToken.create(summaries.get(1)), 2);
+		assertEquals(2, summaries.size());
+		assertEquals(4, summaries.get(0).getAuditLogId().intValue());
+		assertEquals(3, summaries.get(1).getAuditLogId().intValue());
+	}
+	
+	/**
+	 * @verifies get the audit log matching the specified uuid
+	 * @see AuditLogService#getObjectByUuid(Class, String)
+	 */
+	@Test
+	public void getObjectByUuid_shouldGetTheAuditLogMatchingTheSpecifiedUuid() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		assertNull(auditLogService.getObjectByUuid(AuditLog.class, "Unknown uuid"));
+		AuditLog auditLog = auditLogService.getObjectByUuid(AuditLog.class, "4f7d57f0-9077-11e1-aaa4-00248140a5ec");
+		assertEquals(4, auditLog.getAuditLogId().intValue());
+		assertEquals(auditLog, auditLogService.getObjectByUuid(AuditLog.class, "4f7d57f0-9077-11e1-aaa4-00248140a5ec"));
+	}
+	
+	/**
+	 * @verifies not save changes made to a fetched audit log
+	 * @see AuditLogService#getObjectByUuid(Class, String)
+	 */
+	@Test
+	public void getObjectByUuid_shouldNotSaveChangesMadeToAFetchedAuditLog() throws Exception {
+		executeDataSet(MODULE_TEST_DATA_AUDIT_LOGS);
+		final String uuid = "4f7d57f0-9077-11e1-aaa4-00248140a5ec";
+		AuditLog auditLog = auditLogService.getObjectByUuid(AuditLog.class, uuid);
+		auditLog.setIdentifier("1234");
+		auditLog.setAction(Action.DELETED);
+		Context.flushSession();
+		Context.clearSession();
+		
+		auditLog = auditLogService.getObjectByUuid(AuditLog.class, uuid);
+		assertEquals("5089", auditLog.getIdentifier());
+		assertEquals(Action.UPDATED, auditLog.getAction());
+	}
 }
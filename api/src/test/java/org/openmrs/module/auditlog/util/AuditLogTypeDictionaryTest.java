@@ -0,0 +1,156 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.sql.Statement;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.ConceptDescription;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptNumeric;
+import org.openmrs.Location;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+public class AuditLogTypeDictionaryTest extends BaseModuleContextSensitiveTest {
+	
+	private AuditLogTypeDictionary dictionary = AuditLogTypeDictionary.getInstance();
+	
+	@Before
+	public void before() throws Exception {
+		dictionary.clear();
+		executeDataSet("moduleTestData-initialAuditLogs.xml");
+	}
+	
+	/**
+	 * @verifies return the id of the type
+	 * @see AuditLogTypeDictionary#getId(Class)
+	 */
+	@Test
+	public void getId_shouldReturnTheIdOfTheType() throws Exception {
+		dictionary.put(1003, ConceptName.class);
+		assertEquals(1003, dictionary.getId(ConceptName.class).intValue());
+	}
+	
+	/**
+	 * @verifies return null for a type that is not in the dictionary
+	 * @see AuditLogTypeDictionary#getId(Class)
+	 */
+	@Test
+	public void getId_shouldReturnNullForATypeThatIsNotInTheDictionary() throws Exception {
+		dictionary.load(getConnection());
+		assertNull(dictionary.getId(Location.class));
+	}
+	
+	/**
+	 * @verifies return the type with the id
+	 * @see AuditLogTypeDictionary#getType(Integer)
+	 */
+	@Test
+	public void getType_shouldReturnTheTypeWithTheId() throws Exception {
+		dictionary.put(1003, ConceptName.class);
+		assertEquals(ConceptName.class, dictionary.getType(1003));
+	}
+	
+	/**
+	 * @verifies remove the type
+	 * @see AuditLogTypeDictionary#remove(Class)
+	 */
+	@Test
+	public void remove_shouldRemoveTheType() throws Exception {
+		dictionary.put(1003, ConceptName.class);
+		dictionary.remove(ConceptName.class);
+		assertNull(dictionary.getId(ConceptName.class));
+		assertNull(dictionary.getType(1003));
+	}
+	
+	/**
+	 * @verifies load all the types from the database
+	 * @see AuditLogTypeDictionary#load(java.sql.Connection)
+	 */
+	@Test
+	public void load_shouldLoadAllTheTypesFromTheDatabase() throws Exception {
+		dictionary.load(getConnection());
+		assertEquals(ConceptNumeric.class, dictionary.getType(1001));
+		assertEquals(1002, dictionary.getId(ConceptDescription.class).intValue());
+		assertEquals(1003, dictionary.getId(ConceptName.class).intValue());
+	}
+	
+	/**
+	 * @verifies make the type visible to the current thread only
+	 * @see AuditLogTypeDictionary#putPending(Integer, Class)
+	 */
+	@Test
+	public void putPending_shouldMakeTheTypeVisibleToTheCurrentThreadOnly() throws Exception {
+		dictionary.putPending(1004, Location.class);
+		assertEquals(1004, dictionary.getId(Location.class).intValue());
+		assertEquals(Location.class, dictionary.getType(1004));
+		final Integer[] idInOtherThread = new Integer[] { 0 };
+		Thread thread = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				idInOtherThread[0] = dictionary.getId(Location.class);
+			}
+		});
+		thread.start();
+		thread.join();
+		assertNull(idInOtherThread[0]);
+		dictionary.clearPending();
+		assertNull(dictionary.getId(Location.class));
+	}
+	
+	/**
+	 * @verifies add the pending types to the dictionary
+	 * @see AuditLogTypeDictionary#publishPending()
+	 */
+	@Test
+	public void publishPending_shouldAddThePendingTypesToTheDictionary() throws Exception {
+		dictionary.putPending(1004, Location.class);
+		dictionary.publishPending();
+		dictionary.clearPending();
+		assertEquals(1004, dictionary.getId(Location.class).intValue());
+		assertEquals(Location.class, dictionary.getType(1004));
+	}
+	
+	/**
+	 * @verifies not reload the dictionary within the reload interval
+	 * @see AuditLogTypeDictionary#loadIfStale(java.sql.Connection)
+	 */
+	@Test
+	public void loadIfStale_shouldNotReloadTheDictionaryWithinTheReloadInterval() throws Exception {
+		dictionary.loadIfStale(getConnection());
+		assertEquals(1003, dictionary.getId(ConceptName.class).intValue());
+		Statement statement = getConnection().createStatement();
+		statement.executeUpdate("insert into auditlog_type (type_id, classname) values (1004, 'org.openmrs.Location')");
+		statement.close();
+		dictionary.loadIfStale(getConnection());
+		assertNull(dictionary.getId(Location.class));
+		dictionary.load(getConnection());
+		assertEquals(1004, dictionary.getId(Location.class).intValue());
+	}
+	
+	/**
+	 * @verifies split the simple name at the camel case boundaries
+	 * @see AuditLogTypeDictionary#getDisplayName(Class)
+	 */
+	@Test
+	public void getDisplayName_shouldSplitTheSimpleNameAtTheCamelCaseBoundaries() throws Exception {
+		assertEquals("Concept Numeric", dictionary.getDisplayName(ConceptNumeric.class));
+		assertEquals("Location", dictionary.getDisplayName(Location.class));
+	}
+}
@@ -59,4 +59,44 @@ public class AuditLogUtilTest extends BaseModuleContextSensitiveTest {
 		assertEquals(Concept.class.getName() + ".names",
 		    AuditLogUtil.getCollectionPersister("names", ConceptNumeric.class, null).getRole());
 	}
+	
+	/**
+	 * @verifies return the numeric form of a numeric identifier
+	 * @see AuditLogUtil#getNumericIdentifier(java.io.Serializable)
+	 */
+	@Test
+	public void getNumericIdentifier_shouldReturnTheNumericFormOfANumericIdentifier() throws Exception {
+		assertEquals(5089L, AuditLogUtil.getNumericIdentifier("5089").longValue());
+		assertEquals(3000000000L, AuditLogUtil.getNumericIdentifier(3000000000L).longValue());
+	}
+	
+	/**
+	 * @verifies return null for a non numeric identifier
+	 * @see AuditLogUtil#getNumericIdentifier(java.io.Serializable)
+	 */
+	@Test
+	public void getNumericIdentifier_shouldReturnNullForANonNumericIdentifier() throws Exception {
+		assertNull(AuditLogUtil.getNumericIdentifier("auditlog.auditingStrategy"));
+		assertNull(AuditLogUtil.getNumericIdentifier("99999999999999999999"));
+	}
+	
+	/**
+	 * @verifies return null for a numeric identifier with leading zeros
+	 * @see AuditLogUtil#getNumericIdentifier(java.io.Serializable)
+	 */
+	@Test
+	public void getNumericIdentifier_shouldReturnNullForANumericIdentifierWithLeadingZeros() throws Exception {
+		assertNull(AuditLogUtil.getNumericIdentifier("007"));
+	}
+	
+	/**
+	 * @verifies return the same key for a type and its persistent subclasses
+	 * @see AuditLogUtil#getObjectKey(Class, Object)
+	 */
+	@Test
+	public void getObjectKey_shouldReturnTheSameKeyForATypeAndItsPersistentSubclasses() throws Exception {
+		assertEquals(AuditLogUtil.getObjectKey(Concept.class, 5089), AuditLogUtil.getObjectKey(ConceptNumeric.class,
+		    " 5089"));
+		assertEquals(Concept.class.getName() + "#5089", AuditLogUtil.getObjectKey(ConceptNumeric.class, 5089));
+	}
 }
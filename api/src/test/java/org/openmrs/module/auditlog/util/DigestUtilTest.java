@@ -0,0 +1,82 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class DigestUtilTest {
+	
+	/**
+	 * @verifies return true for a digest
+	 * @see DigestUtil#isDigest(Object)
+	 */
+	@Test
+	public void isDigest_shouldReturnTrueForADigest() throws Exception {
+		assertTrue(DigestUtil.isDigest(DigestUtil.createDigest("some text")));
+		assertTrue(DigestUtil.isDigest(DigestUtil.createDigest(new byte[] { 1, 2, 3 })));
+	}
+	
+	/**
+	 * @verifies return false for a value that is not a digest
+	 * @see DigestUtil#isDigest(Object)
+	 */
+	@Test
+	public void isDigest_shouldReturnFalseForAValueThatIsNotADigest() throws Exception {
+		assertFalse(DigestUtil.isDigest(null));
+		assertFalse(DigestUtil.isDigest("some text"));
+		Map<String, String> map = new HashMap<String, String>();
+		map.put("key", "value");
+		assertFalse(DigestUtil.isDigest(map));
+	}
+	
+	/**
+	 * @verifies include the delta against the previous text
+	 * @see DigestUtil#createDigest(String, String, int)
+	 */
+	@Test
+	public void createDigest_shouldIncludeTheDeltaAgainstThePreviousText() throws Exception {
+		Map<String, Object> digest = DigestUtil.createDigest("abc", "abd", 100);
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", digest.get(DigestUtil.KEY_HASH));
+		assertEquals(3, digest.get(DigestUtil.KEY_LENGTH));
+		assertEquals("@@ -1,1 +1,1 @@\n-abd\n+abc", digest.get(DigestUtil.KEY_DELTA));
+	}
+	
+	/**
+	 * @verifies leave out the lines in common at the start and end
+	 * @see DigestUtil#createLineDelta(String, String, int)
+	 */
+	@Test
+	public void createLineDelta_shouldLeaveOutTheLinesInCommonAtTheStartAndEnd() throws Exception {
+		String previousText = "line1\nline2\nline3\nline4";
+		String newText = "line1\nchanged2\nadded\nline3\nline4";
+		assertEquals("@@ -2,1 +2,2 @@\n-line2\n+changed2\n+added", DigestUtil.createLineDelta(previousText, newText, 100));
+	}
+	
+	/**
+	 * @verifies truncate the delta if it is longer than the max length
+	 * @see DigestUtil#createLineDelta(String, String, int)
+	 */
+	@Test
+	public void createLineDelta_shouldTruncateTheDeltaIfItIsLongerThanTheMaxLength() throws Exception {
+		String delta = DigestUtil.createLineDelta("line1\nline2", "line1\nchanged line2 that is long", 20);
+		assertEquals("@@ -2,1 +2,1 @@\n-lin\n...", delta);
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Locale;
+
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptNumeric;
+import org.openmrs.Location;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+public class DisplayStringCacheTest extends BaseModuleContextSensitiveTest {
+	
+	/**
+	 * @verifies return the cached display string
+	 * @see DisplayStringCache#get(Class, Object, Locale)
+	 */
+	@Test
+	public void get_shouldReturnTheCachedDisplayString() throws Exception {
+		DisplayStringCache cache = new DisplayStringCache(10, 60000);
+		assertNull(cache.get(Location.class, 1, Locale.ENGLISH));
+		cache.put(Location.class, 1, Locale.ENGLISH, "Unknown Location");
+		assertEquals("Unknown Location", cache.get(Location.class, "1", Locale.ENGLISH));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+	
+	/**
+	 * @verifies return null for an expired entry
+	 * @see DisplayStringCache#get(Class, Object, Locale)
+	 */
+	@Test
+	public void get_shouldReturnNullForAnExpiredEntry() throws Exception {
+		DisplayStringCache cache = new DisplayStringCache(10, 1);
+		cache.put(Location.class, 1, Locale.ENGLISH, "Unknown Location");
+		Thread.sleep(10);
+		assertNull(cache.get(Location.class, 1, Locale.ENGLISH));
+		assertEquals(0, cache.getSize());
+		assertEquals(1, cache.getEvictionCount());
+	}
+	
+	/**
+	 * @verifies share entries between a type and its persistent subclasses
+	 * @see DisplayStringCache#get(Class, Object, Locale)
+	 */
+	@Test
+	public void get_shouldShareEntriesBetweenATypeAndItsPersistentSubclasses() throws Exception {
+		DisplayStringCache cache = new DisplayStringCache(10, 60000);
+		cache.put(ConceptNumeric.class, 5089, Locale.ENGLISH, "WEIGHT (KG)");
+		assertEquals("WEIGHT (KG)", cache.get(Concept.class, 5089, Locale.ENGLISH));
+		cache.invalidate(Concept.class, 5089);
+		assertNull(cache.get(ConceptNumeric.class, 5089, Locale.ENGLISH));
+	}
+	
+	/**
+	 * @verifies evict the least recently used entry when the cache is full
+	 * @see DisplayStringCache#put(Class, Object, Locale, String)
+	 */
+	@Test
+	public void put_shouldEvictTheLeastRecentlyUsedEntryWhenTheCacheIsFull() throws Exception {
+		DisplayStringCache cache = new DisplayStringCache(2, 60000);
+		cache.put(Location.class, 1, Locale.ENGLISH, "one");
+		cache.put(Location.class, 2, Locale.ENGLISH, "two");
+		//Use the first entry so that the second one becomes the least recently used
+		cache.get(Location.class, 1, Locale.ENGLISH);
+		cache.put(Location.class, 3, Locale.ENGLISH, "three");
+		assertEquals(2, cache.getSize());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals("one", cache.get(Location.class, 1, Locale.ENGLISH));
+		assertNull(cache.get(Location.class, 2, Locale.ENGLISH));
+		assertEquals("three", cache.get(Location.class, 3, Locale.ENGLISH));
+	}
+	
+	/**
+	 * @verifies remove the entry for the object
+	 * @see DisplayStringCache#invalidate(Class, Object)
+	 */
+	@Test
+	public void invalidate_shouldRemoveTheEntryForTheObject() throws Exception {
+		DisplayStringCache cache = new DisplayStringCache(10, 60000);
+		cache.put(Location.class, 1, Locale.ENGLISH, "one");
+		cache.put(Location.class, 2, Locale.ENGLISH, "two");
+		cache.invalidate(Location.class, 1);
+		assertNull(cache.get(Location.class, 1, Locale.ENGLISH));
+		assertEquals("two", cache.get(Location.class, 2, Locale.ENGLISH));
+	}
+	
+	/**
+	 * @verifies return null for a display string cached in another locale
+	 * @see DisplayStringCache#get(Class, Object, Locale)
+	 */
+	@Test
+	public void get_shouldReturnNullForADisplayStringCachedInAnotherLocale() throws Exception {
+		DisplayStringCache cache = new DisplayStringCache(10, 60000);
+		cache.put(Concept.class, 5089, Locale.ENGLISH, "WEIGHT (KG)");
+		assertNull(cache.get(Concept.class, 5089, Locale.FRENCH));
+		cache.put(Concept.class, 5089, Locale.FRENCH, "POIDS (KG)");
+		assertEquals("WEIGHT (KG)", cache.get(Concept.class, 5089, Locale.ENGLISH));
+		assertEquals("POIDS (KG)", cache.get(Concept.class, 5089, Locale.FRENCH));
+		assertEquals(1, cache.getSize());
+	}
+	
+	/**
+	 * @verifies remove the entries in all locales
+	 * @see DisplayStringCache#invalidate(Class, Object)
+	 */
+	@Test
+	public void invalidate_shouldRemoveTheEntriesInAllLocales() throws Exception {
+		DisplayStringCache cache = new DisplayStringCache(10, 60000);
+		cache.put(Concept.class, 5089, Locale.ENGLISH, "WEIGHT (KG)");
+		cache.put(Concept.class, 5089, Locale.FRENCH, "POIDS (KG)");
+		cache.invalidate(Concept.class, 5089);
+		assertNull(cache.get(Concept.class, 5089, Locale.ENGLISH));
+		assertNull(cache.get(Concept.class, 5089, Locale.FRENCH));
+		assertEquals(0, cache.getSize());
+	}
+}
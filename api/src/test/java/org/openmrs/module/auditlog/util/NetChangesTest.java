@@ -0,0 +1,114 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.hibernate.Hibernate;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptName;
+import org.openmrs.module.auditlog.AuditLog;
+import org.openmrs.module.auditlog.AuditLog.Action;
+
+public class NetChangesTest {
+	
+	private static AuditLog createAuditLog(Class<?> type, Integer id, Action action, String json) {
+		AuditLog auditLog = new AuditLog(type, id, action, null, new Date());
+		if (json != null) {
+			auditLog.setSerializedData(Hibernate.createBlob(json.getBytes()));
+		}
+		return auditLog;
+	}
+	
+	/**
+	 * @verifies keep the latest new value and the earliest previous value of each property
+	 * @see NetChanges#add(AuditLog)
+	 */
+	@Test
+	public void add_shouldKeepTheLatestNewValueAndTheEarliestPreviousValueOfEachProperty() throws Exception {
+		NetChanges netChanges = new NetChanges(Concept.class, 1);
+		netChanges.add(createAuditLog(Concept.class, 1, Action.UPDATED, "{\"version\":[\"3\",\"2\"]}"));
+		netChanges.add(createAuditLog(Concept.class, 1, Action.UPDATED,
+		    "{\"version\":[\"2\",\"1\"],\"retired\":[\"true\",\"false\"]}"));
+		netChanges.add(createAuditLog(Concept.class, 1, Action.CREATED, null));
+		
+		Map<String, Object[]> changes = netChanges.getChanges();
+		assertEquals(2, changes.size());
+		assertEquals("3", changes.get("version")[0]);
+		assertEquals("1", changes.get("version")[1]);
+		assertEquals("true", changes.get("retired")[0]);
+		assertEquals(Action.CREATED, netChanges.getAction());
+		assertEquals(3, netChanges.getAuditLogCount());
+	}
+	
+	/**
+	 * @verifies fold the changes of the child logs per item
+	 * @see NetChanges#add(AuditLog)
+	 */
+	@Test
+	public void add_shouldFoldTheChangesOfTheChildLogsPerItem() throws Exception {
+		NetChanges netChanges = new NetChanges(Concept.class, 1);
+		AuditLog parent = createAuditLog(Concept.class, 1, Action.UPDATED, null);
+		parent.addChildAuditLog(createAuditLog(ConceptName.class, 10, Action.UPDATED, "{\"name\":[\"c\",\"b\"]}"));
+		parent.addChildAuditLog(createAuditLog(ConceptName.class, 11, Action.CREATED, null));
+		netChanges.add(parent);
+		parent = createAuditLog(Concept.class, 1, Action.UPDATED, null);
+		parent.addChildAuditLog(createAuditLog(ConceptName.class, 10, Action.UPDATED, "{\"name\":[\"b\",\"a\"]}"));
+		netChanges.add(parent);
+		
+		assertTrue(netChanges.getChanges().isEmpty());
+		assertEquals(2, netChanges.getChildChanges().size());
+		NetChanges nameChanges = netChanges.getChildChanges().iterator().next();
+		assertEquals(ConceptName.class, nameChanges.getType());
+		assertEquals(Integer.valueOf(10), nameChanges.getIdentifier());
+		assertEquals("c", nameChanges.getChanges().get("name")[0]);
+		assertEquals("a", nameChanges.getChanges().get("name")[1]);
+		assertEquals(Action.UPDATED, nameChanges.getAction());
+	}
+	
+	/**
+	 * @verifies leave out properties that were changed back to their previous values
+	 * @see NetChanges#getChanges()
+	 */
+	@Test
+	public void getChanges_shouldLeaveOutPropertiesThatWereChangedBackToTheirPreviousValues() throws Exception {
+		NetChanges netChanges = new NetChanges(Concept.class, 1);
+		netChanges.add(createAuditLog(Concept.class, 1, Action.UPDATED, "{\"version\":[\"1\",\"2\"]}"));
+		netChanges.add(createAuditLog(Concept.class, 1, Action.UPDATED, "{\"version\":[\"2\",\"1\"]}"));
+		assertNull(netChanges.getChanges().get("version"));
+		assertEquals(Action.UPDATED, netChanges.getAction());
+	}
+	
+	/**
+	 * @verifies leave out properties whose digests were changed back to their previous values
+	 * @see NetChanges#getChanges()
+	 */
+	@Test
+	public void getChanges_shouldLeaveOutPropertiesWhoseDigestsWereChangedBackToTheirPreviousValues() throws Exception {
+		NetChanges netChanges = new NetChanges(Concept.class, 1);
+		netChanges.add(createAuditLog(Concept.class, 1, Action.UPDATED,
+		    "{\"description\":[{\"sha256\":\"aa\",\"length\":12,\"delta\":\"-b +a\"},"
+		            + "{\"sha256\":\"bb\",\"length\":12}]}"));
+		netChanges.add(createAuditLog(Concept.class, 1, Action.UPDATED,
+		    "{\"description\":[{\"sha256\":\"bb\",\"length\":12,\"delta\":\"-a +b\"},"
+		            + "{\"sha256\":\"aa\",\"length\":12}]}"));
+		assertNull(netChanges.getChanges().get("description"));
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.ConceptNumeric;
+import org.openmrs.Location;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+
+public class ObjectStateCacheTest extends BaseModuleContextSensitiveTest {
+	
+	/**
+	 * @verifies return the cached state
+	 * @see ObjectStateCache#get(Class, Object, Integer)
+	 */
+	@Test
+	public void get_shouldReturnTheCachedState() throws Exception {
+		ObjectStateCache cache = new ObjectStateCache(10);
+		assertNull(cache.get(Location.class, 1, 5));
+		cache.put(Location.class, 1, 5, Collections.<String, Object> singletonMap("name", "Unknown Location"));
+		Map<String, Object> state = cache.get(Location.class, "1", 5);
+		assertEquals("Unknown Location", state.get("name"));
+		assertNull(cache.get(Location.class, 1, 6));
+	}
+	
+	/**
+	 * @verifies share entries between a type and its persistent subclasses
+	 * @see ObjectStateCache#get(Class, Object, Integer)
+	 */
+	@Test
+	public void get_shouldShareEntriesBetweenATypeAndItsPersistentSubclasses() throws Exception {
+		ObjectStateCache cache = new ObjectStateCache(10);
+		cache.put(ConceptNumeric.class, 5089, 4, Collections.<String, Object> singletonMap("units", "kg"));
+		assertNotNull(cache.get(Concept.class, 5089, 4));
+	}
+	
+	/**
+	 * @verifies evict the states of the least recently used object when the cache is full
+	 * @see ObjectStateCache#put(Class, Object, Integer, Map)
+	 */
+	@Test
+	public void put_shouldEvictTheStatesOfTheLeastRecentlyUsedObjectWhenTheCacheIsFull() throws Exception {
+		ObjectStateCache cache = new ObjectStateCache(2);
+		Map<String, Object> state = Collections.<String, Object> singletonMap("name", "some name");
+		cache.put(Location.class, 1, 1, state);
+		cache.put(Location.class, 1, 2, state);
+		cache.put(Location.class, 2, 3, state);
+		//Use the first object so that the second one becomes the least recently used
+		cache.get(Location.class, 1, 1);
+		cache.put(Location.class, 3, 4, state);
+		assertEquals(2, cache.getSize());
+		assertNotNull(cache.get(Location.class, 1, 2));
+		assertNull(cache.get(Location.class, 2, 3));
+	}
+	
+	/**
+	 * @verifies remove the states of the object
+	 * @see ObjectStateCache#invalidate(Class, Object)
+	 */
+	@Test
+	public void invalidate_shouldRemoveTheStatesOfTheObject() throws Exception {
+		ObjectStateCache cache = new ObjectStateCache(10);
+		Map<String, Object> state = Collections.<String, Object> singletonMap("name", "some name");
+		cache.put(Location.class, 1, 1, state);
+		cache.put(Location.class, 1, 2, state);
+		cache.invalidate(Location.class, 1);
+		assertEquals(0, cache.getSize());
+		assertNull(cache.get(Location.class, 1, 2));
+	}
+}
@@ -0,0 +1,65 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class TimeOrderedUuidGeneratorTest {
+	
+	/**
+	 * @verifies generate a version 7 UUID with the IETF variant
+	 * @see TimeOrderedUuidGenerator#generate()
+	 */
+	@Test
+	public void generate_shouldGenerateAVersion7UUIDWithTheIETFVariant() throws Exception {
+		UUID uuid = new TimeOrderedUuidGenerator().generate();
+		assertEquals(7, uuid.version());
+		assertEquals(2, uuid.variant());
+		assertEquals(uuid, UUID.fromString(uuid.toString()));
+	}
+	
+	/**
+	 * @verifies generate increasing UUIDs
+	 * @see TimeOrderedUuidGenerator#generate()
+	 */
+	@Test
+	public void generate_shouldGenerateIncreasingUUIDs() throws Exception {
+		TimeOrderedUuidGenerator generator = new TimeOrderedUuidGenerator();
+		String previous = generator.generate().toString();
+		//More than a millisecond's worth of sequence numbers
+		for (int i = 0; i < 10000; i++) {
+			String next = generator.generate().toString();
+			assertTrue(next.compareTo(previous) > 0);
+			previous = next;
+		}
+	}
+	
+	/**
+	 * @verifies start with the current time
+	 * @see TimeOrderedUuidGenerator#generate()
+	 */
+	@Test
+	public void generate_shouldStartWithTheCurrentTime() throws Exception {
+		long before = System.currentTimeMillis();
+		UUID uuid = new TimeOrderedUuidGenerator().generate();
+		long timestamp = uuid.getMostSignificantBits() >>> 16;
+		assertTrue(timestamp >= before);
+		assertTrue(timestamp <= System.currentTimeMillis());
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ValueTokenizerTest {
+	
+	/**
+	 * @verifies split the value into lower case words
+	 * @see ValueTokenizer#tokenize(Object)
+	 */
+	@Test
+	public void tokenize_shouldSplitTheValueIntoLowerCaseWords() throws Exception {
+		Set<String> tokens = ValueTokenizer.tokenize("Malaria, CONFIRMED: 2nd-test malaria");
+		assertEquals(Arrays.asList("malaria", "confirmed", "2nd", "test"), new ArrayList<String>(tokens));
+	}
+	
+	/**
+	 * @verifies skip words that are too short or too long
+	 * @see ValueTokenizer#tokenize(Object)
+	 */
+	@Test
+	public void tokenize_shouldSkipWordsThatAreTooShortOrTooLong() throws Exception {
+		StringBuilder longWord = new StringBuilder();
+		for (int i = 0; i <= ValueTokenizer.MAX_TOKEN_LENGTH; i++) {
+			longWord.append('a');
+		}
+		Set<String> tokens = ValueTokenizer.tokenize("a b " + longWord + " ok");
+		assertEquals(1, tokens.size());
+		assertTrue(tokens.contains("ok"));
+	}
+	
+	/**
+	 * @verifies tokenize the elements of collections and arrays
+	 * @see ValueTokenizer#tokenize(Object)
+	 */
+	@Test
+	public void tokenize_shouldTokenizeTheElementsOfCollectionsAndArrays() throws Exception {
+		Set<String> tokens = ValueTokenizer.tokenize(new Object[] { "new value", Arrays.asList("old", 42) });
+		assertEquals(Arrays.asList("new", "value", "old", "42"), new ArrayList<String>(tokens));
+	}
+	
+	/**
+	 * @verifies skip digests
+	 * @see ValueTokenizer#tokenize(Object)
+	 */
+	@Test
+	public void tokenize_shouldSkipDigests() throws Exception {
+		Set<String> tokens = ValueTokenizer.tokenize(new Object[] { DigestUtil.createDigest("some long text"), "short" });
+		assertEquals(1, tokens.size());
+		assertTrue(tokens.contains("short"));
+	}
+	
+	/**
+	 * @verifies stop at the maximum number of words
+	 * @see ValueTokenizer#tokenize(Object)
+	 */
+	@Test
+	public void tokenize_shouldStopAtTheMaximumNumberOfWords() throws Exception {
+		List<String> words = new ArrayList<String>();
+		for (int i = 0; i < ValueTokenizer.MAX_TOKENS_PER_VALUE + 10; i++) {
+			words.add("word" + i);
+		}
+		assertEquals(ValueTokenizer.MAX_TOKENS_PER_VALUE, ValueTokenizer.tokenize(words.toString()).size());
+	}
+}
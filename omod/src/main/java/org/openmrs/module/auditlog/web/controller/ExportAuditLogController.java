@@ -0,0 +1,206 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.web.controller;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.auditlog.AuditLog;
+import org.openmrs.module.auditlog.AuditLog.Action;
+import org.openmrs.module.auditlog.api.AuditLogCallback;
+import org.openmrs.module.auditlog.api.AuditLogService;
+import org.openmrs.module.auditlog.util.AuditLogConstants;
+import org.openmrs.module.auditlog.util.AuditLogUtil;
+import org.openmrs.module.auditlog.web.util.AuditLogWebConstants;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * Streams the audit logs matching the request parameters to the response as newline delimited
+ * JSON or CSV, the audit logs are written as they are read from the database so the memory used
+ * doesn't grow with the number of exported logs. This class is mapped with the URL of
+ * 'module/auditlog/exportAuditLogs.htm'.
+ */
+@Controller
+public class ExportAuditLogController {
+	
+	/** Logger for this class and subclasses */
+	private static final Log log = LogFactory.getLog(ExportAuditLogController.class);
+	
+	private static final String EXPORT_AUDIT_LOGS = "module/" + AuditLogConstants.MODULE_ID + "/exportAuditLogs";
+	
+	private static final String FORMAT_CSV = "csv";
+	
+	private static final String PARAM_DATE_FORMAT = "yyyy-MM-dd";
+	
+	private static final String[] CSV_HEADERS = { "uuid", "type", "identifier", "action", "user", "dateCreated",
+	        "parentUuid", "openmrsVersion", "moduleVersion", "data" };
+	
+	/**
+	 * Writes the matching audit logs to the response
+	 * 
+	 * @param format the format to use, either ndjson or csv, defaults to ndjson
+	 * @param gzip specifies if the response should be gzipped
+	 * @param types the fully qualified class names of the types to match against
+	 * @param actions the actions to match against
+	 * @param startDate the start date in the format yyyy-MM-dd
+	 * @param endDate the end date in the format yyyy-MM-dd, logs created on this date are included
+	 * @param excludeChildAuditLogs specifies if AuditLogs for collection items should excluded
+	 * @param response the response to write to
+	 * @throws Exception
+	 */
+	@RequestMapping(EXPORT_AUDIT_LOGS)
+	public void export(@RequestParam(value = "format", required = false) String format,
+	                   @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+	                   @RequestParam(value = "type", required = false) String[] types,
+	                   @RequestParam(value = "action", required = false) String[] actions,
+	                   @RequestParam(value = "startDate", required = false) String startDate,
+	                   @RequestParam(value = "endDate", required = false) String endDate,
+	                   @RequestParam(value = "excludeChildAuditLogs", defaultValue = "false") boolean excludeChildAuditLogs,
+	                   HttpServletResponse response) throws Exception {
+		
+		Context.requirePrivilege(AuditLogWebConstants.PRIV_VIEW_AUDITLOG);
+		
+		List<Class<?>> clazzes = null;
+		if (types != null) {
+			clazzes = new ArrayList<Class<?>>(types.length);
+			for (String type : types) {
+				clazzes.add(Context.loadClass(type));
+			}
+		}
+		List<Action> actionsToMatch = null;
+		if (actions != null) {
+			actionsToMatch = new ArrayList<Action>(actions.length);
+			for (String action : actions) {
+				actionsToMatch.add(Action.valueOf(action));
+			}
+		}
+		Date end = parseDate(endDate);
+		if (end != null) {
+			//include the whole day
+			end = new Date(end.getTime() + 24 * 60 * 60 * 1000L - 1);
+		}
+		
+		final boolean isCsv = FORMAT_CSV.equalsIgnoreCase(format);
+		String filename = "auditlogs." + (isCsv ? FORMAT_CSV : "ndjson");
+		response.setContentType(isCsv ? "text/csv" : "application/x-ndjson");
+		response.setCharacterEncoding("UTF-8");
+		OutputStream out = response.getOutputStream();
+		if (gzip) {
+			filename += ".gz";
+			response.setContentType("application/gzip");
+			out = new GZIPOutputStream(out);
+		}
+		response.setHeader("Content-Disposition", "attachment; filename=" + filename);
+		
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+		final ObjectMapper mapper = new ObjectMapper();
+		final SimpleDateFormat dateFormat = new SimpleDateFormat(AuditLogConstants.DATE_FORMAT);
+		try {
+			if (isCsv) {
+				writeCsvLine(writer, CSV_HEADERS);
+			}
+			
+			Context.getService(AuditLogService.class).streamAuditLogs(clazzes, actionsToMatch, parseDate(startDate), end,
+			    excludeChildAuditLogs, new AuditLogCallback() {
+				    
+				    @Override
+				    public void handle(AuditLog auditLog) throws Exception {
+					    String data = null;
+					    if (auditLog.getSerializedData() != null) {
+						    data = AuditLogUtil.getAsString(auditLog.getSerializedData());
+					    }
+					    String dateCreated = dateFormat.format(auditLog.getDateCreated());
+					    String user = (auditLog.getUser() != null) ? auditLog.getUser().getUuid() : null;
+					    String parentUuid = (auditLog.getParentAuditLog() != null) ? auditLog.getParentAuditLog().getUuid()
+					            : null;
+					    
+					    if (isCsv) {
+						    writeCsvLine(writer, new String[] { auditLog.getUuid(), auditLog.getType().getName(),
+						            auditLog.getIdentifier().toString(), auditLog.getAction().name(), user, dateCreated,
+						            parentUuid, auditLog.getOpenmrsVersion(), auditLog.getModuleVersion(), data });
+					    } else {
+						    Map<String, Object> row = new LinkedHashMap<String, Object>();
+						    row.put("uuid", auditLog.getUuid());
+						    row.put("type", auditLog.getType().getName());
+						    row.put("identifier", auditLog.getIdentifier());
+						    row.put("action", auditLog.getAction().name());
+						    row.put("user", user);
+						    row.put("dateCreated", dateCreated);
+						    row.put("parentUuid", parentUuid);
+						    row.put("openmrsVersion", auditLog.getOpenmrsVersion());
+						    row.put("moduleVersion", auditLog.getModuleVersion());
+						    row.put("data", StringUtils.isNotBlank(data) ? mapper.readTree(data) : null);
+						    writer.write(mapper.writeValueAsString(row));
+						    writer.write('\n');
+					    }
+				    }
+			    });
+			writer.close();
+		}
+		finally {
+			IOUtils.closeQuietly(writer);
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug("Exported audit logs to " + filename);
+		}
+	}
+	
+	private Date parseDate(String date) {
+		if (StringUtils.isBlank(date)) {
+			return null;
+		}
+		try {
+			return new SimpleDateFormat(PARAM_DATE_FORMAT).parse(date);
+		}
+		catch (ParseException e) {
+			throw new APIException("Invalid date: " + date + ", expected format is " + PARAM_DATE_FORMAT, e);
+		}
+	}
+	
+	private static void writeCsvLine(Writer writer, String[] values) throws Exception {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			if (values[i] != null) {
+				writer.write('"');
+				writer.write(StringUtils.replace(values[i], "\"", "\"\""));
+				writer.write('"');
+			}
+		}
+		writer.write("\r\n");
+	}
+}
@@ -13,10 +13,7 @@
  */
 package org.openmrs.module.auditlog.web.controller;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-import org.openmrs.api.context.Context;
-import org.openmrs.module.auditlog.api.AuditLogService;
+import org.openmrs.module.auditlog.AuditLog.Action;
 import org.openmrs.module.auditlog.util.AuditLogConstants;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
@@ -29,9 +26,6 @@ import org.springframework.web.bind.annotation.RequestMapping;
 @Controller
 public class ViewAuditLogController {
 	
-	/** Logger for this class and subclasses */
-	private static final Log log = LogFactory.getLog(ViewAuditLogController.class);
-	
 	/** Success form view name */
 	private final String VIEW_AUDIT_LOG_FORM = "module/" + AuditLogConstants.MODULE_ID + "/viewAuditLog";
 	
@@ -40,11 +34,7 @@ public class ViewAuditLogController {
 	 */
 	@RequestMapping(VIEW_AUDIT_LOG_FORM)
 	public void showForm(ModelMap model) {
-		if (log.isDebugEnabled()) {
-			log.debug("Fetching audit log entries...");
-		}
-		
-		model.addAttribute("auditLogs",
-		    Context.getService(AuditLogService.class).getAuditLogs(null, null, null, null, true, null, null));
+		//The audit logs are fetched a page at a time via DWR
+		model.addAttribute("actions", Action.values());
 	}
 }
@@ -48,8 +48,11 @@ public class AuditLogDetails {
 	//and previous(index 1) values' array, if DELETED it is all the property and their values
 	private Map<String, Object> changes;
 	
+	//The first page of child logs, the rest are fetched as the user asks for them
 	private List<AuditLogDetails> childAuditLogDetails;
 	
+	private int childLogCount;
+	
 	/**
 	 * Convenience constructor that created an {@link AuditLogDetails} from an {@link AuditLog}
 	 */
@@ -190,4 +193,18 @@ public class AuditLogDetails {
 	public void setChildAuditLogDetails(List<AuditLogDetails> childAuditLogDetails) {
 		this.childAuditLogDetails = childAuditLogDetails;
 	}
+	
+	/**
+	 * @return the total number of child logs
+	 */
+	public int getChildLogCount() {
+		return childLogCount;
+	}
+	
+	/**
+	 * @param childLogCount the childLogCount to set
+	 */
+	public void setChildLogCount(int childLogCount) {
+		this.childLogCount = childLogCount;
+	}
 }
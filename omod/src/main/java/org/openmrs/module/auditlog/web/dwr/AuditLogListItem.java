@@ -14,18 +14,23 @@
 package org.openmrs.module.auditlog.web.dwr;
 
 import java.io.Serializable;
+import java.text.SimpleDateFormat;
 
 import org.apache.commons.lang.StringUtils;
 import org.openmrs.api.context.Context;
-import org.openmrs.module.auditlog.AuditLog;
+import org.openmrs.module.auditlog.AuditLogSummary;
 import org.openmrs.module.auditlog.util.AuditLogConstants;
 
 public class AuditLogListItem {
 	
 	private static final String DAEMON_USER_UUID = "A4F30A1B-5EB9-11DF-A648-37A07F9C90FB";
 	
+	private static final String TIME_FORMAT = "HH:mm:ss";
+	
 	private Integer auditLogId;
 	
+	private String uuid;
+	
 	private String classname;
 	
 	private String simpleClassname;
@@ -38,33 +43,38 @@ public class AuditLogListItem {
 	
 	private String dateCreatedString;
 	
+	private int childLogCount;
+	
 	/**
-	 * Convenience constructor that created an {@link AuditLogListItem} from an {@link AuditLog}
+	 * Convenience constructor that creates an {@link AuditLogListItem} from an
+	 * {@link AuditLogSummary}, the summary already holds the name of the user and the child log
+	 * count so that neither the user nor the child logs have to be loaded
 	 */
-	public AuditLogListItem(AuditLog auditLog) {
-		auditLogId = auditLog.getAuditLogId();
-		classname = auditLog.getType().getName();
-		simpleClassname = auditLog.getType().getSimpleName();
+	public AuditLogListItem(AuditLogSummary summary) {
+		auditLogId = summary.getAuditLogId();
+		uuid = summary.getUuid();
+		classname = summary.getType().getName();
+		simpleClassname = summary.getType().getSimpleName();
 		//If it is a nested class, use the simple name of the nested class
 		if (simpleClassname.indexOf("$") > -1) {
 			simpleClassname = simpleClassname.substring(simpleClassname.indexOf("$") + 1);
 		}
-		identifier = auditLog.getIdentifier();
-		action = auditLog.getAction().toString();
-		if (auditLog.getUser() == null) {
-			if (auditLog.getUser().getUuid().equals(DAEMON_USER_UUID)) {
-				userDetails = Context.getMessageSourceService().getMessage(AuditLogConstants.MODULE_ID + ".systemChange");
-			} else {
-				if (auditLog.getUser().getPersonName() != null) {
-					userDetails = auditLog.getUser().getPersonName().getFullName();
-				}
-				if (StringUtils.isNotBlank(auditLog.getUser().getUsername())) {
-					userDetails = userDetails + "[" + auditLog.getUser().getUsername() + "]";
-				}
+		identifier = summary.getIdentifier();
+		action = summary.getAction().toString();
+		if (summary.getUserUuid() == null || summary.getUserUuid().equals(DAEMON_USER_UUID)) {
+			userDetails = Context.getMessageSourceService().getMessage(AuditLogConstants.MODULE_ID + ".systemAction");
+		} else {
+			if (summary.getUserFullName() != null) {
+				userDetails = summary.getUserFullName();
+			}
+			if (StringUtils.isNotBlank(summary.getUsername())) {
+				userDetails = userDetails + " [" + summary.getUsername() + "]";
 			}
 		}
 		
-		dateCreatedString = Context.getDateFormat().format(auditLog.getDateCreated());
+		dateCreatedString = Context.getDateFormat().format(summary.getDateCreated()) + " "
+		        + new SimpleDateFormat(TIME_FORMAT).format(summary.getDateCreated());
+		childLogCount = summary.getChildLogCount();
 	}
 	
 	/**
@@ -81,6 +91,20 @@ public class AuditLogListItem {
 		this.auditLogId = auditLogId;
 	}
 	
+	/**
+	 * @return the uuid
+	 */
+	public String getUuid() {
+		return uuid;
+	}
+	
+	/**
+	 * @param uuid the uuid to set
+	 */
+	public void setUuid(String uuid) {
+		this.uuid = uuid;
+	}
+	
 	/**
 	 * @return the classname
 	 */
@@ -164,4 +188,18 @@ public class AuditLogListItem {
 	public void setDateCreatedString(String dateCreatedString) {
 		this.dateCreatedString = dateCreatedString;
 	}
+	
+	/**
+	 * @return the childLogCount
+	 */
+	public int getChildLogCount() {
+		return childLogCount;
+	}
+	
+	/**
+	 * @param childLogCount the childLogCount to set
+	 */
+	public void setChildLogCount(int childLogCount) {
+		this.childLogCount = childLogCount;
+	}
 }
@@ -0,0 +1,64 @@
+/**
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ * 
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ * 
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.auditlog.web.dwr;
+
+import java.util.List;
+
+/**
+ * A page of {@link AuditLogListItem}s and the continuation token to pass in when fetching the next
+ * page, the token is null if there are no more items
+ */
+public class AuditLogListPage {
+	
+	private List<AuditLogListItem> items;
+	
+	private String continuationToken;
+	
+	/**
+	 * Convenience constructor that creates an {@link AuditLogListPage} from the items and the
+	 * continuation token
+	 */
+	public AuditLogListPage(List<AuditLogListItem> items, String continuationToken) {
+		this.items = items;
+		this.continuationToken = continuationToken;
+	}
+	
+	/**
+	 * @return the items
+	 */
+	public List<AuditLogListItem> getItems() {
+		return items;
+	}
+	
+	/**
+	 * @param items the items to set
+	 */
+	public void setItems(List<AuditLogListItem> items) {
+		this.items = items;
+	}
+	
+	/**
+	 * @return the continuationToken
+	 */
+	public String getContinuationToken() {
+		return continuationToken;
+	}
+	
+	/**
+	 * @param continuationToken the continuationToken to set
+	 */
+	public void setContinuationToken(String continuationToken) {
+		this.continuationToken = continuationToken;
+	}
+}
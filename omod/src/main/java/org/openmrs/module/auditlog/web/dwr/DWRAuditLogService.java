@@ -16,12 +16,19 @@ package org.openmrs.module.auditlog.web.dwr;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.Concept;
@@ -33,9 +40,13 @@ import org.openmrs.User;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.auditlog.AuditLog;
 import org.openmrs.module.auditlog.AuditLog.Action;
+import org.openmrs.module.auditlog.AuditLogSummary;
 import org.openmrs.module.auditlog.api.AuditLogService;
 import org.openmrs.module.auditlog.util.AuditLogConstants;
 import org.openmrs.module.auditlog.util.AuditLogUtil;
+import org.openmrs.module.auditlog.util.ContinuationToken;
+import org.openmrs.module.auditlog.util.DigestUtil;
+import org.openmrs.module.auditlog.util.DisplayStringCache;
 import org.openmrs.module.auditlog.web.util.AuditLogWebConstants;
 
 /**
@@ -45,6 +56,10 @@ public class DWRAuditLogService {
 	
 	protected final Log log = LogFactory.getLog(getClass());
 	
+	private static final int MAX_PAGE_SIZE = 100;
+	
+	private static final int CHILD_LOG_PAGE_SIZE = 50;
+	
 	private AuditLogService service;
 	
 	private AuditLogService getService() {
@@ -55,7 +70,77 @@ public class DWRAuditLogService {
 	}
 	
 	/**
-	 * Gets the {@link AuditLogDetails} for the auditlog with the specified uuid
+	 * Gets a page of the top level audit logs matching the specified arguments, the logs are sorted
+	 * by date of creation starting with the latest
+	 * 
+	 * @param type the fully qualified class name of the type to match against, blank matches all
+	 * @param action the action to match against, blank matches all
+	 * @param username the username of the user that made the changes, blank matches all
+	 * @param startDate the start date formatted with the date format of the current locale
+	 * @param endDate the end date formatted with the date format of the current locale, logs
+	 *            created on this date are included
+	 * @param continuationToken the token returned with the previous page, null for the first page
+	 * @param length the number of logs to return
+	 * @return the page
+	 * @throws Exception
+	 */
+	public AuditLogListPage getAuditLogs(String type, String action, String username, String startDate, String endDate,
+	                                     String continuationToken, Integer length) throws Exception {
+		
+		Context.requirePrivilege(AuditLogWebConstants.PRIV_VIEW_AUDITLOG);
+		
+		List<AuditLogListItem> items = new ArrayList<AuditLogListItem>();
+		List<Class<?>> clazzes = null;
+		if (StringUtils.isNotBlank(type)) {
+			clazzes = new ArrayList<Class<?>>();
+			clazzes.add(Context.loadClass(type.trim()));
+		}
+		List<Action> actions = null;
+		if (StringUtils.isNotBlank(action)) {
+			actions = new ArrayList<Action>();
+			actions.add(Action.valueOf(action));
+		}
+		User user = null;
+		if (StringUtils.isNotBlank(username)) {
+			user = Context.getUserService().getUserByUsername(username.trim());
+			if (user == null) {
+				return new AuditLogListPage(items, null);
+			}
+		}
+		Date start = StringUtils.isNotBlank(startDate) ? Context.getDateFormat().parse(startDate) : null;
+		Date end = null;
+		if (StringUtils.isNotBlank(endDate)) {
+			//include the whole day
+			end = new Date(Context.getDateFormat().parse(endDate).getTime() + 24 * 60 * 60 * 1000L - 1);
+		}
+		if (length == null || length < 1 || length > MAX_PAGE_SIZE) {
+			length = MAX_PAGE_SIZE;
+		}
+		
+		//Fetch an extra log to find out if there is a next page, the summaries come with the names
+		//of the users and the child log counts so no audit logs or users are loaded
+		List<AuditLogSummary> summaries = getService().getAuditLogSummariesAfter(clazzes, actions, user, start, end,
+		    true, StringUtils.trimToNull(continuationToken), length + 1);
+		boolean hasMore = summaries.size() > length;
+		if (hasMore) {
+			summaries = summaries.subList(0, length);
+		}
+		for (AuditLogSummary summary : summaries) {
+			items.add(new AuditLogListItem(summary));
+		}
+		
+		String nextToken = null;
+		if (hasMore) {
+			nextToken = ContinuationToken.create(summaries.get(summaries.size() - 1));
+		}
+		
+		return new AuditLogListPage(items, nextToken);
+	}
+	
+	/**
+	 * Gets the {@link AuditLogDetails} for the auditlog with the specified uuid, the objects
+	 * referenced by the changed properties are fetched with one query per type before the display
+	 * strings are generated
 	 * 
 	 * @param auditLogUuid
 	 * @return
@@ -81,44 +166,47 @@ public class DWRAuditLogService {
 					}
 					
 					if (auditLog.getAction().equals(Action.UPDATED)) {
+						//The serialized data is parsed once and the values are read from the parsed changes
 						Map<String, List> changes = AuditLogUtil.getChangesOfUpdatedItem(auditLog);
-						if (changes.size() > 0) {
-							for (Map.Entry<String, List> entry : changes.entrySet()) {
-								String propertyName = entry.getKey();
-								String newValueDisplay = "";
-								String preValueDisplay = "";
-								if (CollectionUtils.isNotEmpty(entry.getValue())) {
-									Object newValueObj = AuditLogUtil.getNewValueOfUpdatedItem(propertyName, auditLog);
-									Object previousValueObj = AuditLogUtil.getPreviousValueOfUpdatedItem(propertyName,
-									    auditLog);
-									if (newValueObj != null || previousValueObj != null) {
-										newValueDisplay += getPrettyPropertyValue(propertyName, newValueObj, clazz);
-										preValueDisplay += getPrettyPropertyValue(propertyName, previousValueObj, clazz);
-									}
+						Map<Class<?>, Map<String, String>> referencedDisplayStrings = getReferencedDisplayStrings(clazz, changes,
+						    true);
+						for (Map.Entry<String, List> entry : changes.entrySet()) {
+							String propertyName = entry.getKey();
+							String newValueDisplay = "";
+							String preValueDisplay = "";
+							if (CollectionUtils.isNotEmpty(entry.getValue())) {
+								Object newValueObj = entry.getValue().get(0);
+								Object previousValueObj = (entry.getValue().size() > 1) ? entry.getValue().get(1) : null;
+								if (newValueObj != null || previousValueObj != null) {
+									newValueDisplay += getPrettyPropertyValue(propertyName, newValueObj, clazz,
+									    referencedDisplayStrings);
+									preValueDisplay += getPrettyPropertyValue(propertyName, previousValueObj, clazz,
+									    referencedDisplayStrings);
 								}
-								
-								otherData.put(propertyName, new String[] { newValueDisplay, preValueDisplay });
 							}
+							
+							otherData.put(propertyName, new String[] { newValueDisplay, preValueDisplay });
 						}
 					}
 					
 				} else {
 					Map<String, String> changes = AuditLogUtil.getLastStateOfDeletedItem(auditLog);
+					Map<Class<?>, Map<String, String>> referencedDisplayStrings = getReferencedDisplayStrings(clazz, changes,
+					    false);
 					for (Map.Entry<String, String> entry : changes.entrySet()) {
-						otherData.put(entry.getKey(), getPrettyPropertyValue(entry.getKey(), entry.getValue(), clazz));
+						otherData.put(entry.getKey(),
+						    getPrettyPropertyValue(entry.getKey(), entry.getValue(), clazz, referencedDisplayStrings));
 					}
 				}
 				
 				AuditLogDetails details = new AuditLogDetails(displayString, auditLog.getIdentifier(),
 				        auditLog.getSimpleTypeName(), auditLog.getAction().name(), auditLog.getUuid(),
 				        auditLog.getOpenmrsVersion(), objectExists, otherData);
-				if (auditLog.hasChildLogs()) {
-					List<AuditLogDetails> childDetails = new ArrayList<AuditLogDetails>();
-					for (AuditLog childLog : auditLog.getChildAuditLogs()) {
-						childDetails.add(new AuditLogDetails(null, childLog.getIdentifier(), childLog.getSimpleTypeName(),
-						        childLog.getAction().name(), childLog.getUuid(), auditLog.getOpenmrsVersion(), false, null));
-					}
-					details.setChildAuditLogDetails(childDetails);
+				Integer childLogCount = getService().getChildAuditLogCounts(Collections.singletonList(auditLog)).get(
+				    auditLog.getAuditLogId());
+				if (childLogCount != null) {
+					details.setChildLogCount(childLogCount);
+					details.setChildAuditLogDetails(createChildAuditLogDetails(auditLog, 0, CHILD_LOG_PAGE_SIZE));
 				}
 				
 				return details;
@@ -127,13 +215,167 @@ public class DWRAuditLogService {
 		return null;
 	}
 	
-	private String getPrettyPropertyValue(String propertyName, Object value, Class<?> clazz) {
+	/**
+	 * Gets the {@link AuditLogDetails} for a page of the child logs of the auditlog with the
+	 * specified uuid, only the summary of each child log is included
+	 * 
+	 * @param parentAuditLogUuid the uuid of the parent auditlog
+	 * @param start index of the first child log to return
+	 * @param length the number of child logs to return
+	 * @return a list of child log details
+	 */
+	public List<AuditLogDetails> getChildAuditLogDetails(String parentAuditLogUuid, Integer start, Integer length) {
+		
+		Context.requirePrivilege(AuditLogWebConstants.PRIV_VIEW_AUDITLOG);
+		
+		AuditLog auditLog = getService().getObjectByUuid(AuditLog.class, parentAuditLogUuid);
+		if (auditLog == null) {
+			return null;
+		}
+		if (length == null || length < 1 || length > MAX_PAGE_SIZE) {
+			length = CHILD_LOG_PAGE_SIZE;
+		}
+		
+		return createChildAuditLogDetails(auditLog, start, length);
+	}
+	
+	private List<AuditLogDetails> createChildAuditLogDetails(AuditLog auditLog, Integer start, Integer length) {
+		List<AuditLog> childLogs = getService().getChildAuditLogs(auditLog, start, length);
+		//Check which objects of the child logs still exist with one id query per type
+		Map<Class<?>, Set<String>> typeIdsMap = new HashMap<Class<?>, Set<String>>();
+		for (AuditLog childLog : childLogs) {
+			if (childLog.getAction() != Action.DELETED && AuditLogUtil.isPersistent(childLog.getType())) {
+				getIds(typeIdsMap, childLog.getType()).add(childLog.getIdentifier().toString());
+			}
+		}
+		Map<Class<?>, Set<String>> typeExistingIdsMap = new HashMap<Class<?>, Set<String>>();
+		for (Map.Entry<Class<?>, Set<String>> entry : typeIdsMap.entrySet()) {
+			typeExistingIdsMap.put(entry.getKey(), getService().getExistingIds(entry.getKey(), entry.getValue()));
+		}
+		
+		List<AuditLogDetails> childDetails = new ArrayList<AuditLogDetails>();
+		for (AuditLog childLog : childLogs) {
+			Set<String> existingIds = typeExistingIdsMap.get(childLog.getType());
+			boolean childObjectExists = existingIds != null && existingIds.contains(childLog.getIdentifier().toString());
+			childDetails.add(new AuditLogDetails(null, childLog.getIdentifier(), childLog.getSimpleTypeName(), childLog
+			        .getAction().name(), childLog.getUuid(), auditLog.getOpenmrsVersion(), childObjectExists, null));
+		}
+		
+		return childDetails;
+	}
+	
+	/**
+	 * Gathers the ids of the persistent objects referenced by the specified property values and
+	 * gets their display strings, the display strings are looked up in the
+	 * {@link DisplayStringCache} first and the objects that aren't cached are fetched with one query
+	 * per type
+	 * 
+	 * @param owningType the type the properties belong to
+	 * @param propertyValues map of property names to their values
+	 * @param isUpdate specifies if the values are lists of the new and previous values of updated
+	 *            properties
+	 * @return a map of each type to a map of ids to the display strings of the objects
+	 */
+	private Map<Class<?>, Map<String, String>> getReferencedDisplayStrings(Class<?> owningType,
+	                                                                       Map<String, ?> propertyValues,
+	                                                                       boolean isUpdate) {
+		Map<Class<?>, Set<String>> typeIdsMap = new HashMap<Class<?>, Set<String>>();
+		for (Map.Entry<String, ?> entry : propertyValues.entrySet()) {
+			Field field = AuditLogUtil.getField(owningType, entry.getKey());
+			if (field == null || entry.getValue() == null) {
+				continue;
+			}
+			
+			Class<?> referencedType = field.getType();
+			boolean isCollection = Collection.class.isAssignableFrom(field.getType());
+			if (isCollection) {
+				referencedType = AuditLogUtil.getCollectionElementType(owningType, entry.getKey());
+			}
+			if (referencedType == null || !AuditLogUtil.isPersistent(referencedType)) {
+				continue;
+			}
+			
+			List<Object> values = new ArrayList<Object>();
+			if (isUpdate && entry.getValue() instanceof List) {
+				values.addAll((List) entry.getValue());
+			} else {
+				values.add(entry.getValue());
+			}
+			for (Object value : values) {
+				if (value == null || DigestUtil.isDigest(value)) {
+					continue;
+				}
+				if (value instanceof Collection) {
+					for (Object id : (Collection) value) {
+						addId(typeIdsMap, referencedType, id);
+					}
+				} else {
+					addId(typeIdsMap, referencedType, value);
+				}
+			}
+		}
+		
+		DisplayStringCache cache = DisplayStringCache.getInstance();
+		//The display strings of some objects e.g concepts depend on the locale
+		Locale locale = Context.getLocale();
+		Map<Class<?>, Map<String, String>> referencedDisplayStrings = new HashMap<Class<?>, Map<String, String>>();
+		for (Map.Entry<Class<?>, Set<String>> entry : typeIdsMap.entrySet()) {
+			Class<?> type = entry.getKey();
+			Map<String, String> idDisplayStringMap = new HashMap<String, String>();
+			Set<String> idsToFetch = new HashSet<String>();
+			for (String id : entry.getValue()) {
+				String displayString = cache.get(type, id, locale);
+				if (displayString != null) {
+					idDisplayStringMap.put(id, displayString);
+				} else {
+					idsToFetch.add(id);
+				}
+			}
+			if (!idsToFetch.isEmpty()) {
+				for (Map.Entry<String, ?> idObject : getService().getObjectsByIds(type, idsToFetch).entrySet()) {
+					String displayString = getDisplayString(idObject.getValue(), true);
+					cache.put(type, idObject.getKey(), locale, displayString);
+					idDisplayStringMap.put(idObject.getKey(), displayString);
+				}
+			}
+			referencedDisplayStrings.put(type, idDisplayStringMap);
+		}
+		
+		if (log.isDebugEnabled()) {
+			log.debug(cache);
+		}
+		
+		return referencedDisplayStrings;
+	}
+	
+	private void addId(Map<Class<?>, Set<String>> typeIdsMap, Class<?> type, Object id) {
+		if (id != null && NumberUtils.isDigits(id.toString().trim())) {
+			getIds(typeIdsMap, type).add(id.toString().trim());
+		}
+	}
+	
+	private Set<String> getIds(Map<Class<?>, Set<String>> typeIdsMap, Class<?> type) {
+		Set<String> ids = typeIdsMap.get(type);
+		if (ids == null) {
+			ids = new HashSet<String>();
+			typeIdsMap.put(type, ids);
+		}
+		return ids;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private String getPrettyPropertyValue(String propertyName, Object value, Class<?> clazz,
+	                                      Map<Class<?>, Map<String, String>> referencedDisplayStrings) {
+		if (DigestUtil.isDigest(value)) {
+			return getDigestDisplayString((Map<String, Object>) value);
+		}
+		
 		String prettyValue = null;
 		Field field = AuditLogUtil.getField(clazz, propertyName);
 		//This can be null if the auditlog was created and then
 		//later upgraded to a version where the field was removed
 		if (field != null && value != null) {
-			prettyValue = getPropertyDisplayString(clazz, propertyName, field.getType(), value);
+			prettyValue = getPropertyDisplayString(clazz, propertyName, field.getType(), value, referencedDisplayStrings);
 		}
 		
 		if (prettyValue == null) {
@@ -143,16 +385,39 @@ public class DWRAuditLogService {
 		return prettyValue;
 	}
 	
+	/**
+	 * Gets the display string for a digest of a large property value, it includes the length, hash
+	 * and delta if any
+	 * 
+	 * @param digest the digest
+	 * @return the display text
+	 */
+	private String getDigestDisplayString(Map<String, Object> digest) {
+		StringBuilder sb = new StringBuilder("<div class='" + AuditLogConstants.MODULE_ID + "_digest'>");
+		sb.append("Length: " + digest.get(DigestUtil.KEY_LENGTH) + "<br />");
+		sb.append("SHA-256: " + digest.get(DigestUtil.KEY_HASH));
+		Object delta = digest.get(DigestUtil.KEY_DELTA);
+		if (delta != null) {
+			sb.append("<pre class='" + AuditLogConstants.MODULE_ID + "_delta'>"
+			        + StringEscapeUtils.escapeHtml(delta.toString()) + "</pre>");
+		}
+		sb.append("</div>");
+		
+		return sb.toString();
+	}
+	
 	/**
 	 * Gets the display string for a property
 	 * 
 	 * @param owningType
 	 * @param propertyName
 	 * @param propertyValue
+	 * @param referencedDisplayStrings the display strings of the objects referenced by the property
+	 *            values
 	 * @return the display text
 	 */
 	private String getPropertyDisplayString(Class<?> owningType, String propertyName, Class<?> propertyType,
-	                                        Object propertyValue) {
+	                                        Object propertyValue, Map<Class<?>, Map<String, String>> referencedDisplayStrings) {
 		
 		String displayString = "";
 		if (propertyValue == null) {
@@ -167,21 +432,14 @@ public class DWRAuditLogService {
 						return displayString;
 					}
 					List<Object> uuidsOrIds = (List<Object>) propertyValue;
-					List<Object> items = new ArrayList<Object>();
+					List<String> items = new ArrayList<String>();
 					List<String> unmatchedUuidsOrIds = new ArrayList<String>();
+					Class<?> itemType = AuditLogUtil.getCollectionElementType(owningType, propertyName);
+					Map<String, String> idDisplayStringMap = (itemType != null) ? referencedDisplayStrings.get(itemType)
+					        : null;
 					for (Object currUuidOrId : uuidsOrIds) {
-						Object item = null;
 						String currUuidOrStr = currUuidOrId.toString().trim();
-						Class<?> itemType = AuditLogUtil.getCollectionElementType(owningType, propertyName);
-						if (AuditLogUtil.isPersistent(itemType)) {
-							try {
-								item = getService().getObjectById(itemType, Integer.valueOf(currUuidOrStr));
-							}
-							catch (NumberFormatException nfe) {
-								//ignore
-							}
-						}
-						
+						String item = (idDisplayStringMap != null) ? idDisplayStringMap.get(currUuidOrStr) : null;
 						if (item != null) {
 							items.add(item);
 						} else {
@@ -191,9 +449,8 @@ public class DWRAuditLogService {
 					
 					StringBuilder sb = new StringBuilder("<ul class='" + AuditLogConstants.MODULE_ID
 					        + "_collection_property'>");
-					for (Object o1 : items) {
-						sb.append("<li class='" + AuditLogConstants.MODULE_ID + "_collection_item'>"
-						        + getDisplayString(o1, true) + "</li>");
+					for (String item : items) {
+						sb.append("<li class='" + AuditLogConstants.MODULE_ID + "_collection_item'>" + item + "</li>");
 					}
 					for (String str : unmatchedUuidsOrIds) {
 						sb.append("<li class='" + AuditLogConstants.MODULE_ID + "_collection_item "
@@ -220,9 +477,11 @@ public class DWRAuditLogService {
 				String stringValue = propertyValue.toString();
 				if (StringUtils.isNotBlank(stringValue)) {
 					if (AuditLogUtil.isPersistent(propertyType)) {
-						Object actualObject = getService().getObjectById(propertyType, Integer.valueOf(stringValue));
-						if (actualObject != null) {
-							displayString = getDisplayString(actualObject, true);
+						Map<String, String> idDisplayStringMap = referencedDisplayStrings.get(propertyType);
+						String objectDisplayString = (idDisplayStringMap != null) ? idDisplayStringMap.get(stringValue
+						        .trim()) : null;
+						if (objectDisplayString != null) {
+							displayString = objectDisplayString;
 						} else {
 							displayString = "<span class=" + AuditLogConstants.MODULE_ID + "'_deleted'>" + stringValue
 							        + "</span>";
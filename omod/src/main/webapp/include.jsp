@@ -14,4 +14,6 @@
     auditlog_messages.changesLabel = '<spring:message code="auditlog.changes" />';
     auditlog_messages.lastKnownStateLabel = '<spring:message code="auditlog.lastKnownState" />';
     auditlog_messages.objectDoesnotExit = '<spring:message code="auditlog.objectDoesnotExist" />';
+    auditlog_messages.loading = '<spring:message code="auditlog.loading" />';
+    auditlog_messages.loadMore = '<spring:message code="auditlog.loadMore" />';
 </script>
\ No newline at end of file
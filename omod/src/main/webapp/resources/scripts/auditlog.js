@@ -5,9 +5,12 @@ var dialogWidth = 1140;
 var dialogHeight = 640;
 var childDialogWidth = dialogWidth*0.9;
 var childDialogHeight = dialogHeight*0.9;
+var auditLogTable;
+var auditLogPageSize = 50;
+var auditLogContinuationToken = null;
 
 function auditlog_initTable(){
-    $j('#'+auditlog_moduleId).dataTable({
+    auditLogTable = $j('#'+auditlog_moduleId).dataTable({
         sPaginationType: "full_numbers",
         iDisplayLength: 15,
         bJQueryUI: true,
@@ -73,6 +76,48 @@ function auditlog_initTable(){
     });
 }
 
+/**
+ * Fetches the next page of audit logs matching the filters from the server and appends them to the
+ * table, if reset is true the table is cleared and the first page is fetched
+ */
+function auditlog_loadPage(reset){
+    if(reset){
+        auditLogContinuationToken = null;
+        auditLogTable.fnClearTable();
+    }
+    var loadMoreButton = $j("#"+auditlog_moduleId+"-loadMore");
+    loadMoreButton.attr("disabled", "disabled").val(auditlog_messages.loading).show();
+    DWRAuditLogService.getAuditLogs($j("#"+auditlog_moduleId+"-filter-type").val(),
+        $j("#"+auditlog_moduleId+"-filter-action").val(), $j("#"+auditlog_moduleId+"-filter-username").val(),
+        $j("#"+auditlog_moduleId+"-filter-startDate").val(), $j("#"+auditlog_moduleId+"-filter-endDate").val(),
+        auditLogContinuationToken, auditLogPageSize, function(page){
+            var rows = new Array();
+            $j.each(page.items, function(index, item){
+                var itemLabel = item.simpleClassname;
+                if(item.childLogCount > 0){
+                    itemLabel += " ("+item.childLogCount+")";
+                }
+                rows.push([
+                    "<img class=\"auditlog_action_image\" align=\"top\" src=\""+openmrsContextPath+"/moduleResources/"+auditlog_moduleId+"/images/"+item.action+".gif\" />",
+                    itemLabel, item.userDetails, item.dateCreatedString
+                ]);
+            });
+            var indexes = auditLogTable.fnAddData(rows);
+            $j.each(indexes, function(index, rowIndex){
+                var item = page.items[index];
+                $j(auditLogTable.fnGetNodes(rowIndex)).addClass(auditlog_moduleId+"_"+item.action).click(function(){
+                    auditlog_showDetails(item.uuid);
+                });
+            });
+
+            auditLogContinuationToken = page.continuationToken;
+            loadMoreButton.removeAttr("disabled").val(auditlog_messages.loadMore);
+            if(!auditLogContinuationToken){
+                loadMoreButton.hide();
+            }
+        });
+}
+
 function auditlog_showDetails(auditLogUuid, isChildLog){
     var existingLogDetails = auditLogDetailsMap[auditLogUuid];
     if(!existingLogDetails){
@@ -145,13 +190,8 @@ function displayLogDetails(logDetails, isChildLog){
         }
 
         if(logDetails.childAuditLogDetails){
-            childAuditLogDetails = logDetails.childAuditLogDetails;
-            $j("#"+auditlog_moduleId+idPart+"-childLogCount").html(childAuditLogDetails.length);
-            $j.each(childAuditLogDetails, function(index, detail){
-                $j("#"+auditlog_moduleId+idPart+"-childAuditLogDetails-table tr:last").after(
-                    "<tr class=\"auditlog_"+detail.action+" auditlog_child_log\" onclick=\"auditlog_showDetails('"+detail.uuid+"', true)\">"+
-                        "<td class=\"auditlog_align_text_left\" valign=\"top\">"+detail.simpleTypeName+"</td></tr>");
-            });
+            $j("#"+auditlog_moduleId+idPart+"-childLogCount").html(logDetails.childLogCount);
+            auditlog_addChildLogRows(logDetails.uuid, logDetails.childAuditLogDetails, 0, logDetails.childLogCount, idPart);
             $j("#"+auditlog_moduleId+idPart+"-details .auditlog-childAuditLogDetails-element").show();
         }
 
@@ -161,4 +201,32 @@ function displayLogDetails(logDetails, isChildLog){
             dialogObj.dialog('open');
         }
     }
-}
\ No newline at end of file
+}
+
+/**
+ * Appends the rows for a page of child logs to the child logs table and a row to load the next page
+ * if not all the child logs have been loaded
+ */
+function auditlog_addChildLogRows(parentUuid, childAuditLogDetails, start, childLogCount, idPart){
+    var table = $j("#"+auditlog_moduleId+idPart+"-childAuditLogDetails-table");
+    table.find("tr.auditlog_child_log_more").remove();
+    $j.each(childAuditLogDetails, function(index, detail){
+        table.find("tr:last").after(
+            "<tr class=\"auditlog_"+detail.action+" auditlog_child_log\" onclick=\"auditlog_showDetails('"+detail.uuid+"', true)\">"+
+                "<td class=\"auditlog_align_text_left\" valign=\"top\">"+detail.simpleTypeName+"</td></tr>");
+    });
+    var loadedCount = start + childAuditLogDetails.length;
+    if(childAuditLogDetails.length > 0 && loadedCount < childLogCount){
+        var moreRow = $j("<tr class=\"auditlog_child_log_more\"><td class=\"auditlog_align_text_left\" valign=\"top\">"+
+            "<a href=\"#\">"+auditlog_messages.loadMore+" ("+(childLogCount - loadedCount)+")</a></td></tr>");
+        moreRow.find("a").click(function(){
+            DWRAuditLogService.getChildAuditLogDetails(parentUuid, loadedCount, null, function(details){
+                if(details){
+                    auditlog_addChildLogRows(parentUuid, details, loadedCount, childLogCount, idPart);
+                }
+            });
+            return false;
+        });
+        table.find("tr:last").after(moreRow);
+    }
+}
@@ -16,11 +16,39 @@
 <script type="text/javascript">
     $j(document).ready(function() {
         auditlog_initTable();
+        auditlog_loadPage(true);
     });
 </script>
 
 <div class="box">
     <b class="boxHeader" style="width: auto;"><spring:message code="${moduleId}.auditlogs" /></b>
+    <form id="${moduleId}-filter" onsubmit="${moduleId}_loadPage(true); return false;">
+        <table cellpadding="3" cellspacing="0">
+            <tr>
+                <th class="${moduleId}_align_text_left"><spring:message code="${moduleId}.type" /></th>
+                <th class="${moduleId}_align_text_left"><spring:message code="${moduleId}.action" /></th>
+                <th class="${moduleId}_align_text_left"><spring:message code="${moduleId}.username" /></th>
+                <th class="${moduleId}_align_text_left"><spring:message code="${moduleId}.startDate" /></th>
+                <th class="${moduleId}_align_text_left"><spring:message code="${moduleId}.endDate" /></th>
+                <td></td>
+            </tr>
+            <tr>
+                <td><input type="text" id="${moduleId}-filter-type" size="40" /></td>
+                <td>
+                    <select id="${moduleId}-filter-action">
+                        <option value=""><spring:message code="${moduleId}.all" /></option>
+                        <c:forEach items="${actions}" var="action">
+                            <option value="${action}">${action}</option>
+                        </c:forEach>
+                    </select>
+                </td>
+                <td><input type="text" id="${moduleId}-filter-username" size="15" /></td>
+                <td><input type="text" id="${moduleId}-filter-startDate" size="10" onfocus="showCalendar(this)" /></td>
+                <td><input type="text" id="${moduleId}-filter-endDate" size="10" onfocus="showCalendar(this)" /></td>
+                <td><input type="submit" value="<spring:message code="${moduleId}.filter" />" /></td>
+            </tr>
+        </table>
+    </form>
     <br />
     <table id="${moduleId}" width="100%" cellpadding="3" cellspacing="0" align="left">
         <thead>
@@ -32,32 +60,12 @@
         </tr>
         </thead>
         <tbody>
-        <c:forEach items="${auditLogs}" var="auditLog">
-            <tr class="${moduleId}_${auditLog.action}" onclick="${moduleId}_showDetails('${auditLog.uuid}')">
-                <td style="width: 17px !important;" align="center">
-                    <img class="${moduleId}_action_image" align="top"
-                         src="<openmrs:contextPath />/moduleResources/${moduleId}/images/${auditLog.action}.gif" />
-                </td>
-                <td>
-                    ${auditLog.simpleTypeName}
-                    <c:if test="${fn:length(auditLog.childAuditLogs) > 0}"> (${fn:length(auditLog.childAuditLogs)})</c:if>
-                </td>
-                <td>
-                    <c:choose>
-                        <%-- If this is a scheduled task, something done by daemon thread or at start up --%>
-                        <c:when test="${auditLog.user == null || auditLog.user.uuid == 'A4F30A1B-5EB9-11DF-A648-37A07F9C90FB'}">
-                            <spring:message code="${moduleId}.systemAction" />
-                        </c:when>
-                        <c:otherwise>
-                            ${auditLog.user.personName} <c:if test="${fn:trim(auditLog.user.username) != ''}">[${auditLog.user.username}]</c:if>
-                        </c:otherwise>
-                    </c:choose>
-                </td>
-                <td><openmrs:formatDate date="${auditLog.dateCreated}" type="long" /></td>
-            </tr>
-        </c:forEach>
         </tbody>
     </table>
+    <div class="${moduleId}_align_text_center">
+        <input type="button" id="${moduleId}-loadMore" value="<spring:message code="${moduleId}.loadMore" />"
+               onclick="${moduleId}_loadPage(false)" style="display: none" />
+    </div>
 </div>
 
 <%-- Dialog to display auditlog details --%>